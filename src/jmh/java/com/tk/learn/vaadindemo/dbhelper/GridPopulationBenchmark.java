@@ -0,0 +1,79 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.data.provider.DataProvider;
+import com.vaadin.flow.data.provider.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rebuilding a grid for a new result, as {@code DynamicGridView.updateGrid} and
+ * {@code SqlClientView.displayResults} do: replacing the columns, installing a lazy fetch callback and serving the
+ * first page with every cell read through the column value providers. The grid is never attached, so no UI or
+ * session is involved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GridPopulationBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"4", "16", "64"})
+    private int width;
+
+    private ResultTable table;
+    private Grid<ResultRow> grid;
+
+    @Setup
+    public void setUp() throws SQLException {
+        table = ResultTable.from(SyntheticResultSets.create(width, 1000));
+        grid = new Grid<>();
+    }
+
+    @Benchmark
+    public Grid<ResultRow> buildColumns() {
+        addColumns(table.getSchema());
+        return grid;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void buildColumnsAndFirstPage(Blackhole blackhole) {
+        ResultSchema schema = table.getSchema();
+        addColumns(schema);
+        grid.setItems(query -> table.rows(query.getOffset(), query.getOffset() + query.getLimit()).stream());
+
+        DataProvider<ResultRow, Void> dataProvider = (DataProvider<ResultRow, Void>) grid.getDataProvider();
+        dataProvider.fetch(new Query<>(0, PAGE_SIZE, List.of(), null, null)).forEach(row -> {
+            for (int i = 0; i < schema.size(); i++) {
+                blackhole.consume(row.get(i));
+            }
+        });
+    }
+
+    private void addColumns(ResultSchema schema) {
+        grid.removeAllColumns();
+        for (int i = 0; i < schema.size(); i++) {
+            int columnIndex = i;
+            grid.addColumn(row -> row.get(columnIndex)).setHeader(schema.getColumnName(i));
+        }
+    }
+}
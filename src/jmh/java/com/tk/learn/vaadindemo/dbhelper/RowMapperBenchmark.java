@@ -0,0 +1,61 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.rowset.CachedRowSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link DynamicRowMapper#mapRow} for results of different shapes. Each invocation maps the whole result
+ * set, the way {@code JdbcTemplate.query} drives the mapper for one grid page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMapperBenchmark {
+
+    @Param({"4", "16", "64"})
+    private int width;
+
+    @Param({"50", "1000", "10000"})
+    private int height;
+
+    private CachedRowSet resultSet;
+
+    @Setup
+    public void setUp() throws SQLException {
+        resultSet = SyntheticResultSets.create(width, height);
+    }
+
+    @Benchmark
+    public ResultTable mapRows() throws SQLException {
+        resultSet.beforeFirst();
+        DynamicRowMapper rowMapper = new DynamicRowMapper();
+        int rowNum = 0;
+        while (resultSet.next()) {
+            rowMapper.mapRow(resultSet, rowNum++);
+        }
+        return rowMapper.getTable();
+    }
+
+    @Benchmark
+    public ResultTable readWholeTable() throws SQLException {
+        // Reading a whole result set into one table, the baseline for the row mapper
+        resultSet.beforeFirst();
+        return ResultTable.from(resultSet);
+    }
+}
@@ -0,0 +1,75 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import javax.sql.RowSetMetaData;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.math.BigDecimal;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Random;
+
+/**
+ * In-memory result sets for the benchmarks, backed by the JDK's {@link CachedRowSet} so no database or driver is
+ * needed. Columns cycle through the types the grid sees most: integer, varchar, bigint, double, numeric and
+ * timestamp, with roughly one value in ten null.
+ */
+final class SyntheticResultSets {
+
+    private static final int[] COLUMN_TYPES = {
+            Types.INTEGER, Types.VARCHAR, Types.BIGINT, Types.DOUBLE, Types.NUMERIC, Types.TIMESTAMP
+    };
+
+    private SyntheticResultSets() {
+    }
+
+    /**
+     * @return a scrollable result set positioned before the first row
+     */
+    static CachedRowSet create(int width, int height) throws SQLException {
+        CachedRowSet rs = RowSetProvider.newFactory().createCachedRowSet();
+        rs.setMetaData(metaData(width));
+
+        // Fixed seed so every fork and every run sees the same data
+        Random random = new Random(42);
+        for (int row = 0; row < height; row++) {
+            rs.moveToInsertRow();
+            for (int column = 1; column <= width; column++) {
+                if (random.nextInt(10) == 0) {
+                    rs.updateNull(column);
+                    continue;
+                }
+                switch (columnType(column)) {
+                    case Types.INTEGER -> rs.updateInt(column, random.nextInt());
+                    case Types.VARCHAR -> rs.updateString(column, "value-" + row + "-" + column);
+                    case Types.BIGINT -> rs.updateLong(column, random.nextLong());
+                    case Types.DOUBLE -> rs.updateDouble(column, random.nextDouble());
+                    case Types.NUMERIC -> rs.updateBigDecimal(column, BigDecimal.valueOf(random.nextInt(1_000_000), 2));
+                    default -> rs.updateTimestamp(column, new Timestamp(1_700_000_000_000L + row * 1000L));
+                }
+            }
+            rs.insertRow();
+            rs.moveToCurrentRow();
+        }
+        rs.beforeFirst();
+        return rs;
+    }
+
+    private static RowSetMetaData metaData(int width) throws SQLException {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(width);
+        for (int column = 1; column <= width; column++) {
+            metaData.setColumnName(column, "column_" + column);
+            metaData.setColumnLabel(column, "column_" + column);
+            metaData.setColumnType(column, columnType(column));
+            metaData.setNullable(column, ResultSetMetaData.columnNullable);
+        }
+        return metaData;
+    }
+
+    private static int columnType(int column) {
+        return COLUMN_TYPES[(column - 1) % COLUMN_TYPES.length];
+    }
+}
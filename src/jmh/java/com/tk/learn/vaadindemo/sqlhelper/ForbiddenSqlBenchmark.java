@@ -0,0 +1,55 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of validating scripts pasted into the SQL client. The script contains no forbidden command, which is the
+ * worst case: the whole text has to be lexed and every statement classified.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForbiddenSqlBenchmark {
+
+    private static final String[] STATEMENTS = {
+            "SELECT u.id, u.name, o.total FROM users u JOIN orders o ON o.user_id = u.id WHERE o.total > 100;\n",
+            "INSERT INTO audit_log (user_id, action, created_at) VALUES (42, 'login', now());\n",
+            "UPDATE orders SET status = 'shipped' WHERE id IN (SELECT order_id FROM shipments);\n",
+            "-- monthly report\nSELECT date_trunc('month', created_at), count(*) FROM orders GROUP BY 1;\n",
+            "WITH recent AS (SELECT * FROM orders WHERE created_at > now() - interval '7 days') SELECT * FROM recent;\n"
+    };
+
+    @Param({"10", "1000", "10000"})
+    private int statements;
+
+    private String script;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            text.append(STATEMENTS[i % STATEMENTS.length]);
+        }
+        script = text.toString();
+    }
+
+    @Benchmark
+    public SqlClassification classify() {
+        return SqlLexer.classify(script);
+    }
+}
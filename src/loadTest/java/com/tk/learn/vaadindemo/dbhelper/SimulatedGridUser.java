@@ -0,0 +1,166 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import com.tk.learn.vaadindemo.loadtest.LoadReport;
+import com.tk.learn.vaadindemo.loadtest.LoadTestData;
+import com.tk.learn.vaadindemo.loadtest.Pacer;
+import com.tk.learn.vaadindemo.loadtest.SimulatedUser;
+import com.tk.learn.vaadindemo.metrics.DataPathMetrics;
+import com.tk.learn.vaadindemo.sqlhelper.QueryAdmissionController;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.data.provider.SortDirection;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A user of {@code DynamicGridView}: opens the table, scrolls through it, types filters and saves edits, through the
+ * same provider and services the view uses and with the grid's page sizes. Each visit starts over with a freshly
+ * opened table, like navigating to the view again.
+ */
+public class SimulatedGridUser implements SimulatedUser {
+
+    // Grid's default page size; its first fetch, and the view's preloaded filter page, cover two pages
+    private static final int PAGE_SIZE = 50;
+    private static final int FIRST_PAGE_SIZE = PAGE_SIZE * 2;
+
+    private static final String NOTE_COLUMN = "note";
+
+    private final ConnectionManager connectionManager;
+    private final SchemaMetadataService schemaMetadataService;
+    private final QueryAdmissionController admissionController;
+    private final DataPathMetrics metrics;
+    private final TableEditService tableEditService;
+    private final String tableName;
+    private final long orders;
+    private final String sessionId;
+
+    private record OpenTable(TableMetadata table, KeysetTableDataProvider provider, List<ResultRow> firstPage) {
+    }
+
+    /**
+     * @param orders rows in the orders table, to keep the typed filter values within the generated data
+     */
+    public SimulatedGridUser(ConnectionManager connectionManager, SchemaMetadataService schemaMetadataService,
+                             QueryAdmissionController admissionController, DataPathMetrics metrics,
+                             TableEditService tableEditService, String tableName, long orders, String sessionId) {
+        this.connectionManager = connectionManager;
+        this.schemaMetadataService = schemaMetadataService;
+        this.admissionController = admissionController;
+        this.metrics = metrics;
+        this.tableEditService = tableEditService;
+        this.tableName = tableName;
+        this.orders = orders;
+        this.sessionId = sessionId;
+    }
+
+    @Override
+    public void run(Pacer pacer, LoadReport report) {
+        while (pacer.isRunning()) {
+            visit(pacer, report);
+        }
+    }
+
+    private void visit(Pacer pacer, LoadReport report) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // A quarter of the visits sort by a column before scrolling, which pages with OFFSET instead of keyset seeks
+        List<QuerySortOrder> sortOrders = random.nextInt(4) == 0
+                ? List.of(new QuerySortOrder("created_at", SortDirection.DESCENDING))
+                : List.of();
+
+        OpenTable opened = report.time("grid.open", () -> {
+            TableMetadata table = schemaMetadataService.getTable(ConnectionManager.DEFAULT, tableName);
+            List<String> sortableColumns = new ArrayList<>(table.primaryKey());
+            sortableColumns.addAll(table.indexedColumns());
+            KeysetTableDataProvider provider = new KeysetTableDataProvider(connectionManager,
+                    ConnectionManager.DEFAULT, tableName, table.primaryKey(), sortableColumns, admissionController,
+                    metrics, sessionId);
+            provider.estimateSize();
+            return new OpenTable(table, provider, fetch(provider, 0, FIRST_PAGE_SIZE, sortOrders));
+        });
+        if (opened == null || !pacer.pause()) {
+            return;
+        }
+        TableMetadata table = opened.table();
+        KeysetTableDataProvider provider = opened.provider();
+        List<String> keyColumns = table.primaryKey();
+        List<ResultRow> page = opened.firstPage();
+
+        // Scroll down page by page, now and then dragging the scrollbar far ahead
+        int offset = FIRST_PAGE_SIZE;
+        int pages = 2 + random.nextInt(8);
+        for (int i = 0; i < pages; i++) {
+            if (random.nextInt(5) == 0) {
+                offset = random.nextInt((int) Math.min(orders, 100_000) / PAGE_SIZE + 1) * PAGE_SIZE;
+            }
+            int pageOffset = offset;
+            List<ResultRow> scrolled = report.time("grid.scroll",
+                    () -> fetch(provider, pageOffset, PAGE_SIZE, sortOrders));
+            if (scrolled != null && !scrolled.isEmpty()) {
+                page = scrolled;
+            }
+            offset += PAGE_SIZE;
+            if (!pacer.pause()) {
+                return;
+            }
+        }
+
+        // Type a filter: the first page is loaded ahead and handed to the provider, as the view does
+        ColumnFilter filter = randomFilter(table, random);
+        List<ResultRow> filtered = report.time("grid.filter", () -> {
+            KeysetTableDataProvider.FirstPage firstPage = provider.loadFirstPage(filter.predicate(), filter.params(),
+                    FIRST_PAGE_SIZE, new CancellableQuery());
+            if (!firstPage.complete()) {
+                provider.estimateSize(filter.predicate(), filter.params());
+            }
+            provider.setFilter(filter.predicate(), filter.params(), firstPage);
+            return fetch(provider, 0, FIRST_PAGE_SIZE, sortOrders);
+        });
+        if (filtered != null && !filtered.isEmpty()) {
+            page = filtered;
+        }
+        if (!pacer.pause()) {
+            return;
+        }
+
+        // A third of the visits end with editing a row on screen and saving it
+        if (random.nextInt(3) == 0 && !page.isEmpty() && !keyColumns.isEmpty()) {
+            ResultRow row = page.get(random.nextInt(page.size()));
+            List<Object> key = keyColumns.stream().map(row::get).toList();
+            RowEdit edit = new RowEdit(key, row, Map.of(NOTE_COLUMN, sessionId + " " + System.nanoTime()));
+            report.time("grid.update", () -> {
+                tableEditService.applyEdits(ConnectionManager.DEFAULT, tableName, keyColumns, List.of(edit), sessionId);
+                return tableEditService.fetchRows(ConnectionManager.DEFAULT, tableName, keyColumns, List.of(key),
+                        sessionId);
+            });
+            pacer.pause();
+        }
+    }
+
+    private static List<ResultRow> fetch(KeysetTableDataProvider provider, int offset, int limit,
+                                         List<QuerySortOrder> sortOrders) {
+        return provider.fetch(new Query<>(offset, limit, sortOrders, null, null)).toList();
+    }
+
+    // Roughly what people type: a customer name prefix, an amount threshold or range, or a single day
+    private ColumnFilter randomFilter(TableMetadata table, ThreadLocalRandom random) {
+        Map<String, Integer> types = table.columnTypes();
+        return switch (random.nextInt(3)) {
+            case 0 -> ColumnFilter.parse("customer", types.get("customer"),
+                    table.trigramIndexedColumns().contains("customer"),
+                    "customer_" + random.nextLong(LoadTestData.customers(orders) / 10 + 1));
+            case 1 -> {
+                int from = random.nextInt(1000);
+                String input = random.nextBoolean() ? ">=" + from : from + ".." + (from + 5);
+                yield ColumnFilter.parse("amount", types.get("amount"), false, input);
+            }
+            default -> {
+                LocalDate day = LocalDate.of(2020, 1, 1).plusDays(random.nextLong(orders / (24 * 60) + 1));
+                yield ColumnFilter.parse("created_at", types.get("created_at"), false, day.toString());
+            }
+        };
+    }
+}
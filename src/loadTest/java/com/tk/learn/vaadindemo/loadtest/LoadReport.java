@@ -0,0 +1,161 @@
+package com.tk.learn.vaadindemo.loadtest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Collects what the simulated users did during the measured part of a load test and prints the summary.
+ * <p>
+ * Every user action is timed per operation into a timer that keeps its percentiles for the whole run. Failed
+ * actions are counted per operation and per exception type; {@code QueryRejectedException} marks a full admission
+ * lane and {@code OptimisticLockingFailureException} two users editing the same row, both expected under load.
+ * The harness also feeds periodic samples of the heap, the pool and the spill directory, of which only the highest
+ * values are kept.
+ * <p>
+ * Nothing is recorded before {@link #start()}, so the warm-up does not skew the figures.
+ */
+public class LoadReport {
+
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final Map<String, LongAdder> errors = new ConcurrentSkipListMap<>();
+    private final LongAccumulator heapUsed = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator poolActive = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator poolWaiting = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator spillBytes = new LongAccumulator(Math::max, 0);
+    private final AtomicLong startNanos = new AtomicLong();
+    private final AtomicLong endNanos = new AtomicLong();
+    private volatile boolean recording;
+
+    /**
+     * Starts recording; called once the warm-up is over.
+     */
+    public void start() {
+        startNanos.set(System.nanoTime());
+        recording = true;
+    }
+
+    /**
+     * Stops recording; actions still running are no longer counted.
+     */
+    public void stop() {
+        recording = false;
+        endNanos.set(System.nanoTime());
+    }
+
+    /**
+     * Runs one user action and records its latency, or its failure.
+     *
+     * @param operation what the action does, e.g. {@code grid.scroll}
+     * @return the action's result, or null if it failed
+     */
+    public <T> T time(String operation, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            T result = action.get();
+            if (recording) {
+                timer(operation).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            if (recording) {
+                errors.computeIfAbsent(operation + " " + e.getClass().getSimpleName(), key -> new LongAdder())
+                        .increment();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Takes one sample of the resources the application holds.
+     */
+    public void sample(long heapUsedBytes, int activeConnections, int threadsWaiting, long spillFileBytes) {
+        if (!recording) {
+            return;
+        }
+        heapUsed.accumulate(heapUsedBytes);
+        poolActive.accumulate(activeConnections);
+        poolWaiting.accumulate(threadsWaiting);
+        spillBytes.accumulate(spillFileBytes);
+    }
+
+    /**
+     * Prints throughput and latency per operation, the errors, and the pool, admission and heap figures.
+     *
+     * @param appRegistry the application's registry, for the pool's acquire timer and the admission wait timers
+     */
+    public void print(PrintStream out, MeterRegistry appRegistry, int maximumPoolSize, long maxHeapBytes) {
+        double seconds = Duration.ofNanos(endNanos.get() - startNanos.get()).toMillis() / 1000.0;
+        out.printf("%n%-22s %9s %9s %9s %9s %9s %9s%n", "operation", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms",
+                "max ms");
+        long total = 0;
+        List<Timer> timers = registry.find("loadtest.action").timers().stream()
+                .sorted(Comparator.comparing(timer -> timer.getId().getTag("operation")))
+                .toList();
+        for (Timer timer : timers) {
+            total += timer.count();
+            printTimer(out, timer.getId().getTag("operation"), timer, seconds);
+        }
+        out.printf("%-22s %9d %9.1f%n", "total", total, total / seconds);
+
+        out.printf("%nErrors%n");
+        if (errors.isEmpty()) {
+            out.printf("  none%n");
+        }
+        errors.forEach((error, count) -> out.printf("  %-60s %9d%n", error, count.sum()));
+
+        out.printf("%nWaits (whole run, including warm-up)%n");
+        out.printf("%-22s %9s %9s %9s %9s %9s %9s%n", "", "count", "", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Timer timer : appRegistry.find("hikaricp.connections.acquire").timers()) {
+            printTimer(out, "pool " + timer.getId().getTag("pool"), timer, 0);
+        }
+        for (Timer timer : appRegistry.find("db.admission.wait").timers()) {
+            printTimer(out, timer.getId().getTag("lane") + " " + timer.getId().getTag("outcome"), timer, 0);
+        }
+
+        out.printf("%nHigh-water marks%n");
+        out.printf("  connections in use         %d of %d%n", poolActive.get(), maximumPoolSize);
+        out.printf("  threads waiting for pool   %d%n", poolWaiting.get());
+        out.printf("  heap used                  %d MB of %d MB%n", heapUsed.get() >> 20, maxHeapBytes >> 20);
+        out.printf("  spill files                %d MB%n", spillBytes.get() >> 20);
+    }
+
+    private Timer timer(String operation) {
+        return Timer.builder("loadtest.action")
+                .tag("operation", operation)
+                .publishPercentiles(PERCENTILES)
+                // One bucket that never rotates, so the percentiles cover the whole measured run
+                .distributionStatisticExpiry(Duration.ofDays(1))
+                .distributionStatisticBufferLength(1)
+                .register(registry);
+    }
+
+    // Throughput is left out when seconds is 0
+    private static void printTimer(PrintStream out, String name, Timer timer, double seconds) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        String throughput = seconds > 0 ? String.format("%.1f", snapshot.count() / seconds) : "";
+        out.printf("%-22s %9d %9s", name, snapshot.count(), throughput);
+        ValueAtPercentile[] percentiles = snapshot.percentileValues();
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            out.printf(" %9s", i < percentiles.length
+                    ? String.format("%.1f", percentiles[i].value(TimeUnit.MILLISECONDS)) : "-");
+        }
+        out.printf(" %9.1f%n", snapshot.max(TimeUnit.MILLISECONDS));
+    }
+}
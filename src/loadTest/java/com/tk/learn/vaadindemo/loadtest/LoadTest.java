@@ -0,0 +1,125 @@
+package com.tk.learn.vaadindemo.loadtest;
+
+import com.tk.learn.vaadindemo.VaadindemoApplication;
+import com.tk.learn.vaadindemo.dbhelper.ConnectionManager;
+import com.tk.learn.vaadindemo.dbhelper.ResultStoreManager;
+import com.tk.learn.vaadindemo.dbhelper.SchemaMetadataService;
+import com.tk.learn.vaadindemo.dbhelper.SimulatedGridUser;
+import com.tk.learn.vaadindemo.dbhelper.TableEditService;
+import com.tk.learn.vaadindemo.metrics.DataPathMetrics;
+import com.tk.learn.vaadindemo.sqlhelper.QueryAdmissionController;
+import com.tk.learn.vaadindemo.sqlhelper.SimulatedSqlUser;
+import com.tk.learn.vaadindemo.sqlhelper.SqlExecutionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless load test: starts the application without its web server, generates large tables in its database and
+ * lets simulated users of the grid and the SQL client work on them concurrently, each on its own virtual thread and
+ * with its own session id, so admission limits per session apply as they would for real users.
+ * <p>
+ * Users start spread over the first half of the warm-up, then everything they do during the measured duration is
+ * recorded, and the report with throughput, latency percentiles, pool and admission waits and heap high-water marks
+ * is printed at the end. Settings are system properties, e.g. {@code ./gradlew loadTest -Ploadtest.users=200}:
+ * <ul>
+ *     <li>{@code loadtest.users} concurrent users (50)</li>
+ *     <li>{@code loadtest.sql-share} fraction of them using the SQL client rather than the grid (0.2)</li>
+ *     <li>{@code loadtest.rows} rows in the generated orders table (1000000)</li>
+ *     <li>{@code loadtest.think-time} average pause between the actions of a user (PT1S)</li>
+ *     <li>{@code loadtest.warm-up} time to start the users and warm up the JIT and pool (PT30S)</li>
+ *     <li>{@code loadtest.duration} measured time (PT2M)</li>
+ * </ul>
+ * Application settings such as {@code spring.datasource.url}, {@code spring.datasource.hikari.maximum-pool-size} or
+ * the {@code db.admission.*} limits can be overridden the same way, to compare configurations.
+ */
+public final class LoadTest {
+
+    private static final String PERCENTILES = "0.5,0.99,0.999";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int users = Integer.getInteger("loadtest.users", 50);
+        double sqlShare = Double.parseDouble(System.getProperty("loadtest.sql-share", "0.2"));
+        long rows = Long.getLong("loadtest.rows", 1_000_000);
+        Duration thinkTime = Duration.parse(System.getProperty("loadtest.think-time", "PT1S"));
+        Duration warmUp = Duration.parse(System.getProperty("loadtest.warm-up", "PT30S"));
+        Duration duration = Duration.parse(System.getProperty("loadtest.duration", "PT2M"));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(VaadindemoApplication.class)
+                .web(WebApplicationType.NONE)
+                // Client-side percentiles over the whole run for the waits in the report
+                .properties("management.metrics.distribution.percentiles.hikaricp.connections.acquire=" + PERCENTILES,
+                        "management.metrics.distribution.percentiles.db.admission.wait=" + PERCENTILES,
+                        "management.metrics.distribution.expiry.hikaricp.connections.acquire=1d",
+                        "management.metrics.distribution.expiry.db.admission.wait=1d",
+                        "management.metrics.distribution.buffer-length.hikaricp.connections.acquire=1",
+                        "management.metrics.distribution.buffer-length.db.admission.wait=1")
+                .run(args);
+        try {
+            ConnectionManager connectionManager = context.getBean(ConnectionManager.class);
+            LoadTestData.ensure(connectionManager.jdbcTemplate(ConnectionManager.DEFAULT), rows);
+            SchemaMetadataService schemaMetadataService = context.getBean(SchemaMetadataService.class);
+            schemaMetadataService.invalidate(ConnectionManager.DEFAULT);
+
+            LoadReport report = new LoadReport();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            ResultStoreManager resultStoreManager = context.getBean(ResultStoreManager.class);
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            sampler.scheduleAtFixedRate(() -> connectionManager.getPoolStats().stream()
+                    .filter(stats -> stats.name().equals(ConnectionManager.DEFAULT))
+                    .forEach(stats -> report.sample(memory.getHeapMemoryUsage().getUsed(), stats.active(),
+                            stats.waiting(), resultStoreManager.getDiskUsed())), 0, 100, TimeUnit.MILLISECONDS);
+
+            int sqlUsers = (int) Math.round(users * sqlShare);
+            System.out.printf("Running %d grid and %d SQL client users on %d rows: %d s warm-up, %d s measured, "
+                            + "%d ms think time%n", users - sqlUsers, sqlUsers, rows, warmUp.toSeconds(),
+                    duration.toSeconds(), thinkTime.toMillis());
+            long startNanos = System.nanoTime();
+            Pacer pacer = new Pacer(thinkTime, startNanos + warmUp.plus(duration).toNanos());
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < users; i++) {
+                    SimulatedUser user = i < sqlUsers
+                            ? new SimulatedSqlUser(context.getBean(SqlExecutionService.class), rows, "loadtest-" + i)
+                            : new SimulatedGridUser(connectionManager, schemaMetadataService,
+                            context.getBean(QueryAdmissionController.class), context.getBean(DataPathMetrics.class),
+                            context.getBean(TableEditService.class), LoadTestData.ORDERS, rows, "loadtest-" + i);
+                    long delayNanos = warmUp.toNanos() / 2 * i / users;
+                    executor.submit(() -> {
+                        TimeUnit.NANOSECONDS.sleep(delayNanos);
+                        user.run(pacer, report);
+                        return null;
+                    });
+                }
+
+                TimeUnit.NANOSECONDS.sleep(startNanos + warmUp.toNanos() - System.nanoTime());
+                report.start();
+                TimeUnit.NANOSECONDS.sleep(startNanos + warmUp.plus(duration).toNanos() - System.nanoTime());
+                report.stop();
+                System.out.println("Waiting for the users to finish their last actions...");
+            }
+            sampler.shutdownNow();
+
+            int maximumPoolSize = connectionManager.getPoolStats().stream()
+                    .filter(stats -> stats.name().equals(ConnectionManager.DEFAULT))
+                    .mapToInt(ConnectionManager.PoolStats::maximum)
+                    .findFirst()
+                    .orElse(-1);
+            report.print(System.out, context.getBean(MeterRegistry.class), maximumPoolSize,
+                    memory.getHeapMemoryUsage().getMax());
+        } finally {
+            context.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.tk.learn.vaadindemo.loadtest;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Generates the tables the simulated users work on, in the database the application is connected to.
+ * <p>
+ * {@value #ORDERS} has the requested number of rows, with indexes on the columns the grid filters and sorts by;
+ * {@value #CUSTOMERS} has one row per twenty orders and is joined by the ad-hoc queries. The rows are generated by
+ * the database itself, and tables that already have the requested size are reused, so only the first run pays for
+ * loading them.
+ */
+public final class LoadTestData {
+
+    public static final String ORDERS = "loadtest_orders";
+
+    public static final String CUSTOMERS = "loadtest_customers";
+
+    private LoadTestData() {
+    }
+
+    /**
+     * @return the number of customers, which the order rows refer to as {@code customer_<n>}
+     */
+    public static long customers(long orders) {
+        return Math.max(1, orders / 20);
+    }
+
+    /**
+     * Creates and fills both tables unless they already hold the given number of orders.
+     */
+    public static void ensure(JdbcTemplate jdbcTemplate, long orders) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + ORDERS + " (id bigint PRIMARY KEY,"
+                + " customer varchar(64) NOT NULL, status varchar(16) NOT NULL, amount numeric(12, 2) NOT NULL,"
+                + " created_at timestamp NOT NULL, note text)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + CUSTOMERS + " (id bigint PRIMARY KEY,"
+                + " name varchar(64) NOT NULL, region varchar(16) NOT NULL, email varchar(128) NOT NULL)");
+
+        Long existing = jdbcTemplate.queryForObject("SELECT count(*) FROM " + ORDERS, Long.class);
+        if (existing != null && existing == orders) {
+            return;
+        }
+
+        long customers = customers(orders);
+        System.out.printf("Generating %d orders and %d customers...%n", orders, customers);
+        jdbcTemplate.execute("TRUNCATE " + ORDERS + ", " + CUSTOMERS);
+        jdbcTemplate.update("INSERT INTO " + ORDERS
+                + " SELECT g, 'customer_' || (g % ?), (ARRAY['new', 'paid', 'shipped', 'cancelled'])[1 + g % 4],"
+                + " round((random() * 1000)::numeric, 2), timestamp '2020-01-01' + g * interval '1 minute',"
+                + " md5(g::text) FROM generate_series(1, ?) g", customers, orders);
+        jdbcTemplate.update("INSERT INTO " + CUSTOMERS
+                + " SELECT g, 'customer_' || g, (ARRAY['north', 'east', 'south', 'west'])[1 + g % 4],"
+                + " 'customer_' || g || '@example.com' FROM generate_series(0, ? - 1) g", customers);
+
+        // Prefix filters use the pattern index, range filters and sorting the plain ones
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + ORDERS + "_customer ON " + ORDERS
+                + " (customer varchar_pattern_ops)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + ORDERS + "_amount ON " + ORDERS + " (amount)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + ORDERS + "_created_at ON " + ORDERS + " (created_at)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + CUSTOMERS + "_name ON " + CUSTOMERS + " (name)");
+        // Row estimates size the grid, so the statistics have to be current
+        jdbcTemplate.execute("ANALYZE " + ORDERS);
+        jdbcTemplate.execute("ANALYZE " + CUSTOMERS);
+    }
+}
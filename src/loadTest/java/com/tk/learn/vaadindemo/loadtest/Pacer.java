@@ -0,0 +1,43 @@
+package com.tk.learn.vaadindemo.loadtest;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Think time between the actions of a simulated user, and the end of the run.
+ * <p>
+ * Each pause lasts between half and one and a half times the configured think time, so users that started
+ * together drift apart instead of hitting the database in lockstep.
+ */
+public class Pacer {
+
+    private final long thinkTimeMillis;
+    private final long endNanos;
+
+    public Pacer(Duration thinkTime, long endNanos) {
+        this.thinkTimeMillis = thinkTime.toMillis();
+        this.endNanos = endNanos;
+    }
+
+    /**
+     * Waits for the user's think time.
+     *
+     * @return false once the run is over or the thread was interrupted; the user should stop then
+     */
+    public boolean pause() {
+        if (!isRunning()) {
+            return false;
+        }
+        try {
+            Thread.sleep(thinkTimeMillis / 2 + ThreadLocalRandom.current().nextLong(thinkTimeMillis + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return isRunning();
+    }
+
+    public boolean isRunning() {
+        return System.nanoTime() - endNanos < 0 && !Thread.currentThread().isInterrupted();
+    }
+}
@@ -0,0 +1,13 @@
+package com.tk.learn.vaadindemo.loadtest;
+
+/**
+ * One simulated user of the application, driving the same services its view would call.
+ */
+public interface SimulatedUser {
+
+    /**
+     * Acts like a user of the view until the pacer says the run is over, pausing for the think time between
+     * actions and recording every action in the report.
+     */
+    void run(Pacer pacer, LoadReport report);
+}
@@ -0,0 +1,99 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import com.tk.learn.vaadindemo.dbhelper.CancellableQuery;
+import com.tk.learn.vaadindemo.dbhelper.ConnectionManager;
+import com.tk.learn.vaadindemo.dbhelper.ResultRow;
+import com.tk.learn.vaadindemo.loadtest.LoadReport;
+import com.tk.learn.vaadindemo.loadtest.LoadTestData;
+import com.tk.learn.vaadindemo.loadtest.Pacer;
+import com.tk.learn.vaadindemo.loadtest.SimulatedUser;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A user of {@code SqlClientView}: runs ad-hoc queries against the generated tables and scrolls through a few pages
+ * of each result before moving on. Like the view, it keeps the cursor, and with it a pooled connection, open while
+ * it scrolls. Now and then a query returns a large result, which goes past the session's heap budget and spills.
+ */
+public class SimulatedSqlUser implements SimulatedUser {
+
+    private static final int PAGE_SIZE = 50;
+
+    private static final int LARGE_ROWS = 200_000;
+
+    private final SqlExecutionService sqlExecutionService;
+    private final long orders;
+    private final String sessionId;
+
+    /**
+     * @param orders rows in the orders table, to keep the literals of the queries within the generated data
+     */
+    public SimulatedSqlUser(SqlExecutionService sqlExecutionService, long orders, String sessionId) {
+        this.sqlExecutionService = sqlExecutionService;
+        this.orders = orders;
+        this.sessionId = sessionId;
+    }
+
+    @Override
+    public void run(Pacer pacer, LoadReport report) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (pacer.isRunning()) {
+            // One in ten queries reads a large share of the orders table
+            boolean large = random.nextInt(10) == 0;
+            String sql = large ? largeQuery(random) : query(random);
+            QueryCursor cursor = report.time(large ? "sql.large" : "sql.query", () -> {
+                QueryCursor opened = sqlExecutionService.openCursor(ConnectionManager.DEFAULT, sql, sessionId,
+                        new CancellableQuery());
+                opened.fetch(0, PAGE_SIZE * 2);
+                if (large) {
+                    // Dragging the scrollbar to the bottom reads, and buffers, the whole result
+                    opened.fetch(LARGE_ROWS - PAGE_SIZE, PAGE_SIZE);
+                }
+                return opened;
+            });
+            if (cursor == null) {
+                pacer.pause();
+                continue;
+            }
+            try {
+                int offset = PAGE_SIZE * 2;
+                int pages = random.nextInt(4);
+                for (int i = 0; i < pages && pacer.pause(); i++) {
+                    int pageOffset = offset;
+                    // Scrolling past the buffered rows reads on from the open cursor
+                    List<ResultRow> page = report.time("sql.scroll", () -> cursor.fetch(pageOffset, PAGE_SIZE));
+                    if (page == null || page.size() < PAGE_SIZE) {
+                        break;
+                    }
+                    offset += PAGE_SIZE;
+                }
+            } finally {
+                cursor.release();
+            }
+            pacer.pause();
+        }
+    }
+
+    // Literals vary from query to query, as typed queries do, so most of them miss the result cache
+    private String query(ThreadLocalRandom random) {
+        long customer = random.nextLong(LoadTestData.customers(orders));
+        LocalDate day = LocalDate.of(2020, 1, 1).plusDays(random.nextLong(orders / (24 * 60) + 1));
+        return switch (random.nextInt(3)) {
+            case 0 -> "SELECT * FROM " + LoadTestData.ORDERS + " WHERE customer = 'customer_" + customer + "'"
+                    + " ORDER BY created_at";
+            case 1 -> "SELECT status, count(*), sum(amount) FROM " + LoadTestData.ORDERS
+                    + " WHERE created_at >= DATE '" + day + "' AND created_at < DATE '" + day.plusDays(7) + "'"
+                    + " GROUP BY status";
+            default -> "SELECT c.region, o.* FROM " + LoadTestData.ORDERS + " o JOIN " + LoadTestData.CUSTOMERS
+                    + " c ON c.name = o.customer WHERE o.amount >= " + (900 + random.nextInt(100))
+                    + " ORDER BY o.amount DESC LIMIT 1000";
+        };
+    }
+
+    private String largeQuery(ThreadLocalRandom random) {
+        long from = random.nextLong(Math.max(0, orders - LARGE_ROWS) + 1);
+        return "SELECT * FROM " + LoadTestData.ORDERS + " WHERE id > " + from + " AND id <= " + (from + LARGE_ROWS);
+    }
+}
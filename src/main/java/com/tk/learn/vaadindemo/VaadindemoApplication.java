@@ -1,10 +1,13 @@
 package com.tk.learn.vaadindemo;
 
+import com.vaadin.flow.component.page.AppShellConfigurator;
+import com.vaadin.flow.component.page.Push;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+@Push
 @SpringBootApplication
-public class VaadindemoApplication {
+public class VaadindemoApplication implements AppShellConfigurator {
 
 	public static void main(String[] args) {
 		SpringApplication.run(VaadindemoApplication.class, args);
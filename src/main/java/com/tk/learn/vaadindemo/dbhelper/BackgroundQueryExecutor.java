@@ -0,0 +1,67 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Runs queries off the UI thread so the Vaadin session lock is not held while the database works.
+ * Each task gets its own virtual thread; blocking on JDBC is cheap there.
+ */
+@Component
+public class BackgroundQueryExecutor {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Starts the task in the background and ties it to the query handle. Cancelling the handle before the task
+     * starts keeps it from running and completes the returned future with a {@link CancellationException}; once it
+     * runs, the future completes with whatever the task returns or throws, so a result that arrives after all can
+     * still be released.
+     */
+    public <T> CompletableFuture<T> submit(CancellableQuery query, Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // Either the task or a cancel that kept it from starting completes the result, never both
+        AtomicBoolean claimed = new AtomicBoolean();
+        FutureTask<Void> run = new FutureTask<>(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            if (query.isCancelled()) {
+                result.completeExceptionally(notStarted());
+                return;
+            }
+            try {
+                result.complete(task.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                if (isCancelled() && claimed.compareAndSet(false, true)) {
+                    result.completeExceptionally(notStarted());
+                }
+            }
+        };
+        query.setFuture(run);
+        executor.execute(run);
+        return result;
+    }
+
+    private static CancellationException notStarted() {
+        return new CancellationException("The query was cancelled before it started.");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,96 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameterValue;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Handle for a query that runs in the background and may be abandoned before it finishes.
+ * <p>
+ * The statement is captured when it is created so that {@link #cancel()} can call {@link Statement#cancel()} and
+ * stop the work on the database server, not just stop waiting for it. The task running the query is not
+ * interrupted: interrupting a thread blocked in the driver's socket I/O closes the socket, and with it a pooled
+ * connection, while the server-side cancel makes the statement fail promptly on its own.
+ */
+public class CancellableQuery {
+
+    private final AtomicReference<Statement> statement = new AtomicReference<>();
+    private volatile Future<?> future;
+    private volatile boolean cancelled;
+
+    /**
+     * Runs a parameterized query whose statement can be cancelled through this handle.
+     *
+     * @param timeoutSeconds statement timeout, or 0 for none
+     */
+    public <T> List<T> query(JdbcTemplate jdbcTemplate, String sql, List<Object> params, RowMapper<T> rowMapper,
+                             int timeoutSeconds) {
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setQueryTimeout(timeoutSeconds);
+            for (int i = 0; i < params.size(); i++) {
+                // Values with a declared SQL type, e.g. text the database converts to the column's type
+                if (params.get(i) instanceof SqlParameterValue typed) {
+                    ps.setObject(i + 1, typed.getValue(), typed.getSqlType());
+                } else {
+                    ps.setObject(i + 1, params.get(i));
+                }
+            }
+            attach(ps);
+            return ps;
+        }, rowMapper);
+    }
+
+    /**
+     * Ties a statement created elsewhere to this handle so that {@link #cancel()} reaches it.
+     *
+     * @throws CancellationException if the handle was cancelled before the statement existed; the caller should
+     *                               close the statement instead of running it
+     */
+    public void attach(Statement created) {
+        if (cancelled) {
+            throw new CancellationException("The query was cancelled before it started.");
+        }
+        statement.set(created);
+        if (cancelled) {
+            // Cancelled while attaching; the cancel may have missed the statement
+            statement.set(null);
+            throw new CancellationException("The query was cancelled before it started.");
+        }
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels the running statement on the server, and the background task if it has not started yet.
+     */
+    public void cancel() {
+        cancelled = true;
+        Statement running = statement.get();
+        if (running != null) {
+            try {
+                running.cancel();
+            } catch (SQLException e) {
+                // The statement already completed or was closed
+            }
+        }
+        Future<?> task = future;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+}
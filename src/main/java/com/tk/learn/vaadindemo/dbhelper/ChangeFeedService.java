@@ -0,0 +1,379 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tk.learn.vaadindemo.sqlhelper.QueryResultCache;
+import com.vaadin.flow.shared.Registration;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Live change feed for open grids, fed by PostgreSQL {@code LISTEN}/{@code NOTIFY}.
+ * <p>
+ * Watching a table installs statement triggers on it that send one notification per inserting, updating or deleting
+ * statement on the {@value #CHANNEL} channel; for an update it carries the primary keys of the changed rows. Per
+ * database, one connection outside the pool listens on that channel for all watchers and hands each notification to
+ * the watchers of its table. The first change starts a short coalescing delay and everything arriving until it ends
+ * is delivered as one batch, so a burst of writes becomes one small refresh. Inserts and deletes, bursts with more
+ * keys than are worth reading one by one, and notifications that may have been missed while the listener reconnected
+ * are delivered as a reload instead.
+ * <p>
+ * Notifications also evict cached results that read the changed table. The triggers stay installed once created; a
+ * write to a table nobody watches then costs one notification per statement that no one receives, and an update
+ * of no more than {@code db.change-feed.max-keys} rows also the reading of their keys.
+ */
+@Service
+public class ChangeFeedService {
+
+    static final String CHANNEL = "vaadindemo_changes";
+
+    // Statement triggers with transition tables may only have one event each
+    private static final String[] TRIGGER_EVENTS = {"INSERT", "UPDATE", "DELETE"};
+    private static final String TRIGGER_PREFIX = "vaadindemo_change_feed_";
+    private static final String FUNCTION = "vaadindemo_notify_statement";
+
+    // NOTIFY payloads are limited to 8000 bytes; larger changes are sent as a reload
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+
+    // One notification per statement. An update sends the key columns named in the trigger arguments of every changed
+    // row as text, unless it changed keys or too many rows; then, like inserts and deletes, it only names the table
+    private static final String FUNCTION_SQL = "CREATE OR REPLACE FUNCTION " + FUNCTION + "() RETURNS trigger"
+            + " LANGUAGE plpgsql AS $$\n"
+            + "DECLARE\n"
+            + "    new_keys jsonb;\n"
+            + "    old_keys jsonb;\n"
+            + "    payload text;\n"
+            + "BEGIN\n"
+            + "    IF TG_OP = 'UPDATE' THEN\n"
+            + "        IF NOT EXISTS (SELECT FROM new_rows) THEN RETURN NULL; END IF;\n"
+            + "        IF (SELECT count(*) FROM new_rows) <= %d THEN\n"
+            + "            SELECT jsonb_agg(DISTINCT row_key) INTO new_keys FROM (SELECT (SELECT jsonb_agg(to_jsonb(r)"
+            + " ->> c.name ORDER BY c.ord) FROM unnest(TG_ARGV) WITH ORDINALITY AS c(name, ord)) AS row_key"
+            + " FROM new_rows r) k;\n"
+            + "            SELECT jsonb_agg(DISTINCT row_key) INTO old_keys FROM (SELECT (SELECT jsonb_agg(to_jsonb(r)"
+            + " ->> c.name ORDER BY c.ord) FROM unnest(TG_ARGV) WITH ORDINALITY AS c(name, ord)) AS row_key"
+            + " FROM old_rows r) k;\n"
+            + "            IF new_keys = old_keys THEN\n"
+            + "                payload := jsonb_build_object('table', TG_TABLE_NAME, 'op', 'UPDATE', 'keys', new_keys)::text;\n"
+            + "            END IF;\n"
+            + "        END IF;\n"
+            + "    ELSIF TG_OP = 'INSERT' THEN\n"
+            + "        IF NOT EXISTS (SELECT FROM new_rows) THEN RETURN NULL; END IF;\n"
+            + "    ELSE\n"
+            + "        IF NOT EXISTS (SELECT FROM old_rows) THEN RETURN NULL; END IF;\n"
+            + "    END IF;\n"
+            + "    IF payload IS NULL OR octet_length(payload) > " + MAX_PAYLOAD_BYTES + " THEN\n"
+            + "        payload := jsonb_build_object('table', TG_TABLE_NAME, 'op', 'RELOAD')::text;\n"
+            + "    END IF;\n"
+            + "    PERFORM pg_notify('" + CHANNEL + "', payload);\n"
+            + "    RETURN NULL;\n"
+            + "END $$";
+
+    private static final int POLL_MILLIS = 1000;
+    private static final long RECONNECT_MILLIS = 5000;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @Autowired
+    private ConnectionManager connectionManager;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Value("${db.change-feed.coalesce:500ms}")
+    private Duration coalesceDelay;
+
+    @Value("${db.change-feed.max-keys:500}")
+    private int maxKeys;
+
+    private final Map<String, Listener> listeners = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> watchedTriggers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Changes to a watched table since the previous batch.
+     *
+     * @param keys   primary keys of the updated rows, each value as text with an unspecified SQL type so the
+     *               database converts it to the key column's type; ready for {@link TableEditService#fetchRows}
+     * @param reload true if rows were inserted or deleted, too many rows changed, or changes may have been missed;
+     *               the visible rows should be read again and {@code keys} is empty
+     */
+    public record ChangeBatch(List<List<Object>> keys, boolean reload) {
+    }
+
+    @PostConstruct
+    void init() {
+        connectionManager.addRemovalListener(dataSource -> {
+            watchedTriggers.remove(dataSource);
+            Listener listener = listeners.remove(dataSource);
+            if (listener != null) {
+                listener.stop();
+            }
+        });
+    }
+
+    /**
+     * Starts delivering the changes of the table to the consumer. The consumer is called on a timer thread shared by
+     * all watchers and should hand any database work off to another thread.
+     *
+     * @param keyColumns primary key columns of the table, in key order
+     * @return removes the watcher; the listener connection closes when the last watcher of a database is gone
+     * @throws IllegalArgumentException if the table has no primary key
+     */
+    public Registration watch(String dataSource, String tableName, List<String> keyColumns,
+                              Consumer<ChangeBatch> consumer) {
+        if (keyColumns.isEmpty()) {
+            throw new IllegalArgumentException("Table " + tableName + " has no primary key, so its changes cannot be followed.");
+        }
+        installTrigger(dataSource, tableName, keyColumns);
+
+        Watcher watcher = new Watcher(tableName, consumer);
+        listeners.compute(dataSource, (name, existing) -> {
+            Listener listener = existing != null ? existing : new Listener(name);
+            listener.add(watcher);
+            return listener;
+        });
+        return () -> unwatch(dataSource, watcher);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        listeners.values().forEach(Listener::stop);
+        listeners.clear();
+        scheduler.shutdownNow();
+    }
+
+    private void unwatch(String dataSource, Watcher watcher) {
+        watcher.cancelled = true;
+        listeners.computeIfPresent(dataSource, (name, listener) -> {
+            listener.remove(watcher);
+            if (listener.isIdle()) {
+                listener.stop();
+                return null;
+            }
+            return listener;
+        });
+    }
+
+    // Installing takes a brief lock on the table, so it is only done when a trigger is missing
+    private void installTrigger(String dataSource, String tableName, List<String> keyColumns) {
+        Set<String> installed = watchedTriggers.computeIfAbsent(dataSource, name -> ConcurrentHashMap.newKeySet());
+        if (installed.contains(tableName)) {
+            return;
+        }
+        JdbcTemplate jdbcTemplate = connectionManager.jdbcTemplate(dataSource);
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_trigger WHERE tgrelid = to_regclass(?) AND tgname LIKE ?",
+                Integer.class, tableName, TRIGGER_PREFIX + "%");
+        if (existing == null || existing < TRIGGER_EVENTS.length) {
+            jdbcTemplate.execute(FUNCTION_SQL.formatted(maxKeys));
+            String arguments = keyColumns.stream()
+                    .map(column -> "'" + column.replace("'", "''") + "'")
+                    .collect(Collectors.joining(", "));
+            for (String event : TRIGGER_EVENTS) {
+                String transitionTables = switch (event) {
+                    case "INSERT" -> "NEW TABLE AS new_rows";
+                    case "DELETE" -> "OLD TABLE AS old_rows";
+                    default -> "OLD TABLE AS old_rows NEW TABLE AS new_rows";
+                };
+                jdbcTemplate.execute("CREATE OR REPLACE TRIGGER " + TRIGGER_PREFIX + event.toLowerCase(Locale.ROOT)
+                        + " AFTER " + event + " ON " + tableName + " REFERENCING " + transitionTables
+                        + " FOR EACH STATEMENT EXECUTE FUNCTION " + FUNCTION + "(" + arguments + ")");
+            }
+        }
+        installed.add(tableName);
+    }
+
+    private static List<Object> keyParams(List<String> key) {
+        List<Object> params = new ArrayList<>(key.size());
+        key.forEach(value -> params.add(new SqlParameterValue(Types.OTHER, value)));
+        return params;
+    }
+
+    /**
+     * The listener connection of one database and the watchers of its tables.
+     */
+    private final class Listener {
+
+        private final String dataSource;
+        private final Map<String, Set<Watcher>> watchers = new ConcurrentHashMap<>();
+        private volatile boolean running = true;
+
+        Listener(String dataSource) {
+            this.dataSource = dataSource;
+            Thread.ofVirtual().name("change-feed-" + dataSource).start(this::listen);
+        }
+
+        void add(Watcher watcher) {
+            watchers.computeIfAbsent(watcher.tableName, table -> ConcurrentHashMap.newKeySet()).add(watcher);
+        }
+
+        void remove(Watcher watcher) {
+            watchers.computeIfPresent(watcher.tableName, (table, tableWatchers) -> {
+                tableWatchers.remove(watcher);
+                return tableWatchers.isEmpty() ? null : tableWatchers;
+            });
+        }
+
+        boolean isIdle() {
+            return watchers.isEmpty();
+        }
+
+        // The listening thread notices within one poll interval and closes the connection
+        void stop() {
+            running = false;
+        }
+
+        private void listen() {
+            boolean reconnected = false;
+            while (running) {
+                try (Connection connection = connectionManager.openDedicatedConnection(dataSource)) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("LISTEN " + CHANNEL);
+                    }
+                    PGConnection notifications = connection.unwrap(PGConnection.class);
+                    if (reconnected) {
+                        // Whatever changed while the connection was down was never delivered
+                        watchers.values().forEach(tableWatchers -> tableWatchers.forEach(Watcher::reload));
+                    }
+                    while (running) {
+                        PGNotification[] received = notifications.getNotifications(POLL_MILLIS);
+                        if (received != null && received.length > 0) {
+                            dispatch(received);
+                        }
+                    }
+                } catch (SQLException e) {
+                    if (!running) {
+                        return;
+                    }
+                    e.printStackTrace();
+                    reconnected = true;
+                    try {
+                        Thread.sleep(RECONNECT_MILLIS);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void dispatch(PGNotification[] received) {
+            Set<String> changedTables = new HashSet<>();
+            for (PGNotification notification : received) {
+                JsonNode change;
+                try {
+                    change = JSON.readTree(notification.getParameter());
+                } catch (JsonProcessingException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                String table = change.path("table").asText();
+                changedTables.add(table);
+                Set<Watcher> tableWatchers = watchers.get(table);
+                if (tableWatchers == null) {
+                    continue;
+                }
+                if (!"UPDATE".equals(change.path("op").asText())) {
+                    tableWatchers.forEach(Watcher::reload);
+                    continue;
+                }
+                for (JsonNode changedKey : change.path("keys")) {
+                    List<String> key = new ArrayList<>();
+                    changedKey.forEach(value -> key.add(value.isNull() ? null : value.asText()));
+                    tableWatchers.forEach(watcher -> watcher.add(key));
+                }
+            }
+            // Once per poll rather than per notification; a burst can bring thousands
+            changedTables.forEach(table -> queryResultCache.invalidateTable(dataSource, table));
+        }
+    }
+
+    /**
+     * One open grid following a table, with the changes waiting for the end of the coalescing delay.
+     */
+    private final class Watcher {
+
+        private final String tableName;
+        private final Consumer<ChangeBatch> consumer;
+        private final Set<List<String>> pendingKeys = new LinkedHashSet<>();
+        private boolean pendingReload;
+        private boolean scheduled;
+        private volatile boolean cancelled;
+
+        Watcher(String tableName, Consumer<ChangeBatch> consumer) {
+            this.tableName = tableName;
+            this.consumer = consumer;
+        }
+
+        synchronized void add(List<String> key) {
+            if (pendingKeys.size() >= maxKeys) {
+                reload();
+                return;
+            }
+            if (!pendingReload) {
+                pendingKeys.add(key);
+            }
+            schedule();
+        }
+
+        synchronized void reload() {
+            // A reload reads the visible rows anyway, so the single keys are of no use any more
+            pendingReload = true;
+            pendingKeys.clear();
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled && !cancelled) {
+                scheduled = true;
+                scheduler.schedule(this::flush, coalesceDelay.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void flush() {
+            ChangeBatch batch;
+            synchronized (this) {
+                scheduled = false;
+                batch = new ChangeBatch(pendingKeys.stream().map(ChangeFeedService::keyParams).toList(),
+                        pendingReload);
+                pendingKeys.clear();
+                pendingReload = false;
+            }
+            if (cancelled) {
+                return;
+            }
+            try {
+                consumer.accept(batch);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
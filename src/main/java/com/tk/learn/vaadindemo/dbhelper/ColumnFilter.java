@@ -0,0 +1,196 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the text typed into a grid filter field into a predicate that matches the column's type and can use its
+ * indexes.
+ * <p>
+ * Numbers, dates and times accept {@code 42}, {@code >10}, {@code >=10}, {@code <5}, {@code <=5} and ranges
+ * {@code 10..20} (either end may be left open), compared as typed values so a B-tree index on the column serves
+ * them. A date given for a timestamp column matches that whole day. Text is matched by prefix ({@code LIKE 'abc%'},
+ * which an index with {@code text_pattern_ops} or C collation serves), or, when the column has a trigram index, by
+ * case-insensitive substring ({@code ILIKE '%abc%'}). A leading {@code =} asks for an exact match and a leading
+ * {@code *} for a substring match even without a trigram index.
+ * <p>
+ * The SQL of a predicate only depends on the column and the kind of comparison, never on the value, so a filter
+ * yields a handful of statement shapes that the driver prepares once and then reuses.
+ *
+ * @param predicate SQL condition with {@code ?} placeholders
+ * @param params    values for the placeholders
+ */
+record ColumnFilter(String predicate, List<Object> params) {
+
+    private static final Pattern RANGE = Pattern.compile("(.*?)\\.\\.(.*)");
+    private static final Pattern COMPARISON = Pattern.compile("(>=|<=|>|<|=)?(.*)");
+
+    /**
+     * @param sqlType        the column's {@link Types} code
+     * @param trigramIndexed true if the column has a trigram index, making substring matching cheap
+     * @param input          the filter text, not blank
+     * @throws IllegalArgumentException if the input is not a valid value for the column's type
+     */
+    static ColumnFilter parse(String column, int sqlType, boolean trigramIndexed, String input) {
+        String value = input.strip();
+        return switch (sqlType) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT,
+                 Types.REAL, Types.FLOAT, Types.DOUBLE, Types.NUMERIC, Types.DECIMAL,
+                 Types.DATE, Types.TIME, Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> ordered(column, sqlType, value);
+            case Types.BOOLEAN, Types.BIT -> new ColumnFilter(column + " = ?", List.of(parseBoolean(value)));
+            case Types.CHAR, Types.VARCHAR, Types.LONGVARCHAR, Types.NCHAR, Types.NVARCHAR, Types.LONGNVARCHAR ->
+                    text(column, trigramIndexed, value);
+            default -> other(column, value);
+        };
+    }
+
+    /**
+     * @return the conditions joined with AND, or an empty string for no conditions
+     */
+    static String whereClause(List<ColumnFilter> filters) {
+        return String.join(" AND ", filters.stream().map(ColumnFilter::predicate).toList());
+    }
+
+    /**
+     * @return the parameters of all conditions, in placeholder order
+     */
+    static List<Object> params(List<ColumnFilter> filters) {
+        List<Object> params = new ArrayList<>();
+        filters.forEach(filter -> params.addAll(filter.params()));
+        return params;
+    }
+
+    /**
+     * @return a short hint on the filter syntax for the column's type, for the field's placeholder
+     */
+    static String hint(int sqlType, boolean trigramIndexed) {
+        return switch (sqlType) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT,
+                 Types.REAL, Types.FLOAT, Types.DOUBLE, Types.NUMERIC, Types.DECIMAL -> "42, >=10, 10..20";
+            case Types.DATE, Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> "2024-01-31, 2024-01-01..2024-02-01";
+            case Types.TIME -> "12:00, 08:00..17:00";
+            case Types.CHAR, Types.VARCHAR, Types.LONGVARCHAR, Types.NCHAR, Types.NVARCHAR, Types.LONGNVARCHAR ->
+                    trigramIndexed ? "contains, =exact" : "starts with, =exact, *contains";
+            default -> "exact value";
+        };
+    }
+
+    private static ColumnFilter ordered(String column, int sqlType, String value) {
+        Matcher range = RANGE.matcher(value);
+        if (range.matches()) {
+            List<String> conditions = new ArrayList<>();
+            List<Object> params = new ArrayList<>();
+            String from = range.group(1).strip();
+            String to = range.group(2).strip();
+            if (!from.isEmpty()) {
+                conditions.add(column + " >= ?");
+                params.add(parseValue(from, sqlType, false));
+            }
+            if (!to.isEmpty()) {
+                // A date as the upper end of a timestamp range includes that whole day
+                boolean wholeDay = isDateOnly(to, sqlType);
+                conditions.add(column + (wholeDay ? " < ?" : " <= ?"));
+                params.add(parseValue(to, sqlType, wholeDay));
+            }
+            if (conditions.isEmpty()) {
+                throw new IllegalArgumentException("A range needs at least one end, e.g. 10..20");
+            }
+            return new ColumnFilter(String.join(" AND ", conditions), params);
+        }
+
+        Matcher comparison = COMPARISON.matcher(value);
+        comparison.matches();
+        String operator = comparison.group(1) == null ? "=" : comparison.group(1);
+        String operand = comparison.group(2).strip();
+        if (isDateOnly(operand, sqlType)) {
+            // Compare against the day boundaries so the index on the timestamp column can be used
+            Object startOfDay = parseValue(operand, sqlType, false);
+            Object nextDay = parseValue(operand, sqlType, true);
+            return switch (operator) {
+                case "=" -> new ColumnFilter(column + " >= ? AND " + column + " < ?", List.of(startOfDay, nextDay));
+                case ">" -> new ColumnFilter(column + " >= ?", List.of(nextDay));
+                case "<=" -> new ColumnFilter(column + " < ?", List.of(nextDay));
+                default -> new ColumnFilter(column + " " + operator + " ?", List.of(startOfDay));
+            };
+        }
+        return new ColumnFilter(column + " " + operator + " ?", List.of(parseValue(operand, sqlType, false)));
+    }
+
+    private static ColumnFilter text(String column, boolean trigramIndexed, String value) {
+        if (value.startsWith("=")) {
+            return new ColumnFilter(column + " = ?", List.of(value.substring(1)));
+        }
+        if (value.startsWith("*")) {
+            return new ColumnFilter(column + " ILIKE ?", List.of("%" + escapeLike(value.substring(1)) + "%"));
+        }
+        if (trigramIndexed) {
+            return new ColumnFilter(column + " ILIKE ?", List.of("%" + escapeLike(value) + "%"));
+        }
+        return new ColumnFilter(column + " LIKE ?", List.of(escapeLike(value) + "%"));
+    }
+
+    // UUIDs are bound as such so an index on the column is usable; anything else compares as text
+    private static ColumnFilter other(String column, String value) {
+        try {
+            return new ColumnFilter(column + " = ?", List.of(UUID.fromString(value)));
+        } catch (IllegalArgumentException e) {
+            return new ColumnFilter("CAST(" + column + " AS text) = ?", List.of(value));
+        }
+    }
+
+    private static boolean isDateOnly(String value, int sqlType) {
+        return (sqlType == Types.TIMESTAMP || sqlType == Types.TIMESTAMP_WITH_TIMEZONE) && value.length() == 10;
+    }
+
+    /**
+     * @param nextDay for a date given for a timestamp column, return the start of the following day
+     */
+    private static Object parseValue(String value, int sqlType, boolean nextDay) {
+        try {
+            return switch (sqlType) {
+                case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> Long.valueOf(value);
+                case Types.REAL, Types.FLOAT, Types.DOUBLE -> Double.valueOf(value);
+                case Types.NUMERIC, Types.DECIMAL -> new BigDecimal(value);
+                case Types.DATE -> LocalDate.parse(value);
+                case Types.TIME -> LocalTime.parse(value);
+                default -> isDateOnly(value, sqlType)
+                        ? LocalDate.parse(value).plusDays(nextDay ? 1 : 0).atStartOfDay()
+                        : LocalDateTime.parse(value.replace(' ', 'T'));
+            };
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("'" + value + "' is not a valid " + typeName(sqlType));
+        }
+    }
+
+    private static String typeName(int sqlType) {
+        return switch (sqlType) {
+            case Types.DATE -> "date (yyyy-mm-dd)";
+            case Types.TIME -> "time (hh:mm[:ss])";
+            case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> "date or timestamp (yyyy-mm-dd[ hh:mm[:ss]])";
+            default -> "number";
+        };
+    }
+
+    private static Boolean parseBoolean(String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "t", "true", "y", "yes", "on", "1" -> true;
+            case "f", "false", "n", "no", "off", "0" -> false;
+            default -> throw new IllegalArgumentException("'" + value + "' is not a boolean (true or false)");
+        };
+    }
+
+    // LIKE treats % and _ as wildcards and backslash as its escape character
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
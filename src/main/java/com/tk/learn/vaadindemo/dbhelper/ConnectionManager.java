@@ -0,0 +1,307 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The databases the application can work with, each behind its own connection pool.
+ * <p>
+ * The {@code spring.datasource} is always there as {@link #DEFAULT}. Further databases come from
+ * {@code db.datasources.targets} at startup or are registered at runtime; each gets an independently sized HikariCP
+ * pool that closes idle connections and publishes the {@code hikaricp.*} meters, tagged with its pool name. After
+ * registration a few connections are opened and validated in the background so the pool is warm before the first
+ * query arrives.
+ * <p>
+ * Services look up the {@link JdbcTemplate} and transaction manager of a database by name for every call, so one
+ * deployment serves all of them. Caches keyed by database register a {@link #addRemovalListener removal listener}
+ * to drop their entries when a database is removed.
+ * <p>
+ * A database can name another one under {@code db.datasources.replicas} to serve its read-only queries, typically a
+ * streaming replica registered as a target of its own; {@link #readTarget(String)} resolves it.
+ */
+@Component
+public class ConnectionManager {
+
+    /**
+     * Name of the database configured under {@code spring.datasource}.
+     */
+    public static final String DEFAULT = "default";
+
+    private static final String NAME_PATTERN = "^[a-zA-Z][a-zA-Z0-9_-]*$";
+
+    @Autowired
+    private DataSource defaultDataSource;
+
+    @Autowired
+    private JdbcTemplate defaultJdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager defaultTransactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private BackgroundQueryExecutor backgroundQueryExecutor;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${db.datasources.default-warm-up:2}")
+    private int defaultWarmUpConnections;
+
+    // Sorted so selectors list the databases in a stable order
+    private final Map<String, Target> targets = new ConcurrentSkipListMap<>();
+    private final List<Consumer<String>> removalListeners = new CopyOnWriteArrayList<>();
+    // Database name -> name of the database that serves its read-only queries
+    private final Map<String, String> replicas = new ConcurrentHashMap<>();
+
+    private record Target(String name, DataSource dataSource, JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager) {
+    }
+
+    /**
+     * Connection counts of one pool at a point in time; -1 where the pool does not report a number.
+     *
+     * @param name    the database
+     * @param url     its JDBC URL, with credentials masked
+     * @param active  connections in use
+     * @param idle    open connections waiting in the pool
+     * @param total   open connections
+     * @param waiting threads waiting for a connection
+     * @param maximum most connections the pool opens
+     */
+    public record PoolStats(String name, String url, int active, int idle, int total, int waiting, int maximum) {
+    }
+
+    @PostConstruct
+    void init() {
+        targets.put(DEFAULT, new Target(DEFAULT, defaultDataSource, defaultJdbcTemplate, defaultTransactionManager));
+        Map<String, DataSourceSettings> configured = Binder.get(environment)
+                .bind("db.datasources.targets", Bindable.mapOf(String.class, DataSourceSettings.class))
+                .orElse(Map.of());
+        configured.forEach((name, settings) -> logFailure(register(name, settings)));
+        replicas.putAll(Binder.get(environment)
+                .bind("db.datasources.replicas", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of()));
+        logFailure(warmUpInBackground(defaultDataSource, defaultWarmUpConnections));
+    }
+
+    /**
+     * Creates a pool for the database and starts warming it up. The pool does not connect while it is created, so
+     * a database that is down does not fail the registration; the returned future reports that instead.
+     *
+     * @return completes with the time the warm-up took, or exceptionally if no connection could be opened
+     * @throws IllegalArgumentException if the name is invalid or already taken, or the URL is not accepted by
+     *                                  {@link JdbcUrls#validate(String)}
+     */
+    public CompletableFuture<Duration> register(String name, DataSourceSettings settings) {
+        if (name == null || !name.matches(NAME_PATTERN)) {
+            throw new IllegalArgumentException("Invalid data source name: " + name);
+        }
+        JdbcUrls.validate(settings.url());
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("db-" + name);
+        config.setJdbcUrl(settings.url());
+        config.setUsername(settings.username());
+        config.setPassword(settings.password());
+        config.setMaximumPoolSize(settings.maximumPoolSize());
+        config.setMinimumIdle(Math.min(settings.minimumIdle(), settings.maximumPoolSize()));
+        config.setIdleTimeout(settings.idleTimeout().toMillis());
+        config.setInitializationFailTimeout(-1);
+        config.setMetricRegistry(meterRegistry);
+        if (defaultDataSource instanceof HikariDataSource primary) {
+            // Same driver tuning (prepare threshold, batch rewriting) as the default database
+            config.setDataSourceProperties(primary.getDataSourceProperties());
+        }
+
+        HikariDataSource dataSource = new HikariDataSource(config);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Target target = new Target(name, dataSource, jdbcTemplate, new DataSourceTransactionManager(dataSource));
+        if (targets.putIfAbsent(name, target) != null) {
+            dataSource.close();
+            throw new IllegalArgumentException("A data source named " + name + " already exists.");
+        }
+        return warmUpInBackground(dataSource, Math.min(settings.warmUpConnections(), settings.maximumPoolSize()));
+    }
+
+    /**
+     * Closes the pool of the database and forgets it. The default database cannot be removed.
+     */
+    public void unregister(String name) {
+        if (DEFAULT.equals(name)) {
+            throw new IllegalArgumentException("The default data source cannot be removed.");
+        }
+        Target target = targets.remove(name);
+        if (target == null) {
+            return;
+        }
+        removalListeners.forEach(listener -> listener.accept(name));
+        ((HikariDataSource) target.dataSource()).close();
+    }
+
+    /**
+     * @return the names of all databases, in alphabetical order
+     */
+    public List<String> getNames() {
+        return new ArrayList<>(targets.keySet());
+    }
+
+    public DataSource dataSource(String name) {
+        return target(name).dataSource();
+    }
+
+    public JdbcTemplate jdbcTemplate(String name) {
+        return target(name).jdbcTemplate();
+    }
+
+    public PlatformTransactionManager transactionManager(String name) {
+        return target(name).transactionManager();
+    }
+
+    /**
+     * @return the database that serves read-only queries for the given one: its replica if one is configured and
+     *         currently registered, otherwise the database itself
+     */
+    public String readTarget(String name) {
+        String primary = name == null ? DEFAULT : name;
+        String replica = replicas.get(primary);
+        return replica != null && targets.containsKey(replica) ? replica : primary;
+    }
+
+    /**
+     * Opens a connection to the database outside its pool, with the pool's settings, for work that holds a
+     * connection indefinitely such as listening for notifications. The caller must close it.
+     */
+    public Connection openDedicatedConnection(String name) throws SQLException {
+        DataSource dataSource = target(name).dataSource();
+        if (!(dataSource instanceof HikariDataSource hikari)) {
+            return dataSource.getConnection();
+        }
+        Properties properties = new Properties();
+        properties.putAll(hikari.getDataSourceProperties());
+        if (hikari.getUsername() != null) {
+            properties.setProperty("user", hikari.getUsername());
+        }
+        if (hikari.getPassword() != null) {
+            properties.setProperty("password", hikari.getPassword());
+        }
+        return DriverManager.getConnection(hikari.getJdbcUrl(), properties);
+    }
+
+    /**
+     * @return the current connection counts of every pool
+     */
+    public List<PoolStats> getPoolStats() {
+        List<PoolStats> stats = new ArrayList<>(targets.size());
+        for (Target target : targets.values()) {
+            if (target.dataSource() instanceof HikariDataSource hikari) {
+                HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+                String url = JdbcUrls.mask(hikari.getJdbcUrl());
+                // The pool bean only exists once the pool has started
+                stats.add(pool == null
+                        ? new PoolStats(target.name(), url, 0, 0, 0, 0, hikari.getMaximumPoolSize())
+                        : new PoolStats(target.name(), url, pool.getActiveConnections(),
+                        pool.getIdleConnections(), pool.getTotalConnections(), pool.getThreadsAwaitingConnection(),
+                        hikari.getMaximumPoolSize()));
+            } else {
+                stats.add(new PoolStats(target.name(), "", -1, -1, -1, -1, -1));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Registers a callback that is called with the name of every database removed from now on.
+     */
+    public void addRemovalListener(Consumer<String> listener) {
+        removalListeners.add(listener);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // The default pool belongs to Spring, which closes it
+        targets.values().stream()
+                .filter(target -> !DEFAULT.equals(target.name()))
+                .forEach(target -> ((HikariDataSource) target.dataSource()).close());
+        targets.clear();
+    }
+
+    private Target target(String name) {
+        Target target = targets.get(name == null ? DEFAULT : name);
+        if (target == null) {
+            throw new IllegalArgumentException("Unknown data source: " + name);
+        }
+        return target;
+    }
+
+    private CompletableFuture<Duration> warmUpInBackground(DataSource dataSource, int connections) {
+        return backgroundQueryExecutor.submit(new CancellableQuery(), () -> warmUp(dataSource, connections));
+    }
+
+    private static void logFailure(CompletableFuture<Duration> warmUp) {
+        warmUp.whenComplete((duration, error) -> {
+            if (error != null) {
+                // The pool stays registered and connects once the database is reachable
+                error.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Opens the given number of connections at once and validates each, then hands them back to the pool, which
+     * keeps them until they have been idle for the idle timeout.
+     */
+    private static Duration warmUp(DataSource dataSource, int connections) {
+        long start = System.nanoTime();
+        List<Connection> opened = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                Connection connection = dataSource.getConnection();
+                opened.add(connection);
+                if (!connection.isValid(5)) {
+                    throw new SQLException("Connection failed validation during warm-up");
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Warm-up failed: " + e.getMessage(), e);
+        } finally {
+            for (Connection connection : opened) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,100 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming RFC 4180 parser that reads one record at a time.
+ * <p>
+ * Follows the rules of PostgreSQL's {@code COPY ... (FORMAT csv)} so both import paths read a file the same way: an
+ * unquoted empty field is NULL, a quoted empty field is an empty string, and quoted fields may contain commas,
+ * doubled quotes and line breaks.
+ */
+class CsvRecordReader {
+
+    private final Reader reader;
+    private int lookahead = -2;
+    private long recordNumber;
+
+    CsvRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return the fields of the next record, or null at the end of the input
+     */
+    List<String> next() throws IOException {
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        recordNumber++;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (c == '"' && field.isEmpty() && !quoted) {
+                quoted = true;
+                readQuoted(field);
+                c = read();
+                continue;
+            }
+            if (c == ',' || c == '\n' || c == '\r' || c == -1) {
+                fields.add(quoted || !field.isEmpty() ? field.toString() : null);
+                if (c != ',') {
+                    if (c == '\r' && peek() == '\n') {
+                        read();
+                    }
+                    return fields;
+                }
+                field.setLength(0);
+                quoted = false;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * @return the number of the record last returned by {@link #next()}, starting at 1
+     */
+    long getRecordNumber() {
+        return recordNumber;
+    }
+
+    private void readQuoted(StringBuilder field) throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw new IOException("Unterminated quoted field in record " + recordNumber);
+            }
+            if (c == '"') {
+                if (peek() != '"') {
+                    return;
+                }
+                read();
+            }
+            field.append((char) c);
+        }
+    }
+
+    private int read() throws IOException {
+        if (lookahead != -2) {
+            int c = lookahead;
+            lookahead = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private int peek() throws IOException {
+        if (lookahead == -2) {
+            lookahead = reader.read();
+        }
+        return lookahead;
+    }
+}
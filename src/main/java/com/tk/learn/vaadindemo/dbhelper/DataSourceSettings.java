@@ -0,0 +1,27 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Connection settings and pool sizing of one database registered with the {@link ConnectionManager}.
+ * <p>
+ * The defaults keep an idle database cheap: the pool shrinks to no connections once they have been idle for
+ * {@code idleTimeout}, and only grows up to {@code maximumPoolSize} under load.
+ *
+ * @param url               JDBC URL
+ * @param username          database user
+ * @param password          password of the user
+ * @param maximumPoolSize   most connections the pool opens
+ * @param minimumIdle       idle connections the pool keeps open even without load
+ * @param idleTimeout       how long a connection beyond {@code minimumIdle} may stay idle before it is closed
+ * @param warmUpConnections connections opened and validated right after registration, so the first queries do not
+ *                          pay for connecting
+ */
+public record DataSourceSettings(String url, String username, String password,
+                                 @DefaultValue("10") int maximumPoolSize,
+                                 @DefaultValue("0") int minimumIdle,
+                                 @DefaultValue("10m") Duration idleTimeout,
+                                 @DefaultValue("2") int warmUpConnections) {
+}
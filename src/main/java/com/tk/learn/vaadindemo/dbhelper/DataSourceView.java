@@ -0,0 +1,113 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.formlayout.FormLayout;
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.textfield.IntegerField;
+import com.vaadin.flow.component.textfield.PasswordField;
+import com.vaadin.flow.component.textfield.TextField;
+import com.vaadin.flow.router.PageTitle;
+import com.vaadin.flow.router.Route;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Duration;
+
+/**
+ * Admin page listing the databases of the {@link ConnectionManager} with the current usage of their pools, and for
+ * registering and removing databases at runtime. Registered databases only live until the application restarts;
+ * permanent ones belong under {@code db.datasources.targets}. Only PostgreSQL URLs without class-valued driver
+ * parameters are accepted, and URLs are listed with their credentials masked.
+ */
+@Route("admin/datasources")
+@PageTitle("datasources")
+public class DataSourceView extends VerticalLayout {
+
+    private final ConnectionManager connectionManager;
+    private Grid<ConnectionManager.PoolStats> poolGrid = new Grid<>();
+    private TextField nameField = new TextField("Name");
+    private TextField urlField = new TextField("JDBC URL");
+    private TextField usernameField = new TextField("Username");
+    private PasswordField passwordField = new PasswordField("Password");
+    private IntegerField maximumPoolSizeField = new IntegerField("Max Connections");
+    private IntegerField minimumIdleField = new IntegerField("Min Idle Connections");
+    private IntegerField warmUpField = new IntegerField("Warm-up Connections");
+
+    @Autowired
+    public DataSourceView(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+
+        poolGrid.addColumn(ConnectionManager.PoolStats::name).setHeader("Name").setAutoWidth(true);
+        poolGrid.addColumn(ConnectionManager.PoolStats::url).setHeader("URL").setFlexGrow(1);
+        poolGrid.addColumn(ConnectionManager.PoolStats::active).setHeader("Active").setAutoWidth(true);
+        poolGrid.addColumn(ConnectionManager.PoolStats::idle).setHeader("Idle").setAutoWidth(true);
+        poolGrid.addColumn(ConnectionManager.PoolStats::waiting).setHeader("Waiting").setAutoWidth(true);
+        poolGrid.addColumn(stats -> stats.total() + " / " + stats.maximum()).setHeader("Open / Max").setAutoWidth(true);
+
+        urlField.setPlaceholder("jdbc:postgresql://host:5432/database");
+        urlField.setHelperText("PostgreSQL only; pass credentials in the fields below");
+        maximumPoolSizeField.setValue(10);
+        maximumPoolSizeField.setMin(1);
+        minimumIdleField.setValue(0);
+        minimumIdleField.setMin(0);
+        warmUpField.setValue(2);
+        warmUpField.setMin(0);
+        FormLayout registerForm = new FormLayout(nameField, urlField, usernameField, passwordField,
+                maximumPoolSizeField, minimumIdleField, warmUpField);
+
+        Button refreshButton = new Button("Refresh", event -> refresh());
+        Button removeButton = new Button("Remove Selected", event -> removeSelected());
+        Button registerButton = new Button("Register", event -> register());
+
+        add(new HorizontalLayout(refreshButton, removeButton), poolGrid, registerForm, registerButton);
+        refresh();
+    }
+
+    private void refresh() {
+        poolGrid.setItems(connectionManager.getPoolStats());
+    }
+
+    private void register() {
+        String name = nameField.getValue();
+        DataSourceSettings settings = new DataSourceSettings(urlField.getValue(), usernameField.getValue(),
+                passwordField.getValue(), valueOr(maximumPoolSizeField, 10), valueOr(minimumIdleField, 0),
+                Duration.ofMinutes(10), valueOr(warmUpField, 2));
+        try {
+            UI ui = UI.getCurrent();
+            connectionManager.register(name, settings).whenComplete((warmUp, error) -> ui.access(() -> {
+                if (error != null) {
+                    Notification.show("Data source " + name + " registered, but connecting failed: "
+                            + error.getMessage(), 3000, Notification.Position.MIDDLE);
+                } else {
+                    Notification.show("Data source " + name + " registered; warm-up took " + warmUp.toMillis()
+                            + " ms.", 3000, Notification.Position.MIDDLE);
+                }
+                refresh();
+            }));
+            nameField.clear();
+            passwordField.clear();
+            refresh();
+        } catch (Exception e) {
+            e.printStackTrace();
+            Notification.show("Error registering data source: " + e.getMessage(), 3000, Notification.Position.MIDDLE);
+        }
+    }
+
+    private void removeSelected() {
+        poolGrid.getSelectedItems().forEach(stats -> {
+            try {
+                connectionManager.unregister(stats.name());
+            } catch (Exception e) {
+                Notification.show(e.getMessage(), 3000, Notification.Position.MIDDLE);
+            }
+        });
+        refresh();
+    }
+
+    private static int valueOr(IntegerField field, int defaultValue) {
+        return field.getValue() != null ? field.getValue() : defaultValue;
+    }
+}
@@ -1,20 +1,37 @@
 package com.tk.learn.vaadindemo.dbhelper;
 
+import com.tk.learn.vaadindemo.export.ExportLinks;
+import com.tk.learn.vaadindemo.export.ResultExportService;
+import com.tk.learn.vaadindemo.metrics.DataPathMetrics;
+import com.tk.learn.vaadindemo.sqlhelper.QueryAdmissionController;
+import com.tk.learn.vaadindemo.sqlhelper.QueryResultCache;
+import com.vaadin.flow.component.AbstractField;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.checkbox.Checkbox;
 import com.vaadin.flow.component.combobox.ComboBox;
 import com.vaadin.flow.component.formlayout.FormLayout;
 import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.grid.dataview.GridLazyDataView;
+import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.TextField;
+import com.vaadin.flow.component.upload.Upload;
+import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.shared.Registration;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.core.simple.JdbcClient;
 
-import java.sql.*;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.sql.Types;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -22,76 +39,177 @@ import java.util.stream.Collectors;
 @PageTitle("dynamic-grid")
 public class DynamicGridView extends VerticalLayout {
 
-    private final JdbcClient jdbcClient;
-    private final JdbcTemplate jdbcTemplate;
+    private final ConnectionManager connectionManager;
+    private final SchemaMetadataService schemaMetadataService;
+    private final BackgroundQueryExecutor backgroundQueryExecutor;
+    private final QueryResultCache queryResultCache;
+    private final QueryAdmissionController admissionController;
+    private final DataPathMetrics metrics;
+    private final TableEditService tableEditService;
+    private final TableImportService tableImportService;
+    private final ChangeFeedService changeFeedService;
+    private ComboBox<String> dataSourceSelector;
     private ComboBox<String> tableSelector;
-    private Grid<Map<String, Object>> grid = new Grid<>();
+    private Grid<ResultRow> grid = new Grid<>();
     private FormLayout dynamicForm = new FormLayout();
-//    private FormLayout filterForm = new FormLayout();  // Form for filtering columns
+    private FormLayout filterForm = new FormLayout();  // Form for filtering columns
     private Button updateButton = new Button("Update");
+    private Button saveButton = new Button("Save Changes");
+    private Button discardButton = new Button("Discard Changes");
+    private ExportLinks exportLinks;
+    private Upload importUpload;
+    private Span importStatus = new Span();
+    private Span rowCount = new Span();
+    private Button countButton = new Button("Count Rows");
+    private Checkbox liveCheckbox = new Checkbox("Live updates");
+    private Registration liveRegistration;
+    private UploadPipe importPipe;
 //    private Button insertButton = new Button("Insert New Record");
-    private Map<String, Object> selectedRow;
+    private ResultRow selectedRow;
     private Set<String> editableColumns = new HashSet<>();
-    private Set<String> primaryKeyColumns = new HashSet<>();
+    private Set<String> primaryKeyColumns = new LinkedHashSet<>();
     private Map<String,Integer> columnNameToTypes = new HashMap<>();
-    private Map<String, TextField> filterFields = new HashMap<>(); // For dynamic filters
+    private Map<String, AbstractField<?, String>> filterFields = new LinkedHashMap<>(); // For dynamic filters
+    private Set<String> trigramIndexedColumns = new HashSet<>();
+    private volatile KeysetTableDataProvider dataProvider;
+    private CancellableQuery runningFilterQuery;
+    private CancellableQuery runningCountQuery;
+    private final RowEditBuffer editBuffer = new RowEditBuffer();
 
-    private String queryToFetchAllTables = "SELECT table_name FROM information_schema.tables WHERE table_schema = 'public'";
+    private static final int FILTER_DEBOUNCE_MILLIS = 400;
+
+    // First page of a new filter together with the planner's estimate of the filtered row count
+    private record FilterResult(KeysetTableDataProvider.FirstPage firstPage, int estimate) {
+    }
 
     @Autowired
-    public DynamicGridView(JdbcClient jdbcClient, JdbcTemplate jdbcTemplate) {
-        this.jdbcClient = jdbcClient;
-        this.jdbcTemplate = jdbcTemplate;
+    public DynamicGridView(ConnectionManager connectionManager, SchemaMetadataService schemaMetadataService,
+                           BackgroundQueryExecutor backgroundQueryExecutor, QueryResultCache queryResultCache,
+                           QueryAdmissionController admissionController, DataPathMetrics metrics,
+                           TableEditService tableEditService, ResultExportService exportService,
+                           TableImportService tableImportService, ChangeFeedService changeFeedService) {
+        this.connectionManager = connectionManager;
+        this.schemaMetadataService = schemaMetadataService;
+        this.backgroundQueryExecutor = backgroundQueryExecutor;
+        this.queryResultCache = queryResultCache;
+        this.admissionController = admissionController;
+        this.metrics = metrics;
+        this.tableEditService = tableEditService;
+        this.tableImportService = tableImportService;
+        this.changeFeedService = changeFeedService;
+
+        // Set up the data source selector; switching databases starts over with its table list
+        dataSourceSelector = new ComboBox<>("Data Source");
+        dataSourceSelector.setItems(connectionManager.getNames());
+        dataSourceSelector.setValue(ConnectionManager.DEFAULT);
+        dataSourceSelector.setAllowCustomValue(false);
+        dataSourceSelector.addValueChangeListener(event -> {
+            if (event.isFromClient()) {
+                switchDataSource();
+            }
+        });
 
         // Set up the table selector combo box
         tableSelector = new ComboBox<>("Select Table");
         tableSelector.setItems(getTableNames());
         tableSelector.addValueChangeListener(event -> {
             if (event.getValue() != null) {
-                updateGrid(event.getValue());
                 columnNameToTypes.clear();
                 columnNameToTypes = getColumnToType(event.getValue());
+                updateGrid(event.getValue());
 
 //                insertButton.setVisible(true);
                 dynamicForm.setVisible(true);
-//                filterForm.setVisible(true);  // Show filter form on table selection
+                filterForm.setVisible(true);  // Show filter form on table selection
             } else {
 //                insertButton.setVisible(false);
                 dynamicForm.setVisible(false);
-//                filterForm.setVisible(false);  // Hide filter form if no table is selected
+                filterForm.setVisible(false);  // Hide filter form if no table is selected
             }
         });
 
-        // Set up the "Update" Button
+        // Set up the "Update" Button; it stages the edit, "Save Changes" writes all staged edits at once
         updateButton.setVisible(false);
         updateButton.addClickListener(event -> updateSelectedRow());
+        saveButton.addClickListener(event -> saveEdits());
+        discardButton.addClickListener(event -> discardEdits());
+        updateEditButtons();
+
+        // Exports stream the table with the current filter straight from the database, not from the grid
+        exportLinks = new ExportLinks(exportService, () -> {
+            KeysetTableDataProvider provider = dataProvider;
+            return provider != null ? provider.exportQuery() : null;
+        });
+        exportLinks.setVisible(false);
+
+        // CSV import; the file is streamed into the table while it uploads
+        importUpload = new Upload(this::receiveImport);
+        importUpload.setAcceptedFileTypes("text/csv", ".csv");
+        importUpload.setMaxFiles(1);
+        importUpload.setDropLabel(new Span("Import CSV with a header row"));
+        importUpload.addSucceededListener(event -> finishImportUpload());
+        importUpload.addFailedListener(event -> abortImportUpload());
+        importUpload.setVisible(false);
+
+        // The grid is sized from an estimate; the exact COUNT(*) only runs on request
+        countButton.addClickListener(event -> countRows());
+        countButton.setVisible(false);
+
+        // Live mode: rows changed by anyone are refreshed in place instead of reloading the table
+        liveCheckbox.addValueChangeListener(event -> startLiveMode());
+        liveCheckbox.setVisible(false);
 
         // Set up the "Insert" Button
 //        insertButton.setVisible(false);
 //        insertButton.addClickListener(event -> insertNewRecord());
 
         // Add components to the layout
-        add(tableSelector, grid, dynamicForm, updateButton);//, insertButton);//, filterForm);
+        add(new HorizontalLayout(dataSourceSelector, tableSelector), filterForm, exportLinks, importUpload, importStatus, new HorizontalLayout(rowCount, countButton, liveCheckbox), grid, dynamicForm, new HorizontalLayout(updateButton, saveButton, discardButton));//, insertButton);
 
         // Add row selection listener to the grid
         grid.addSelectionListener(event -> {
             if (event.getFirstSelectedItem().isPresent()) {
-                Map<String, Object> selectedRow = event.getFirstSelectedItem().get();
+                ResultRow selectedRow = event.getFirstSelectedItem().get();
                 handleRowSelection(selectedRow);
             }
         });
     }
 
-    // Fetch table names from the database
+    // Fetch table names of the selected database from the shared metadata cache
     private List<String> getTableNames() {
-        return jdbcClient.sql(queryToFetchAllTables)
-                .query(String.class)
-                .list()
+        return schemaMetadataService.getTableNames(selectedDataSource())
                 .stream()
                 .filter(this::isValidTableName)
                 .collect(Collectors.toList());
     }
 
+    private String selectedDataSource() {
+        return dataSourceSelector.getValue() != null ? dataSourceSelector.getValue() : ConnectionManager.DEFAULT;
+    }
+
+    // Drop everything shown for the previous database and list the tables of the selected one
+    private void switchDataSource() {
+        try {
+            cancelRunningFilterQuery();
+            cancelRunningCountQuery();
+            stopLiveMode();
+            editBuffer.clear();
+            updateEditButtons();
+            dataProvider = null;
+            tableSelector.clear();
+            tableSelector.setItems(getTableNames());
+            grid.setVisible(false);
+            exportLinks.setVisible(false);
+            importUpload.setVisible(false);
+            rowCount.setText("");
+            countButton.setVisible(false);
+            liveCheckbox.setVisible(false);
+        } catch (Exception e) {
+            e.printStackTrace();
+            Notification.show("Error loading tables: " + e.getMessage(), 3000, Notification.Position.MIDDLE);
+        }
+    }
+
     // Validate table name to avoid SQL injection
     private boolean isValidTableName(String tableName) {
         return tableName != null && tableName.matches("^[a-zA-Z_][a-zA-Z0-9_]*$");
@@ -100,50 +218,91 @@ public class DynamicGridView extends VerticalLayout {
     // Update the grid based on selected table
     private void updateGrid(String tableName) {
         try {
+            cancelRunningFilterQuery();
+            cancelRunningCountQuery();
+            stopLiveMode();
+            // Staged edits belong to the previous table
+            editBuffer.clear();
+            updateEditButtons();
             primaryKeyColumns = getPrimaryKeyColumns(tableName);
 
-            List<Map<String, Object>> rows = getTableData(tableName);
-            if (rows == null || rows.isEmpty()) {
+            Set<String> columnNames = columnNameToTypes.keySet();
+            if (columnNames.isEmpty()) {
                 grid.setVisible(false);
+                exportLinks.setVisible(false);
+                importUpload.setVisible(false);
+                rowCount.setText("");
+                countButton.setVisible(false);
+                liveCheckbox.setVisible(false);
                 return;
             }
 
-            // Set up filtering fields dynamically
-//            filterForm.removeAll();
+            // Set up filtering fields dynamically, one per column with a syntax hint for the column's type
+            filterForm.removeAll();
             filterFields.clear();
-            Map<String, Object> firstRow = rows.get(0);
-            firstRow.keySet().forEach(columnName -> {
-                // Add filter input for each column
-                TextField filterField = new TextField();
-                filterField.setPlaceholder("Filter " + columnName);
+            trigramIndexedColumns = getTrigramIndexedColumns(tableName);
+            columnNames.forEach(columnName -> {
+                int type = columnNameToTypes.get(columnName);
+                AbstractField<?, String> filterField;
+                if (type == Types.BOOLEAN || type == Types.BIT) {
+                    ComboBox<String> choice = new ComboBox<>();
+                    choice.setItems("true", "false");
+                    choice.setPlaceholder("Filter " + columnName);
+                    filterField = choice;
+                } else {
+                    TextField text = new TextField();
+                    text.setPlaceholder("Filter " + columnName + " (" + ColumnFilter.hint(type,
+                            trigramIndexedColumns.contains(columnName)) + ")");
+                    // Debounced on the client: the value is only sent once typing pauses
+                    text.setValueChangeMode(ValueChangeMode.TIMEOUT);
+                    text.setValueChangeTimeout(FILTER_DEBOUNCE_MILLIS);
+                    filterField = text;
+                }
                 filterField.addValueChangeListener(event -> applyFilters(tableName));
                 filterFields.put(columnName, filterField);
-//                filterForm.add(filterField);
+                filterForm.add(filterField);
             });
 
+            // Sorting is done by the database, so only columns an index can return in order are sortable
+            Set<String> sortableColumns = getSortableColumns(tableName);
             grid.removeAllColumns();
-            firstRow.keySet().forEach(columnName -> grid.addColumn(item -> item.get(columnName)).setHeader(columnName));
-            grid.setItems(rows);
+            for (String columnName : columnNames) {
+                // By name: after an ALTER TABLE made elsewhere, SELECT * may return the columns in another order than
+                // the cached metadata lists them
+                Grid.Column<ResultRow> column = grid.addColumn(item -> item.get(columnName)).setHeader(columnName);
+                if (sortableColumns.contains(columnName)) {
+                    column.setSortProperty(columnName);
+                }
+            }
+
+            // Rows are fetched lazily page by page; the estimate only sizes the scrollbar
+            dataProvider = new KeysetTableDataProvider(connectionManager, selectedDataSource(), tableName,
+                    new ArrayList<>(primaryKeyColumns), sortableColumns, admissionController, metrics,
+                    VaadinSession.getCurrent().getSession().getId());
+            int estimate = dataProvider.estimateSize();
+            grid.setItems(dataProvider).setItemCountEstimate(estimate);
+            showEstimate(estimate);
             grid.setVisible(true);
+            exportLinks.setFileName(tableName);
+            exportLinks.setVisible(true);
+            importUpload.setVisible(true);
+            // Changes are followed by primary key
+            liveCheckbox.setVisible(!primaryKeyColumns.isEmpty());
+            startLiveMode();
         } catch (Exception e) {
             e.printStackTrace();
             Notification.show("Error loading data: " + e.getMessage(), 3000, Notification.Position.MIDDLE);
         }
     }
 
-    // Fetch primary key columns for the selected table
+    // Fetch primary key columns for the selected table, in key order
     private Set<String> getPrimaryKeyColumns(String tableName) {
-        Set<String> pkColumns = new HashSet<>();
+        Set<String> pkColumns = new LinkedHashSet<>();
         try {
-            String query = "SELECT column_name FROM information_schema.key_column_usage " +
-                    "WHERE table_name = ?";
-
-            List<String> pkColumnsList = jdbcClient.sql(query)
-                    .params(tableName)
-                    .query(String.class)
-                    .list();
-
-            pkColumns.addAll(pkColumnsList);
+            TableMetadata table = schemaMetadataService.getTable(selectedDataSource(), tableName);
+            if (table != null) {
+                pkColumns.addAll(table.primaryKey());
+            }
         } catch (Exception e) {
             e.printStackTrace();
             Notification.show("Error fetching primary key columns: " + e.getMessage(), 3000, Notification.Position.MIDDLE);
@@ -151,34 +310,59 @@ public class DynamicGridView extends VerticalLayout {
         return pkColumns;
     }
 
-    // Fetch rows for the selected table
-    private List<Map<String, Object>> getTableData(String tableName) {
-        return jdbcClient.sql("SELECT * FROM " + tableName)
-                .query(new DynamicRowMapper())
-                .list();
+    // Columns with a trigram index, where substring filters are cheap, from the metadata cache
+    private Set<String> getTrigramIndexedColumns(String tableName) {
+        try {
+            TableMetadata table = schemaMetadataService.getTable(selectedDataSource(), tableName);
+            if (table != null) {
+                return table.trigramIndexedColumns();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return Set.of();
+    }
+
+    // Primary key and leading index columns of the table, from the metadata cache
+    private Set<String> getSortableColumns(String tableName) {
+        Set<String> sortableColumns = new HashSet<>(primaryKeyColumns);
+        try {
+            TableMetadata table = schemaMetadataService.getTable(selectedDataSource(), tableName);
+            if (table != null) {
+                sortableColumns.addAll(table.indexedColumns());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return sortableColumns;
     }
 
     // Handle row selection in the grid
-    private void handleRowSelection(Map<String, Object> selectedRow) {
+    private void handleRowSelection(ResultRow selectedRow) {
         this.selectedRow = selectedRow;
 
         // Clear any previous form fields
         dynamicForm.removeAll();
         editableColumns.clear(); // Clear previous editable columns
 
-        // Dynamically generate form fields for the selected row's columns
-        if (selectedRow != null && !selectedRow.isEmpty()) {
-            selectedRow.forEach((column, value) -> {
+        // Dynamically generate form fields for the selected row's columns, showing any edits staged for it
+        if (selectedRow != null && selectedRow.size() > 0) {
+            ResultSchema schema = selectedRow.getSchema();
+            RowEdit stagedEdit = primaryKeyColumns.isEmpty() ? null : editBuffer.get(keyOf(selectedRow));
+            for (int i = 0; i < schema.size(); i++) {
+                String column = schema.getColumnName(i);
+                Object value = stagedEdit != null && stagedEdit.values().containsKey(column)
+                        ? stagedEdit.values().get(column) : selectedRow.get(i);
                 boolean isDateTimeColumn = isDateOrTimeColumn(column);
                 if (primaryKeyColumns.contains(column) || isDateTimeColumn) {
-                    return;  // Do not add the primary key column or date/time columns to the form
+                    continue;  // Do not add the primary key column or date/time columns to the form
                 }
 
                 TextField textField = new TextField(column);
                 textField.setValue(value != null ? value.toString() : "");
                 dynamicForm.add(textField);  // Add the TextField to the form
                 editableColumns.add(column); // Track editable columns
-            });
+            }
 
             updateButton.setVisible(true);  // Show the update button
         }
@@ -191,61 +375,255 @@ public class DynamicGridView extends VerticalLayout {
         };
     }
 
-    // Helper method to check if the column type is DATE, TIME or TIMESTAMP
+    // Column types of the table (used to check for DATE, TIME or TIMESTAMP columns), from the metadata cache
     private Map<String,Integer> getColumnToType(String tableName) {
-        Map<String,Integer> columnToType = new HashMap<>();
+        Map<String,Integer> columnToType = new LinkedHashMap<>();
         try {
-            String query = "SELECT * FROM " + tableName + " LIMIT 1";  // Fetch one row for metadata
-            jdbcTemplate.query(query, new RowMapper<Object>() {
-                @Override
-                public Object mapRow(ResultSet rs, int rowNum) throws SQLException {
-                    ResultSetMetaData metaData = rs.getMetaData();
-                    for (int i = 1; i <= metaData.getColumnCount(); i++) {
-                        String column = metaData.getColumnName(i);
-                        int columnType = metaData.getColumnType(i);
-                        columnToType.put(column, columnType);
-                    }
-                    return columnToType;
-                }
-            });
+            TableMetadata table = schemaMetadataService.getTable(selectedDataSource(), tableName);
+            if (table != null) {
+                columnToType.putAll(table.columnTypes());
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
         return columnToType;
     }
 
-    // Apply filters to the grid data
+    // Apply filters to the grid data. The first page is queried in the background and pushed to the grid when it
+    // arrives; a newer filter cancels the statement of the one it replaces.
     private void applyFilters(String tableName) {
         try {
-            // Create a base SQL query
-            StringBuilder queryBuilder = new StringBuilder("SELECT * FROM " + tableName + " WHERE 1=1");
-
-            // Add filtering conditions based on user input
-            List<Object> params = new ArrayList<>();
-            filterFields.forEach((column, filterField) -> {
+            // Build the filter predicate from typed conditions; the data provider pages through the matching rows lazily
+            List<ColumnFilter> filters = new ArrayList<>();
+            boolean valid = true;
+            for (Map.Entry<String, AbstractField<?, String>> entry : filterFields.entrySet()) {
+                String column = entry.getKey();
+                AbstractField<?, String> filterField = entry.getValue();
                 String filterValue = filterField.getValue();
-                if (filterValue != null && !filterValue.isEmpty()) {
-                    queryBuilder.append(" AND " + column + " LIKE ?");
-                    params.add("%" + filterValue + "%");
+                setFilterError(filterField, null);
+                if (filterValue == null || filterValue.isBlank()) {
+                    continue;
                 }
-            });
-
-            // Execute the filtered query
-            List<Map<String, Object>> filteredRows = jdbcClient.sql(queryBuilder.toString())
-                    .params(params.toArray())
-                    .query(new DynamicRowMapper())
-                    .list();
+                try {
+                    filters.add(ColumnFilter.parse(column, columnNameToTypes.get(column),
+                            trigramIndexedColumns.contains(column), filterValue));
+                } catch (IllegalArgumentException e) {
+                    setFilterError(filterField, e.getMessage());
+                    valid = false;
+                }
+            }
 
-            grid.setItems(filteredRows);
+            if (dataProvider == null || !valid) {
+                return;  // Keep showing the last valid filter until the input is fixed
+            }
+            cancelRunningFilterQuery();
+            cancelRunningCountQuery();
+
+            KeysetTableDataProvider provider = dataProvider;
+            // No predicate at all lets the provider size the grid from the table statistics
+            String predicate = ColumnFilter.whereClause(filters);
+            List<Object> params = ColumnFilter.params(filters);
+            int firstPageSize = grid.getPageSize() * 2;
+            CancellableQuery query = new CancellableQuery();
+            runningFilterQuery = query;
+
+            UI ui = UI.getCurrent();
+            backgroundQueryExecutor.submit(query, () -> {
+                        KeysetTableDataProvider.FirstPage firstPage = provider.loadFirstPage(predicate, params, firstPageSize, query);
+                        // A short first page is the whole result; otherwise ask the planner
+                        int estimate = firstPage.complete()
+                                ? firstPage.rows().size() : provider.estimateSize(predicate, params);
+                        return new FilterResult(firstPage, estimate);
+                    })
+                    .whenComplete((result, error) -> ui.access(() -> {
+                        if (runningFilterQuery != query || dataProvider != provider) {
+                            return;  // Superseded by a newer filter or another table
+                        }
+                        runningFilterQuery = null;
+                        if (error != null) {
+                            error.printStackTrace();
+                            Notification.show("Error applying filters: " + error.getMessage(), 3000, Notification.Position.MIDDLE);
+                            return;
+                        }
+                        provider.setFilter(predicate, params, result.firstPage());
+                        provider.refreshAll();
+                        GridLazyDataView<ResultRow> view = grid.getLazyDataView();
+                        view.setItemCountUnknown();
+                        view.setItemCountEstimate(Math.max(result.estimate(), 1));
+                        showEstimate(result.estimate());
+                    }));
         } catch (Exception e) {
             e.printStackTrace();
             Notification.show("Error applying filters: " + e.getMessage(), 3000, Notification.Position.MIDDLE);
         }
     }
 
+    private void setFilterError(AbstractField<?, String> filterField, String message) {
+        if (filterField instanceof TextField text) {
+            text.setErrorMessage(message);
+            text.setInvalid(message != null);
+        }
+    }
+
+    // Called when an upload starts: the import reads the file from a pipe while the upload is still writing it
+    private OutputStream receiveImport(String fileName, String mimeType) {
+        String dataSource = selectedDataSource();
+        String tableName = tableSelector.getValue();
+        Map<String, Integer> columnTypes = new LinkedHashMap<>(columnNameToTypes);
+        String sessionId = VaadinSession.getCurrent().getSession().getId();
+        UI ui = UI.getCurrent();
+
+        UploadPipe pipe = new UploadPipe();
+        importPipe = pipe;
+        importStatus.setText("Importing " + fileName + "...");
+        backgroundQueryExecutor.submit(new CancellableQuery(), () -> tableImportService.importCsv(dataSource, tableName,
+                        columnTypes, pipe.importStream(), bytes -> ui.access(() -> importStatus.setText(
+                                "Importing " + fileName + ": " + bytes / (1024 * 1024) + " MB loaded...")), sessionId))
+                .whenComplete((rows, error) -> {
+                    // An upload still writing after a failed import now fails instead of blocking
+                    pipe.closeReader();
+                    ui.access(() -> {
+                        importStatus.setText("");
+                        importUpload.clearFileList();
+                        if (error != null) {
+                            error.printStackTrace();
+                            Notification.show("Error importing data: " + error.getMessage(), 3000, Notification.Position.MIDDLE);
+                            return;
+                        }
+                        Notification.show(rows + " row(s) imported into " + tableName + ".", 3000, Notification.Position.MIDDLE);
+                        if (dataProvider != null && tableName.equals(tableSelector.getValue())) {
+                            dataProvider.refreshAll();
+                        }
+                    });
+                });
+        return pipe.uploadStream();
+    }
+
+    private void finishImportUpload() {
+        try {
+            importPipe.finish();
+        } catch (InterruptedIOException e) {
+            // The import already stopped and reports its own outcome
+        }
+    }
+
+    private void abortImportUpload() {
+        importPipe.abort();
+    }
+
+    // Exact COUNT(*) in the background; once it arrives the grid switches from the estimate to the exact size
+    private void countRows() {
+        KeysetTableDataProvider provider = dataProvider;
+        if (provider == null) {
+            return;
+        }
+        cancelRunningCountQuery();
+        CancellableQuery query = new CancellableQuery();
+        runningCountQuery = query;
+        countButton.setEnabled(false);
+        rowCount.setText("Counting rows...");
+
+        UI ui = UI.getCurrent();
+        backgroundQueryExecutor.submit(query, () -> provider.countRows(query))
+                .whenComplete((count, error) -> ui.access(() -> {
+                    if (runningCountQuery != query || dataProvider != provider) {
+                        return;  // Superseded by a filter or another table
+                    }
+                    runningCountQuery = null;
+                    countButton.setEnabled(true);
+                    if (error != null) {
+                        error.printStackTrace();
+                        rowCount.setText("");
+                        Notification.show("Error counting rows: " + error.getMessage(), 3000, Notification.Position.MIDDLE);
+                        return;
+                    }
+                    rowCount.setText(count + " rows");
+                    // Served from the count just taken, not a second COUNT(*)
+                    grid.getLazyDataView().setItemCountFromDataProvider();
+                }));
+    }
+
+    private void showEstimate(int estimate) {
+        rowCount.setText("~" + estimate + " rows (estimated)");
+        countButton.setVisible(true);
+    }
+
+    private void cancelRunningCountQuery() {
+        if (runningCountQuery != null) {
+            runningCountQuery.cancel();
+            runningCountQuery = null;
+            countButton.setEnabled(true);
+        }
+    }
+
+    private void cancelRunningFilterQuery() {
+        if (runningFilterQuery != null) {
+            runningFilterQuery.cancel();
+            runningFilterQuery = null;
+        }
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        super.onDetach(detachEvent);
+        cancelRunningFilterQuery();
+        cancelRunningCountQuery();
+        stopLiveMode();
+    }
+
+    // Follow the changes of the shown table while live mode is on; updated rows are read again by key and refreshed
+    // in place, inserts and deletes reload just the rows the grid is showing
+    private void startLiveMode() {
+        stopLiveMode();
+        KeysetTableDataProvider provider = dataProvider;
+        if (!liveCheckbox.getValue() || provider == null || primaryKeyColumns.isEmpty()) {
+            return;
+        }
+        String dataSource = selectedDataSource();
+        String tableName = tableSelector.getValue();
+        List<String> keyColumns = new ArrayList<>(primaryKeyColumns);
+        String sessionId = VaadinSession.getCurrent().getSession().getId();
+        UI ui = UI.getCurrent();
+        try {
+            liveRegistration = changeFeedService.watch(dataSource, tableName, keyColumns, changes -> {
+                if (changes.reload()) {
+                    ui.access(() -> {
+                        if (dataProvider == provider) {
+                            provider.refreshAll();
+                        }
+                    });
+                    return;
+                }
+                backgroundQueryExecutor.submit(new CancellableQuery(), () -> tableEditService.fetchRows(dataSource,
+                                tableName, keyColumns, changes.keys(), sessionId))
+                        .whenComplete((rows, error) -> ui.access(() -> {
+                            if (dataProvider != provider) {
+                                return;  // Another table is shown by now
+                            }
+                            if (error != null) {
+                                error.printStackTrace();
+                                return;
+                            }
+                            rows.forEach(provider::refreshItem);
+                        }));
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+            liveCheckbox.setValue(false);
+            Notification.show("Error starting live mode: " + e.getMessage(), 3000, Notification.Position.MIDDLE);
+        }
+    }
+
+    private void stopLiveMode() {
+        if (liveRegistration != null) {
+            liveRegistration.remove();
+            liveRegistration = null;
+        }
+    }
+
     // Insert a new record into the selected table
     private void insertNewRecord() {
-        if (selectedRow != null && !selectedRow.isEmpty()) {
+        if (selectedRow != null && selectedRow.size() > 0) {
             try {
                 String tableName = tableSelector.getValue();
 
@@ -280,9 +658,12 @@ public class DynamicGridView extends VerticalLayout {
                 insertQuery.append(valuesClause);
 
                 // Execute the insert query
-                jdbcClient.sql(insertQuery.toString())
+                String dataSource = selectedDataSource();
+                JdbcClient jdbcClient = JdbcClient.create(connectionManager.jdbcTemplate(dataSource));
+                metrics.observe("grid.insert", tableName, () -> jdbcClient.sql(insertQuery.toString())
                         .params(params.toArray())
-                        .update();
+                        .update());
+                queryResultCache.invalidateTable(dataSource, tableName);
 
                 // Reload the grid to reflect the changes
                 updateGrid(tableName);
@@ -297,62 +678,80 @@ public class DynamicGridView extends VerticalLayout {
         }
     }
 
-    // Update the selected row in the database
+    // Stage the form values of the selected row; nothing is written until the edits are saved
     private void updateSelectedRow() {
-        if (selectedRow != null && !selectedRow.isEmpty()) {
-            try {
-                String tableName = tableSelector.getValue();
-
-                // Collect the updated values from the form
-                List<TextField> fields = dynamicForm.getChildren().map(component -> (TextField) component).collect(Collectors.toList());
-
-                // Build the SQL update query dynamically based on the selected columns
-                StringBuilder updateQuery = new StringBuilder("UPDATE " + tableName + " SET ");
-                StringBuilder whereClause = new StringBuilder(" WHERE ");
-
-                // Collect column names and values
-                List<Object> params = new ArrayList<>();
-                int i = 0;
-                for (TextField field : fields) {
-                    String columnName = field.getLabel();
-                    String newValue = field.getValue();
-
-                    updateQuery.append(columnName + " = ?");
-                    if (i < fields.size() - 1) {
-                        updateQuery.append(", ");
-                    }
+        if (selectedRow != null && selectedRow.size() > 0) {
+            if (primaryKeyColumns.isEmpty()) {
+                Notification.show("This table has no primary key, so its rows cannot be edited.", 3000, Notification.Position.MIDDLE);
+                return;
+            }
 
-                    params.add(newValue); // Add the updated value
-                    i++;
-                }
+            // Collect the updated values from the form
+            Map<String, Object> values = new LinkedHashMap<>();
+            dynamicForm.getChildren()
+                    .map(component -> (TextField) component)
+                    .forEach(field -> values.put(field.getLabel(), field.getValue()));
 
-                // Append the WHERE clause with primary key condition(s)
-                if (!primaryKeyColumns.isEmpty()) {
-                    String pkColumn = primaryKeyColumns.iterator().next();
-                    whereClause.append(pkColumn + " = ?");
-                    params.add(selectedRow.get(pkColumn)); // Add the value of the primary key from the selected row
-                }
+            if (editBuffer.stage(keyOf(selectedRow), selectedRow, values)) {
+                Notification.show("Row changes staged. " + editBuffer.size() + " row(s) waiting to be saved.", 3000, Notification.Position.MIDDLE);
+            }
+            updateEditButtons();
 
-                // Combine the query and where clause
-                updateQuery.append(whereClause);
+            // Clear the form and hide the update button
+            dynamicForm.removeAll();
+            updateButton.setVisible(false);
+            grid.deselectAll();
+        }
+    }
 
-                // Execute the update query
-                jdbcClient.sql(updateQuery.toString())
-                        .params(params.toArray())  // Pass the parameters to the query
-                        .update();
+    // Write all staged edits in one transaction, then refresh only the edited rows in place
+    private void saveEdits() {
+        if (editBuffer.isEmpty()) {
+            return;
+        }
+        String dataSource = selectedDataSource();
+        String tableName = tableSelector.getValue();
+        List<String> keyColumns = new ArrayList<>(primaryKeyColumns);
+        String sessionId = VaadinSession.getCurrent().getSession().getId();
+        try {
+            List<RowEdit> edits = editBuffer.getEdits();
+            tableEditService.applyEdits(dataSource, tableName, keyColumns, edits, sessionId);
+            editBuffer.clear();
+            updateEditButtons();
+
+            List<List<Object>> keys = edits.stream().map(RowEdit::key).collect(Collectors.toList());
+            tableEditService.fetchRows(dataSource, tableName, keyColumns, keys, sessionId)
+                    .forEach(dataProvider::refreshItem);
+            Notification.show(edits.size() + " row(s) updated successfully.", 3000, Notification.Position.MIDDLE);
+        } catch (OptimisticLockingFailureException e) {
+            // Nothing was written; keep the edits so the user can decide what to do with them
+            Notification.show(e.getMessage(), 3000, Notification.Position.MIDDLE);
+        } catch (Exception e) {
+            e.printStackTrace();
+            Notification.show("Error updating data: " + e.getMessage(), 3000, Notification.Position.MIDDLE);
+        }
+    }
 
-                // Reload the grid to reflect the changes
-                updateGrid(tableName);
-                Notification.show("Row updated successfully.", 3000, Notification.Position.MIDDLE);
+    private void discardEdits() {
+        editBuffer.clear();
+        updateEditButtons();
+        dynamicForm.removeAll();
+        updateButton.setVisible(false);
+        grid.deselectAll();
+    }
 
-                // Clear the form and hide the update button
-                dynamicForm.removeAll();
-                updateButton.setVisible(false);
+    private void updateEditButtons() {
+        saveButton.setText("Save Changes (" + editBuffer.size() + ")");
+        saveButton.setVisible(!editBuffer.isEmpty());
+        discardButton.setVisible(!editBuffer.isEmpty());
+    }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                Notification.show("Error updating data: " + e.getMessage(), 3000, Notification.Position.MIDDLE);
-            }
+    // Primary key values of the row, in key order; the same identity the data provider gives the row
+    private List<Object> keyOf(ResultRow row) {
+        List<Object> key = new ArrayList<>(primaryKeyColumns.size());
+        for (String column : primaryKeyColumns) {
+            key.add(row.get(column));
         }
+        return key;
     }
 }
@@ -4,25 +4,39 @@ import org.springframework.jdbc.core.RowMapper;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
 
-public class DynamicRowMapper implements RowMapper<Map<String, Object>> {
+public class DynamicRowMapper implements RowMapper<ResultRow> {
+
+    // The schema is resolved once per ResultSet; all rows of that result go into the same table
+    private ResultSet currentResultSet;
+    private ResultTable table;
+    private long mappingNanos;
 
     @Override
-    public Map<String, Object> mapRow(ResultSet rs, int rowNum) throws SQLException {
-        Map<String, Object> rowMap = new HashMap<>();
+    public ResultRow mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (table == null || rs != currentResultSet) {
+            currentResultSet = rs;
+            table = new ResultTable(ResultSchema.of(rs.getMetaData()));
+        }
 
-        // Get the number of columns in the result set
-        int columnCount = rs.getMetaData().getColumnCount();
+        // Copy the current row into the shared column store
+        long start = System.nanoTime();
+        ResultRow row = table.appendRow(rs);
+        mappingNanos += System.nanoTime() - start;
+        return row;
+    }
 
-        // Loop through all columns and add them to the HashMap
-        for (int i = 1; i <= columnCount; i++) {
-            String columnName = rs.getMetaData().getColumnLabel(i);
-            Object columnValue = rs.getObject(i);  // Get the column value by index
-            rowMap.put(columnName, columnValue);  // Store the column name and value in the map
-        }
+    /**
+     * @return the table holding every row mapped so far from the current result set, or null before the first row
+     */
+    public ResultTable getTable() {
+        return table;
+    }
 
-        return rowMap;
+    /**
+     * @return total time spent copying rows out of the result set, for telling mapping cost apart from DB wait
+     */
+    public long getMappingNanos() {
+        return mappingNanos;
     }
 }
@@ -0,0 +1,104 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Checks and display of the JDBC URLs of databases registered with the {@link ConnectionManager}.
+ * <p>
+ * Only PostgreSQL URLs are accepted, and none of the pgjdbc parameters that make the driver load a class by name,
+ * pass an argument to such a class or write a file, since URLs can be entered on the admin page.
+ */
+final class JdbcUrls {
+
+    private static final String PREFIX = "jdbc:postgresql:";
+
+    // Lower case; pgjdbc parameters whose value names a class, is handed to one, or names a file to write
+    private static final Set<String> FORBIDDEN_PARAMETERS = Set.of(
+            "socketfactory", "socketfactoryarg",
+            "sslfactory", "sslfactoryarg",
+            "sslhostnameverifier", "sslpasswordcallback",
+            "authenticationpluginclassname",
+            "loggerfile");
+
+    private static final Set<String> CREDENTIAL_PARAMETERS = Set.of("user", "password");
+
+    private static final String MASK = "***";
+
+    private JdbcUrls() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the URL is not a PostgreSQL URL or sets a forbidden driver parameter
+     */
+    static void validate(String url) {
+        if (url == null || !url.regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+            throw new IllegalArgumentException("Only " + PREFIX + " URLs are supported.");
+        }
+        int query = url.indexOf('?');
+        if (query < 0) {
+            return;
+        }
+        for (String parameter : url.substring(query + 1).split("&")) {
+            String name = parameterName(parameter);
+            if (FORBIDDEN_PARAMETERS.contains(name)) {
+                throw new IllegalArgumentException("The driver parameter " + name + " is not allowed.");
+            }
+        }
+    }
+
+    /**
+     * @return the URL with the values of the user and password parameters and any user info before the host
+     *         replaced, for showing it to users
+     */
+    static String mask(String url) {
+        if (url == null) {
+            return null;
+        }
+        int query = url.indexOf('?');
+        String base = query < 0 ? url : url.substring(0, query);
+        int authority = base.indexOf("//");
+        if (authority >= 0) {
+            int hostEnd = base.indexOf('/', authority + 2);
+            int at = base.lastIndexOf('@', hostEnd < 0 ? base.length() - 1 : hostEnd);
+            if (at > authority) {
+                base = base.substring(0, authority + 2) + MASK + base.substring(at);
+            }
+        }
+        if (query < 0) {
+            return base;
+        }
+        StringBuilder masked = new StringBuilder(base).append('?');
+        String[] parameters = url.substring(query + 1).split("&", -1);
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) {
+                masked.append('&');
+            }
+            String parameter = parameters[i];
+            int equals = parameter.indexOf('=');
+            if (equals >= 0 && CREDENTIAL_PARAMETERS.contains(parameterName(parameter))) {
+                masked.append(parameter, 0, equals + 1).append(MASK);
+            } else {
+                masked.append(parameter);
+            }
+        }
+        return masked.toString();
+    }
+
+    /**
+     * The driver decodes parameter names and matches them case-sensitively; comparing the decoded name in lower
+     * case also catches spellings that only differ in case.
+     */
+    private static String parameterName(String parameter) {
+        int equals = parameter.indexOf('=');
+        String name = equals < 0 ? parameter : parameter.substring(0, equals);
+        try {
+            name = URLDecoder.decode(name, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            // Not valid percent-encoding; the driver rejects it as well, compare it as written
+        }
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
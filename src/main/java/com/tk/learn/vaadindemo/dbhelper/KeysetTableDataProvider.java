@@ -0,0 +1,523 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import com.tk.learn.vaadindemo.export.ExportQuery;
+import com.tk.learn.vaadindemo.metrics.DataPathMetrics;
+import com.tk.learn.vaadindemo.sqlhelper.QueryAdmissionController;
+import com.tk.learn.vaadindemo.sqlhelper.QueryLane;
+import com.vaadin.flow.data.provider.AbstractBackEndDataProvider;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.data.provider.SortDirection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lazy data provider for a single table that only ever fetches the window the grid asks for.
+ * <p>
+ * When the table has a primary key the rows are ordered by it and each fetched page remembers the key of its
+ * last row, so the next page is read with a keyset seek ({@code WHERE (pk) > (?) ORDER BY pk LIMIT n}) instead of
+ * an ever-growing OFFSET. Jumps into the middle of the table seek from the nearest remembered key and only skip the
+ * remaining distance. Tables without a primary key fall back to plain LIMIT/OFFSET.
+ * <p>
+ * Sorting is pushed down to the database: the grid's sort orders become the ORDER BY of each page query, with the
+ * primary key appended as a tie-breaker so pages stay stable. Only columns the view declared sortable, normally
+ * indexed ones, are accepted. Sorted pages seek the same way, on the sort columns followed by the key, with NULLs
+ * placed as PostgreSQL sorts them; the remembered boundaries belong to one sort order and are dropped when it
+ * changes.
+ * <p>
+ * The grid is sized from planner estimates ({@code pg_class.reltuples}, or the EXPLAIN row estimate when a filter is
+ * set). An exact {@code COUNT(*)} only runs when {@link #countRows(CancellableQuery)} is asked for it.
+ * <p>
+ * Every read goes through the {@link QueryLane#INTERACTIVE interactive} admission lane of the owning session and is
+ * observed as a {@code grid.*} operation on the table.
+ */
+public class KeysetTableDataProvider extends AbstractBackEndDataProvider<ResultRow, Void> {
+
+    // Upper bound on remembered page boundaries; the map is simply cleared when it grows past this
+    private static final int MAX_REMEMBERED_BOUNDARIES = 10_000;
+
+    private static final int DEFAULT_SIZE_ESTIMATE = 1_000;
+
+    // Row estimate of the top plan node in EXPLAIN's text output
+    private static final Pattern PLAN_ROWS = Pattern.compile("rows=(\\d+)");
+
+    private final String dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcClient jdbcClient;
+    private final String tableName;
+    private final List<String> keyColumns;
+    private final Set<String> sortableColumns;
+    private final QueryAdmissionController admissionController;
+    private final DataPathMetrics metrics;
+    private final String sessionId;
+
+    // Offset of the first row of a page -> sort column and key values of the row right before it
+    private final NavigableMap<Integer, Object[]> pageBoundaries = new TreeMap<>();
+
+    private String filterClause = "";
+    private List<Object> filterParams = List.of();
+
+    // First page loaded ahead of time for the current filter, served once instead of querying again
+    private FirstPage preloadedFirstPage;
+
+    // Sort columns of the grid's most recent fetch, as an ORDER BY list; empty for key order
+    private volatile String sortOrder = "";
+
+    // Exact COUNT(*) result, valid while the filter it was taken for is current
+    private volatile ExactCount exactCount;
+
+    private record PageQuery(String sql, List<Object> params) {
+    }
+
+    private record SortColumn(String column, boolean descending, boolean nullable) {
+    }
+
+    private record ExactCount(String filterClause, List<Object> filterParams, long count) {
+    }
+
+    /**
+     * Rows loaded ahead of time for a filter.
+     *
+     * @param rows      the first rows of the filtered result
+     * @param complete  true if the result has no rows beyond these
+     * @param sortOrder the ORDER BY list the rows were read in; empty for key order
+     */
+    public record FirstPage(List<ResultRow> rows, boolean complete, String sortOrder) {
+    }
+
+    /**
+     * @param dataSource      the database of the table, as named in the {@link ConnectionManager}
+     * @param sortableColumns columns the grid may sort by; sort orders on any other column are ignored
+     */
+    public KeysetTableDataProvider(ConnectionManager connectionManager, String dataSource, String tableName,
+                                   List<String> keyColumns, Collection<String> sortableColumns,
+                                   QueryAdmissionController admissionController, DataPathMetrics metrics,
+                                   String sessionId) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = connectionManager.jdbcTemplate(dataSource);
+        this.jdbcClient = JdbcClient.create(this.jdbcTemplate);
+        this.tableName = tableName;
+        this.keyColumns = List.copyOf(keyColumns);
+        this.sortableColumns = Set.copyOf(sortableColumns);
+        this.admissionController = admissionController;
+        this.metrics = metrics;
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * Restricts the rows to the given predicate. The remembered keyset boundaries are only valid for one filter,
+     * so they are dropped here; callers are expected to {@link #refreshAll()} afterwards.
+     *
+     * @param whereClause SQL predicate without the {@code WHERE} keyword, or an empty string for no filter
+     * @param params      positional parameters of the predicate
+     */
+    public void setFilter(String whereClause, List<Object> params) {
+        setFilter(whereClause, params, null);
+    }
+
+    /**
+     * Same as {@link #setFilter(String, List)}, with the first page already loaded by
+     * {@link #loadFirstPage(String, List, int, CancellableQuery)} so the refresh does not hit the database again.
+     */
+    public void setFilter(String whereClause, List<Object> params, FirstPage firstPage) {
+        synchronized (pageBoundaries) {
+            this.filterClause = whereClause == null ? "" : whereClause;
+            this.filterParams = List.copyOf(params);
+            this.preloadedFirstPage = firstPage;
+            pageBoundaries.clear();
+        }
+    }
+
+    /**
+     * Drops the remembered page boundaries and the exact count along with the grid's cached rows: after rows were
+     * inserted, deleted or reloaded, the remembered keys no longer sit at the offsets they were stored for.
+     */
+    @Override
+    public void refreshAll() {
+        synchronized (pageBoundaries) {
+            pageBoundaries.clear();
+            exactCount = null;
+        }
+        super.refreshAll();
+    }
+
+    /**
+     * In a sorted grid an updated row may have moved past a remembered page boundary, so the boundaries are dropped;
+     * in key order they stay valid as long as the key itself is unchanged.
+     */
+    @Override
+    public void refreshItem(ResultRow item) {
+        if (!sortOrder.isEmpty()) {
+            synchronized (pageBoundaries) {
+                pageBoundaries.clear();
+            }
+        }
+        super.refreshItem(item);
+    }
+
+    /**
+     * @return a query for every row matching the current filter, in grid order, for streaming to an export
+     */
+    public ExportQuery exportQuery() {
+        synchronized (pageBoundaries) {
+            StringBuilder sql = new StringBuilder("SELECT * FROM " + tableName);
+            if (!filterClause.isEmpty()) {
+                sql.append(" WHERE ").append(filterClause);
+            }
+            String orderBy = orderBy(sortOrder);
+            if (!orderBy.isEmpty()) {
+                sql.append(" ORDER BY ").append(orderBy);
+            }
+            return new ExportQuery(dataSource, sql.toString(), filterParams, tableName);
+        }
+    }
+
+    /**
+     * Loads the first page for a filter, in the grid's current sort order, without touching the provider's state.
+     * Safe to call from a background thread; the statement can be cancelled through the given handle if the filter
+     * is superseded.
+     */
+    public FirstPage loadFirstPage(String whereClause, List<Object> params, int limit, CancellableQuery query) {
+        String sort = sortOrder;
+        String where = whereClause == null ? "" : whereClause;
+        PageQuery pageQuery = sort.isEmpty()
+                ? buildPageQuery(0, limit, where, params, null)
+                : buildSortedPageQuery(0, limit, where, params, sort, null);
+        List<ResultRow> rows = read("grid.filter", pageQuery, query);
+        return new FirstPage(rows, rows.size() < limit, sort);
+    }
+
+    /**
+     * Cheap row count estimate taken from the planner, used to size the grid's scrollbar without a
+     * {@code COUNT(*)} scan. Without a filter it is the table's {@code reltuples}; with one, or for a table that
+     * has never been analyzed, it is the row estimate of {@code EXPLAIN}. The grid keeps fetching past the
+     * estimate until a short page marks the real end.
+     */
+    public int estimateSize() {
+        return estimateSize(filterClause, filterParams);
+    }
+
+    /**
+     * Estimate for a filter that is not applied yet; safe to call from a background thread.
+     */
+    public int estimateSize(String whereClause, List<Object> params) {
+        String where = whereClause == null ? "" : whereClause;
+        try {
+            long estimate = -1;
+            if (where.isEmpty()) {
+                estimate = jdbcClient.sql("SELECT reltuples::bigint FROM pg_class WHERE oid = to_regclass(?)")
+                        .params(tableName)
+                        .query(Long.class)
+                        .optional()
+                        .orElse(-1L);
+            }
+            // reltuples is -1 (or 0) until the table has been analyzed
+            if (estimate <= 0) {
+                estimate = explainRows(where, params);
+            }
+            return estimate > 0 ? (int) Math.min(estimate, Integer.MAX_VALUE) : DEFAULT_SIZE_ESTIMATE;
+        } catch (Exception e) {
+            return DEFAULT_SIZE_ESTIMATE;
+        }
+    }
+
+    /**
+     * Runs an exact {@code COUNT(*)} for the current filter and remembers it, so that a grid switched to a defined
+     * size gets it from {@link #sizeInBackEnd} without counting again. Safe to call from a background thread.
+     */
+    public long countRows(CancellableQuery query) {
+        String filter;
+        List<Object> params;
+        synchronized (pageBoundaries) {
+            filter = filterClause;
+            params = filterParams;
+        }
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM " + tableName);
+        if (!filter.isEmpty()) {
+            sql.append(" WHERE ").append(filter);
+        }
+        long count;
+        try (QueryAdmissionController.Permit permit = admissionController.acquire(QueryLane.INTERACTIVE, sessionId)) {
+            count = metrics.observe("grid.count", tableName, () -> query.query(jdbcTemplate, sql.toString(), params,
+                    (rs, rowNum) -> rs.getLong(1), permit.getTimeoutSeconds()).get(0));
+        }
+        exactCount = new ExactCount(filter, params, count);
+        return count;
+    }
+
+    @Override
+    protected Stream<ResultRow> fetchFromBackEnd(Query<ResultRow, Void> query) {
+        int offset = query.getOffset();
+        int limit = query.getLimit();
+        String sort = sortOrderOf(query.getSortOrders());
+        if (!sort.equals(sortOrder)) {
+            // Boundaries are positions in one order
+            synchronized (pageBoundaries) {
+                pageBoundaries.clear();
+            }
+        }
+        sortOrder = sort;
+
+        List<ResultRow> rows = offset == 0 ? takePreloadedFirstPage(limit, sort) : null;
+        if (rows == null) {
+            Map.Entry<Integer, Object[]> boundary = keyColumns.isEmpty() || offset == 0 ? null : nearestBoundary(offset);
+            PageQuery pageQuery = sort.isEmpty()
+                    ? buildPageQuery(offset, limit, filterClause, filterParams, boundary)
+                    : buildSortedPageQuery(offset, limit, filterClause, filterParams, sort, boundary);
+            rows = read("grid.page", pageQuery, new CancellableQuery());
+        }
+
+        if (!keyColumns.isEmpty() && !rows.isEmpty()) {
+            rememberBoundary(offset + rows.size(), seekValuesOf(rows.get(rows.size() - 1), sort));
+        }
+        return rows.stream();
+    }
+
+    @Override
+    protected int sizeInBackEnd(Query<ResultRow, Void> query) {
+        // Exact count; only used when the grid is explicitly switched to a defined size
+        ExactCount known = exactCount;
+        long count = known != null && known.filterClause().equals(filterClause) && known.filterParams().equals(filterParams)
+                ? known.count()
+                : countRows(new CancellableQuery());
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Object getId(ResultRow item) {
+        if (keyColumns.isEmpty()) {
+            return item;
+        }
+        return Arrays.asList(keyOf(item));
+    }
+
+    private List<ResultRow> read(String operation, PageQuery pageQuery, CancellableQuery query) {
+        DynamicRowMapper rowMapper = new DynamicRowMapper();
+        try (QueryAdmissionController.Permit permit = admissionController.acquire(QueryLane.INTERACTIVE, sessionId)) {
+            long start = System.nanoTime();
+            List<ResultRow> rows = metrics.observe(operation, tableName, () -> query.query(jdbcTemplate,
+                    pageQuery.sql(), pageQuery.params(), rowMapper, permit.getTimeoutSeconds()));
+            ResultTable table = rowMapper.getTable();
+            metrics.recordMaterialized(operation, tableName, rows.size(), table != null ? table.getApproximateBytes() : 0,
+                    rowMapper.getMappingNanos(), System.nanoTime() - start);
+            return rows;
+        }
+    }
+
+    private List<ResultRow> takePreloadedFirstPage(int limit, String sort) {
+        synchronized (pageBoundaries) {
+            FirstPage page = preloadedFirstPage;
+            preloadedFirstPage = null;
+            if (page == null || !page.sortOrder().equals(sort)) {
+                return null;
+            }
+            // A page covering the request can be cut down; a shorter one only helps if it is the whole result
+            if (page.rows().size() >= limit) {
+                return page.rows().subList(0, limit);
+            }
+            return page.complete() ? page.rows() : null;
+        }
+    }
+
+    /**
+     * Builds the SQL for one page. With a primary key the page is a keyset seek from the given boundary (or the
+     * start of the table) that only skips the remaining distance; without one it is plain LIMIT/OFFSET.
+     */
+    private PageQuery buildPageQuery(int offset, int limit, String whereClause, List<Object> whereParams,
+                                     Map.Entry<Integer, Object[]> boundary) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM " + tableName + " WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+        if (!whereClause.isEmpty()) {
+            sql.append(" AND (").append(whereClause).append(")");
+            params.addAll(whereParams);
+        }
+
+        if (keyColumns.isEmpty()) {
+            sql.append(" LIMIT ? OFFSET ?");
+            params.add(limit);
+            params.add(offset);
+            return new PageQuery(sql.toString(), params);
+        }
+
+        int skip = boundary == null ? offset : offset - boundary.getKey();
+        String keyList = String.join(", ", keyColumns);
+        if (boundary != null) {
+            // Row-value comparison so composite keys seek on the same index the ORDER BY uses
+            String placeholders = keyColumns.stream().map(column -> "?").collect(Collectors.joining(", "));
+            sql.append(" AND (").append(keyList).append(") > (").append(placeholders).append(")");
+            params.addAll(Arrays.asList(boundary.getValue()));
+        }
+        sql.append(" ORDER BY ").append(keyList).append(" LIMIT ?");
+        params.add(limit);
+        if (skip > 0) {
+            sql.append(" OFFSET ?");
+            params.add(skip);
+        }
+        return new PageQuery(sql.toString(), params);
+    }
+
+    /**
+     * Builds the SQL for one page in a sort order chosen in the grid. With a primary key the page seeks past the
+     * sort column and key values of the given boundary row and only skips the remaining distance; without one it is
+     * plain LIMIT/OFFSET.
+     */
+    private PageQuery buildSortedPageQuery(int offset, int limit, String whereClause, List<Object> whereParams,
+                                           String sort, Map.Entry<Integer, Object[]> boundary) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM " + tableName + " WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+        if (!whereClause.isEmpty()) {
+            sql.append(" AND (").append(whereClause).append(")");
+            params.addAll(whereParams);
+        }
+
+        if (keyColumns.isEmpty()) {
+            sql.append(" ORDER BY ").append(orderBy(sort)).append(" LIMIT ? OFFSET ?");
+            params.add(limit);
+            params.add(offset);
+            return new PageQuery(sql.toString(), params);
+        }
+
+        int skip = boundary == null ? offset : offset - boundary.getKey();
+        if (boundary != null) {
+            sql.append(" AND (");
+            appendSeek(sql, params, seekColumns(sort), boundary.getValue());
+            sql.append(")");
+        }
+        sql.append(" ORDER BY ").append(orderBy(sort)).append(" LIMIT ?");
+        params.add(limit);
+        if (skip > 0) {
+            sql.append(" OFFSET ?");
+            params.add(skip);
+        }
+        return new PageQuery(sql.toString(), params);
+    }
+
+    /**
+     * Appends a predicate for the rows after the given values in the order of the columns:
+     * {@code (a after ?) OR (a = ? AND b after ?) OR ...}. A row-value comparison would be shorter, but it cannot
+     * mix directions and drops rows with NULLs, which PostgreSQL sorts last when ascending and first when
+     * descending.
+     */
+    private static void appendSeek(StringBuilder sql, List<Object> params, List<SortColumn> columns, Object[] values) {
+        boolean first = true;
+        for (int i = 0; i < columns.size(); i++) {
+            SortColumn column = columns.get(i);
+            Object value = values[i];
+            // Nothing comes after NULL in ascending order
+            if (value == null && !column.descending()) {
+                continue;
+            }
+            sql.append(first ? "(" : " OR (");
+            first = false;
+            for (int j = 0; j < i; j++) {
+                if (values[j] == null) {
+                    sql.append(columns.get(j).column()).append(" IS NULL AND ");
+                } else {
+                    sql.append(columns.get(j).column()).append(" = ? AND ");
+                    params.add(values[j]);
+                }
+            }
+            if (value == null) {
+                sql.append(column.column()).append(" IS NOT NULL");
+            } else if (column.descending()) {
+                sql.append(column.column()).append(" < ?");
+                params.add(value);
+            } else if (column.nullable()) {
+                sql.append("(").append(column.column()).append(" > ? OR ").append(column.column()).append(" IS NULL)");
+                params.add(value);
+            } else {
+                sql.append(column.column()).append(" > ?");
+                params.add(value);
+            }
+            sql.append(")");
+        }
+    }
+
+    // The sort columns followed by the primary key, as parsed back from an ORDER BY list made by sortOrderOf
+    private List<SortColumn> seekColumns(String sort) {
+        List<SortColumn> columns = new ArrayList<>();
+        if (!sort.isEmpty()) {
+            for (String order : sort.split(", ")) {
+                int space = order.lastIndexOf(' ');
+                columns.add(new SortColumn(order.substring(0, space), order.endsWith(" DESC"), true));
+            }
+        }
+        keyColumns.forEach(column -> columns.add(new SortColumn(column, false, false)));
+        return columns;
+    }
+
+    // The sort columns followed by the primary key, which makes the order total and the pages stable
+    private String orderBy(String sort) {
+        String keyList = String.join(", ", keyColumns);
+        if (sort.isEmpty()) {
+            return keyList;
+        }
+        return keyList.isEmpty() ? sort : sort + ", " + keyList;
+    }
+
+    private String sortOrderOf(List<QuerySortOrder> sortOrders) {
+        return sortOrders.stream()
+                .filter(order -> sortableColumns.contains(order.getSorted()))
+                .map(order -> order.getSorted() + (order.getDirection() == SortDirection.DESCENDING ? " DESC" : " ASC"))
+                .collect(Collectors.joining(", "));
+    }
+
+    private long explainRows(String whereClause, List<Object> params) {
+        StringBuilder sql = new StringBuilder("EXPLAIN SELECT * FROM " + tableName);
+        if (!whereClause.isEmpty()) {
+            sql.append(" WHERE ").append(whereClause);
+        }
+        List<String> plan;
+        try (QueryAdmissionController.Permit permit = admissionController.acquire(QueryLane.INTERACTIVE, sessionId)) {
+            plan = new CancellableQuery().query(jdbcTemplate, sql.toString(), params,
+                    (rs, rowNum) -> rs.getString(1), permit.getTimeoutSeconds());
+        }
+        Matcher rows = plan.isEmpty() ? null : PLAN_ROWS.matcher(plan.get(0));
+        return rows != null && rows.find() ? Long.parseLong(rows.group(1)) : -1;
+    }
+
+    private Map.Entry<Integer, Object[]> nearestBoundary(int offset) {
+        synchronized (pageBoundaries) {
+            return pageBoundaries.floorEntry(offset);
+        }
+    }
+
+    private void rememberBoundary(int offset, Object[] key) {
+        synchronized (pageBoundaries) {
+            if (pageBoundaries.size() >= MAX_REMEMBERED_BOUNDARIES) {
+                pageBoundaries.clear();
+            }
+            pageBoundaries.put(offset, key);
+        }
+    }
+
+    private Object[] seekValuesOf(ResultRow row, String sort) {
+        List<SortColumn> columns = seekColumns(sort);
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = row.get(columns.get(i).column());
+        }
+        return values;
+    }
+
+    private Object[] keyOf(ResultRow row) {
+        Object[] key = new Object[keyColumns.size()];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = row.get(keyColumns.get(i));
+        }
+        return key;
+    }
+}
@@ -0,0 +1,53 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+/**
+ * One row of a {@link ResultTable}. The row holds no values of its own; it is a position in the table's column
+ * arrays, so a row costs a single small object regardless of how many columns the result has.
+ */
+public final class ResultRow {
+
+    private final ResultTable table;
+    private final int index;
+
+    ResultRow(ResultTable table, int index) {
+        this.table = table;
+        this.index = index;
+    }
+
+    public ResultSchema getSchema() {
+        return table.getSchema();
+    }
+
+    /**
+     * @param column zero-based column index
+     */
+    public Object get(int column) {
+        return table.getValue(index, column);
+    }
+
+    /**
+     * Looks the column up by label; prefer {@link #get(int)} on hot paths.
+     *
+     * @return the value, or null if the column is null or does not exist
+     */
+    public Object get(String columnName) {
+        int column = table.getSchema().indexOf(columnName);
+        return column >= 0 ? table.getValue(index, column) : null;
+    }
+
+    public int size() {
+        return table.getSchema().size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("{");
+        for (int i = 0; i < size(); i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(getSchema().getColumnName(i)).append('=').append(get(i));
+        }
+        return text.append('}').toString();
+    }
+}
@@ -0,0 +1,75 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable column layout of a result, resolved once from {@link ResultSetMetaData} and shared by every row of
+ * that result so column names are never duplicated per row.
+ */
+public final class ResultSchema {
+
+    private final String[] columnNames;
+    private final int[] columnTypes;
+    private final Map<String, Integer> indexByName;
+
+    public ResultSchema(String[] columnNames, int[] columnTypes) {
+        if (columnNames.length != columnTypes.length) {
+            throw new IllegalArgumentException("Column names and types must have the same length");
+        }
+        this.columnNames = columnNames.clone();
+        this.columnTypes = columnTypes.clone();
+        this.indexByName = new HashMap<>(columnNames.length * 2);
+        for (int i = 0; i < columnNames.length; i++) {
+            // First occurrence wins for duplicate labels, as with ResultSet.findColumn
+            indexByName.putIfAbsent(columnNames[i], i);
+        }
+    }
+
+    public static ResultSchema of(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        String[] names = new String[columnCount];
+        int[] types = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = metaData.getColumnLabel(i + 1);
+            types[i] = metaData.getColumnType(i + 1);
+        }
+        return new ResultSchema(names, types);
+    }
+
+    public int size() {
+        return columnNames.length;
+    }
+
+    public String getColumnName(int index) {
+        return columnNames[index];
+    }
+
+    /**
+     * @return the {@link java.sql.Types} code of the column
+     */
+    public int getColumnType(int index) {
+        return columnTypes[index];
+    }
+
+    /**
+     * @return the zero-based index of the column, or -1 if the result has no such column
+     */
+    public int indexOf(String columnName) {
+        Integer index = indexByName.get(columnName);
+        return index != null ? index : -1;
+    }
+
+    public List<String> getColumnNames() {
+        return List.of(columnNames);
+    }
+
+    @Override
+    public String toString() {
+        return "ResultSchema" + Arrays.toString(columnNames);
+    }
+}
@@ -0,0 +1,285 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds the rows of one query result, on the heap while the owning session's heap budget allows and on disk past
+ * that.
+ * <p>
+ * Rows are first appended to a {@link ResultTable}. Once the session has no heap budget left, further rows collect
+ * in a small chunk that is written to a {@link SpillFile} whenever it is full, as long as the global disk quota
+ * allows. Reading a range of rows takes each part from wherever it lives, so callers see one sequence of rows.
+ * <p>
+ * The store returns its heap budget and deletes its file when {@link #close() closed}. Access is synchronized; the
+ * session may close the store from another thread.
+ */
+public final class ResultStore implements AutoCloseable {
+
+    // Heap is taken from the session budget in steps, not per row
+    private static final long HEAP_RESERVATION_STEP = 1024 * 1024;
+
+    private final ResultSchema schema;
+    private final ResultTable heapRows;
+    private final ResultStoreManager manager;
+    private final ResultStoreManager.Budget budget;
+
+    private long reservedHeap;
+    private SpillFile spillFile;
+    private ResultTable pendingChunk;
+    private boolean full;
+    private boolean closed;
+
+    ResultStore(ResultSchema schema, ResultStoreManager manager, ResultStoreManager.Budget budget) {
+        this.schema = schema;
+        this.heapRows = new ResultTable(schema);
+        this.manager = manager;
+        this.budget = budget;
+    }
+
+    private ResultStore(ResultTable rows) {
+        this.schema = rows.getSchema();
+        this.heapRows = rows;
+        this.manager = null;
+        this.budget = null;
+        this.full = true;
+    }
+
+    /**
+     * Wraps a complete result that is already on the heap and accounted for elsewhere, e.g. in the result cache.
+     */
+    public static ResultStore of(ResultTable rows) {
+        return new ResultStore(rows);
+    }
+
+    public ResultSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Copies the current row of the result set into the store.
+     *
+     * @return false if the store cannot take further rows because the disk quota is used up
+     */
+    public synchronized boolean append(ResultSet rs) throws SQLException {
+        if (full || closed) {
+            return false;
+        }
+        if (spillFile == null && pendingChunk == null) {
+            heapRows.appendRow(rs);
+            if (heapRows.getApproximateBytes() > reservedHeap) {
+                if (budget.tryReserve(HEAP_RESERVATION_STEP)) {
+                    reservedHeap += HEAP_RESERVATION_STEP;
+                } else {
+                    pendingChunk = new ResultTable(schema);  // Budget used up; the next rows go to disk
+                }
+            }
+            return true;
+        }
+        pendingChunk.appendRow(rs);
+        if (pendingChunk.size() == SpillFile.CHUNK_ROWS) {
+            return flushChunk();
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of rows stored
+     */
+    public synchronized int size() {
+        return heapRows.size() + spilledRows() + (pendingChunk != null ? pendingChunk.size() : 0);
+    }
+
+    /**
+     * @return true if part of the result is on disk, or waiting to be written there
+     */
+    public synchronized boolean isSpilled() {
+        return pendingChunk != null;
+    }
+
+    /**
+     * @return the rows kept on the heap; the whole result unless it {@link #isSpilled() spilled}
+     */
+    public ResultTable getHeapRows() {
+        return heapRows;
+    }
+
+    public synchronized long getApproximateHeapBytes() {
+        return heapRows.getApproximateBytes() + (pendingChunk != null ? pendingChunk.getApproximateBytes() : 0);
+    }
+
+    /**
+     * @return rows {@code [from, to)}, clamped to the rows present; empty once the store is closed
+     */
+    public synchronized List<ResultRow> rows(int from, int to) {
+        if (closed) {
+            return List.of();
+        }
+        int end = Math.min(to, size());
+        List<ResultRow> rows = new ArrayList<>(Math.max(0, end - from));
+        int row = from;
+        while (row < end) {
+            if (row < heapRows.size()) {
+                int stop = Math.min(end, heapRows.size());
+                rows.addAll(heapRows.rows(row, stop));
+                row = stop;
+            } else if (row < heapRows.size() + spilledRows()) {
+                // One chunk at a time; each read decodes only the requested rows
+                int fileRow = row - heapRows.size();
+                int chunkEnd = (fileRow / SpillFile.CHUNK_ROWS + 1) * SpillFile.CHUNK_ROWS;
+                int stop = Math.min(end - heapRows.size(), chunkEnd);
+                rows.addAll(spillFile.read(fileRow, stop).rows());
+                row = heapRows.size() + stop;
+            } else {
+                int pendingRow = row - heapRows.size() - spilledRows();
+                rows.addAll(pendingChunk.rows(pendingRow, end - heapRows.size() - spilledRows()));
+                row = end;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Rows picked by row number, e.g. in the order returned by {@link #sortedOrder}.
+     *
+     * @return rows {@code order[from]} to {@code order[to - 1]}, clamped to the length of the order
+     */
+    public synchronized List<ResultRow> rows(int[] order, int from, int to) {
+        int end = Math.min(to, order.length);
+        List<ResultRow> rows = new ArrayList<>(Math.max(0, end - from));
+        for (int i = from; i < end; i++) {
+            // Spilled rows come from the chunk the file keeps loaded, so neighbours in the file are cheap
+            rows.addAll(rows(order[i], order[i] + 1));
+        }
+        return rows;
+    }
+
+    /**
+     * Sorts the stored rows without moving them or copying their values. Nulls come last in ascending and first in
+     * descending order, as in PostgreSQL; text is compared by character codes, not by the database's collation. Rows
+     * with equal values keep their order.
+     * <p>
+     * Only a store that did not spill can be sorted, so the sort needs no memory beyond the row numbers; its rows
+     * are complete and no longer change, so they are compared without holding the store's lock.
+     *
+     * @param columns    the columns to sort by, most significant first
+     * @param descending for each of those columns whether it sorts in descending order
+     * @return the row numbers in sorted order, for {@link #rows(int[], int, int)}
+     * @throws IllegalStateException if the store {@link #isSpilled() spilled}
+     */
+    public int[] sortedOrder(int[] columns, boolean[] descending) {
+        int size;
+        synchronized (this) {
+            if (isSpilled()) {
+                throw new IllegalStateException("Rows on disk cannot be sorted in memory");
+            }
+            if (closed) {
+                return new int[0];
+            }
+            size = heapRows.size();
+        }
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[size], 0, size, (a, b) -> {
+            for (int column = 0; column < columns.length; column++) {
+                int result = compareValues(heapRows.getValue(a, columns[column]), heapRows.getValue(b, columns[column]));
+                if (result != 0) {
+                    return descending[column] ? -result : result;
+                }
+            }
+            return 0;
+        });
+        return order;
+    }
+
+    /**
+     * Returns the heap budget and disk quota the store holds and deletes its file.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (manager == null) {
+            return;
+        }
+        budget.release(reservedHeap);
+        if (spillFile != null) {
+            manager.releaseDisk(spillFile.getFileSize());
+            spillFile.close();
+        }
+        manager.unregister(this);
+    }
+
+    // Ascending order with nulls last; values of one column share a type except for the odd driver object
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1;
+        }
+        if (a instanceof byte[] x && b instanceof byte[] y) {
+            return Arrays.compareUnsigned(x, y);
+        }
+        if (a instanceof Comparable comparable && a.getClass() == b.getClass()) {
+            return comparable.compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private interface RowComparator {
+        int compare(int a, int b);
+    }
+
+    // Stable, and on primitive row numbers so a large result is not boxed
+    private static void mergeSort(int[] rows, int[] buffer, int from, int to, RowComparator comparator) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(rows, buffer, from, middle, comparator);
+        mergeSort(rows, buffer, middle, to, comparator);
+        if (comparator.compare(rows[middle - 1], rows[middle]) <= 0) {
+            return;  // Already in order
+        }
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || left < middle && comparator.compare(buffer[left], buffer[right]) <= 0) {
+                rows[i] = buffer[left++];
+            } else {
+                rows[i] = buffer[right++];
+            }
+        }
+    }
+
+    private int spilledRows() {
+        return spillFile != null ? spillFile.size() : 0;
+    }
+
+    private boolean flushChunk() {
+        try {
+            if (spillFile == null) {
+                spillFile = manager.createSpillFile(schema);
+            }
+            byte[] encoded = spillFile.encode(pendingChunk);
+            if (!manager.tryReserveDisk(encoded.length)) {
+                full = true;  // The rows of the chunk stay readable from the heap
+                return false;
+            }
+            spillFile.write(encoded);
+            pendingChunk = new ResultTable(schema);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
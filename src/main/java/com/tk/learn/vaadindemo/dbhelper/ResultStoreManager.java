@@ -0,0 +1,142 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import com.vaadin.flow.server.ServiceInitEvent;
+import com.vaadin.flow.server.VaadinServiceInitListener;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates {@link ResultStore}s and enforces their limits: a heap budget per HTTP session and a disk quota shared by
+ * all sessions for the spill files.
+ * <p>
+ * Stores are tracked per session so that everything a session left behind is released when the session is
+ * destroyed, even if a view never got to close its result. Spill files live in their own directory, which is
+ * emptied on startup and removed on shutdown.
+ */
+@Component
+public class ResultStoreManager implements VaadinServiceInitListener {
+
+    // Stores created without a session share one budget
+    private static final String NO_SESSION = "";
+
+    @Value("${db.result-store.session-heap-budget:64MB}")
+    private DataSize sessionHeapBudget;
+
+    @Value("${db.result-store.disk-quota:4GB}")
+    private DataSize diskQuota;
+
+    @Value("${db.result-store.directory:${java.io.tmpdir}/vaadindemo-results}")
+    private Path directory;
+
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+    private final Map<String, Set<ResultStore>> storesBySession = new ConcurrentHashMap<>();
+    private final AtomicLong diskUsed = new AtomicLong();
+
+    /**
+     * Heap a session's results may hold; shared by all stores of the session.
+     */
+    static final class Budget {
+
+        private final long limit;
+        private final AtomicLong used = new AtomicLong();
+
+        Budget(long limit) {
+            this.limit = limit;
+        }
+
+        boolean tryReserve(long bytes) {
+            return reserve(used, bytes, limit);
+        }
+
+        void release(long bytes) {
+            used.addAndGet(-bytes);
+        }
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        // Files of a previous run are of no use to anyone
+        FileSystemUtils.deleteRecursively(directory);
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public void serviceInit(ServiceInitEvent event) {
+        event.getSource().addSessionDestroyListener(destroyEvent ->
+                releaseSession(destroyEvent.getSession().getSession().getId()));
+    }
+
+    /**
+     * Creates an empty store charged to the session's heap budget. The caller owns it and must close it.
+     */
+    public ResultStore create(ResultSchema schema, String sessionId) {
+        String key = sessionId != null ? sessionId : NO_SESSION;
+        Budget budget = budgets.computeIfAbsent(key, id -> new Budget(sessionHeapBudget.toBytes()));
+        ResultStore store = new ResultStore(schema, this, budget);
+        storesBySession.computeIfAbsent(key, id -> ConcurrentHashMap.newKeySet()).add(store);
+        return store;
+    }
+
+    /**
+     * Closes every store the session still has.
+     */
+    public void releaseSession(String sessionId) {
+        Set<ResultStore> stores = storesBySession.remove(sessionId);
+        if (stores != null) {
+            stores.forEach(ResultStore::close);
+        }
+        budgets.remove(sessionId);
+    }
+
+    /**
+     * @return bytes of spill files currently on disk
+     */
+    public long getDiskUsed() {
+        return diskUsed.get();
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        storesBySession.values().forEach(stores -> stores.forEach(ResultStore::close));
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    SpillFile createSpillFile(ResultSchema schema) throws IOException {
+        return new SpillFile(directory, schema);
+    }
+
+    boolean tryReserveDisk(long bytes) {
+        return reserve(diskUsed, bytes, diskQuota.toBytes());
+    }
+
+    void releaseDisk(long bytes) {
+        diskUsed.addAndGet(-bytes);
+    }
+
+    void unregister(ResultStore store) {
+        storesBySession.values().forEach(stores -> stores.remove(store));
+    }
+
+    private static boolean reserve(AtomicLong used, long bytes, long limit) {
+        long current;
+        do {
+            current = used.get();
+            if (current + bytes > limit) {
+                return false;
+            }
+        } while (!used.compareAndSet(current, current + bytes));
+        return true;
+    }
+}
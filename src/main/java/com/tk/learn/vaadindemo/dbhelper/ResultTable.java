@@ -0,0 +1,282 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Column-oriented store for a query result.
+ * <p>
+ * All rows share one {@link ResultSchema}. Integer, bigint and double precision columns are kept in primitive
+ * arrays with a null bitmap instead of boxed values; every other column is a plain {@code Object[]}. Rows are
+ * exposed as lightweight {@link ResultRow} views.
+ * <p>
+ * Appending is not thread safe; callers that read while another thread appends must synchronize themselves.
+ */
+public final class ResultTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ResultSchema schema;
+    private final Column[] columns;
+    private int rowCount;
+    private long approximateBytes;
+
+    public ResultTable(ResultSchema schema) {
+        this.schema = schema;
+        this.columns = new Column[schema.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Column.forType(schema.getColumnType(i));
+        }
+    }
+
+    /**
+     * Reads every remaining row of the result set into a new table.
+     */
+    public static ResultTable from(ResultSet rs) throws SQLException {
+        ResultTable table = new ResultTable(ResultSchema.of(rs.getMetaData()));
+        while (rs.next()) {
+            table.appendRow(rs);
+        }
+        return table;
+    }
+
+    public ResultSchema getSchema() {
+        return schema;
+    }
+
+    public int size() {
+        return rowCount;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    /**
+     * @return a rough estimate of the heap held by the stored values
+     */
+    public long getApproximateBytes() {
+        return approximateBytes;
+    }
+
+    /**
+     * Copies the current row of the result set into the table.
+     *
+     * @return a view of the appended row
+     */
+    public ResultRow appendRow(ResultSet rs) throws SQLException {
+        int row = rowCount;
+        for (int i = 0; i < columns.length; i++) {
+            approximateBytes += columns[i].append(rs, i + 1, row);
+        }
+        rowCount++;
+        return new ResultRow(this, row);
+    }
+
+    /**
+     * Appends a row of already read values, one per column, e.g. when reloading rows that were written to disk.
+     *
+     * @return a view of the appended row
+     */
+    public ResultRow appendValues(Object[] values) {
+        int row = rowCount;
+        for (int i = 0; i < columns.length; i++) {
+            approximateBytes += columns[i].appendValue(values[i], row);
+        }
+        rowCount++;
+        return new ResultRow(this, row);
+    }
+
+    public Object getValue(int row, int column) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + rowCount);
+        }
+        return columns[column].get(row);
+    }
+
+    public ResultRow getRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + rowCount);
+        }
+        return new ResultRow(this, row);
+    }
+
+    /**
+     * @return views of the rows in {@code [from, to)}, clamped to the rows present
+     */
+    public List<ResultRow> rows(int from, int to) {
+        int end = Math.min(to, rowCount);
+        List<ResultRow> rows = new ArrayList<>(Math.max(0, end - from));
+        for (int i = from; i < end; i++) {
+            rows.add(new ResultRow(this, i));
+        }
+        return rows;
+    }
+
+    public List<ResultRow> rows() {
+        return rows(0, rowCount);
+    }
+
+    private abstract static class Column {
+
+        static Column forType(int jdbcType) {
+            return switch (jdbcType) {
+                case Types.INTEGER, Types.SMALLINT, Types.TINYINT -> new IntColumn();
+                case Types.BIGINT -> new LongColumn();
+                case Types.DOUBLE, Types.FLOAT -> new DoubleColumn();
+                default -> new ObjectColumn();
+            };
+        }
+
+        final BitSet nulls = new BitSet();
+
+        /**
+         * @return approximate number of bytes the value added
+         */
+        abstract long append(ResultSet rs, int jdbcIndex, int row) throws SQLException;
+
+        abstract long appendValue(Object value, int row);
+
+        abstract Object get(int row);
+    }
+
+    private static final class IntColumn extends Column {
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        @Override
+        long append(ResultSet rs, int jdbcIndex, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            values[row] = rs.getInt(jdbcIndex);
+            if (rs.wasNull()) {
+                nulls.set(row);
+            }
+            return Integer.BYTES;
+        }
+
+        @Override
+        long appendValue(Object value, int row) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            if (value == null) {
+                nulls.set(row);
+            } else {
+                values[row] = ((Number) value).intValue();
+            }
+            return Integer.BYTES;
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : values[row];
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        @Override
+        long append(ResultSet rs, int jdbcIndex, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            values[row] = rs.getLong(jdbcIndex);
+            if (rs.wasNull()) {
+                nulls.set(row);
+            }
+            return Long.BYTES;
+        }
+
+        @Override
+        long appendValue(Object value, int row) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            if (value == null) {
+                nulls.set(row);
+            } else {
+                values[row] = ((Number) value).longValue();
+            }
+            return Long.BYTES;
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : values[row];
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        @Override
+        long append(ResultSet rs, int jdbcIndex, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            values[row] = rs.getDouble(jdbcIndex);
+            if (rs.wasNull()) {
+                nulls.set(row);
+            }
+            return Double.BYTES;
+        }
+
+        @Override
+        long appendValue(Object value, int row) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            if (value == null) {
+                nulls.set(row);
+            } else {
+                values[row] = ((Number) value).doubleValue();
+            }
+            return Double.BYTES;
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : values[row];
+        }
+    }
+
+    private static final class ObjectColumn extends Column {
+        private Object[] values = new Object[INITIAL_CAPACITY];
+
+        @Override
+        long append(ResultSet rs, int jdbcIndex, int row) throws SQLException {
+            return appendValue(rs.getObject(jdbcIndex), row);
+        }
+
+        @Override
+        long appendValue(Object value, int row) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            values[row] = value;
+            if (value == null) {
+                nulls.set(row);
+                return 8;
+            }
+            if (value instanceof CharSequence text) {
+                return 40 + 2L * text.length();
+            }
+            if (value instanceof byte[] bytes) {
+                return 16 + bytes.length;
+            }
+            return 24;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+    }
+}
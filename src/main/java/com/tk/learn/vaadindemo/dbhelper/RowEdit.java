@@ -0,0 +1,14 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pending changes to one row, as staged in a {@link RowEditBuffer}.
+ *
+ * @param key      primary key values of the row, in key order
+ * @param original the row as it was read before the first edit; its values are the optimistic concurrency check
+ * @param values   column name to new value, only for columns that actually changed
+ */
+public record RowEdit(List<Object> key, ResultRow original, Map<String, Object> values) {
+}
@@ -0,0 +1,75 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Edits made in the grid that have not been written yet, keyed by primary key.
+ * <p>
+ * Editing the same row again merges into its pending edit, and a value set back to what was read drops out of it,
+ * so the buffer only ever holds real changes. The row as first read is kept for the optimistic check on save.
+ * Not thread safe; it belongs to one view.
+ */
+public class RowEditBuffer {
+
+    private final Map<List<Object>, RowEdit> edits = new LinkedHashMap<>();
+
+    /**
+     * Stages new values for a row.
+     *
+     * @param key    primary key values of the row
+     * @param row    the row being edited
+     * @param values column name to the value entered, for the edited columns
+     * @return true if the row has pending changes afterwards
+     */
+    public boolean stage(List<Object> key, ResultRow row, Map<String, Object> values) {
+        RowEdit existing = edits.get(key);
+        ResultRow original = existing != null ? existing.original() : row;
+        Map<String, Object> changed = new LinkedHashMap<>(existing != null ? existing.values() : Map.of());
+        values.forEach((column, value) -> {
+            // The form shows values as text, with nulls as empty fields
+            if (asText(original.get(column)).equals(asText(value))) {
+                changed.remove(column);
+            } else {
+                changed.put(column, value);
+            }
+        });
+
+        if (changed.isEmpty()) {
+            edits.remove(key);
+            return false;
+        }
+        edits.put(key, new RowEdit(key, original, changed));
+        return true;
+    }
+
+    /**
+     * @return the pending edit for the row, or null if it has none
+     */
+    public RowEdit get(List<Object> key) {
+        return edits.get(key);
+    }
+
+    public List<RowEdit> getEdits() {
+        return new ArrayList<>(edits.values());
+    }
+
+    public int size() {
+        return edits.size();
+    }
+
+    public boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    public void clear() {
+        edits.clear();
+    }
+
+    private static String asText(Object value) {
+        return Objects.toString(value, "");
+    }
+}
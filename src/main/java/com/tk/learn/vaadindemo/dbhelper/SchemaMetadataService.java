@@ -0,0 +1,171 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Application-wide cache of the table catalog (tables, column types, primary keys and indexed columns) of the
+ * public schema, one per database of the {@link ConnectionManager}. Indexed columns are split into B-tree leading columns, which can serve ORDER BY, range and prefix
+ * filters, and columns with a trigram index ({@code pg_trgm}), which can serve substring {@code ILIKE} filters.
+ * <p>
+ * The whole catalog is loaded in bulk, with one query for the table list, one {@link DatabaseMetaData#getColumns}
+ * call, one query for all primary keys and one for all leading index columns, and then shared by every view. It is
+ * reloaded when the TTL expires or when {@link #invalidate(String)} is called after DDL, so opening a table normally
+ * costs no catalog round trips.
+ */
+@Service
+public class SchemaMetadataService {
+
+    private static final String SCHEMA = "public";
+
+    private static final String PRIMARY_KEYS_QUERY =
+            "SELECT kcu.table_name, kcu.column_name FROM information_schema.key_column_usage kcu " +
+            "JOIN information_schema.table_constraints tc " +
+            "ON tc.constraint_name = kcu.constraint_name AND tc.table_schema = kcu.table_schema " +
+            "WHERE tc.constraint_type = 'PRIMARY KEY' AND tc.table_schema = ? " +
+            "ORDER BY kcu.table_name, kcu.ordinal_position";
+
+    // First column of every index with its access method and operator class
+    private static final String INDEXED_COLUMNS_QUERY =
+            "SELECT c.relname AS table_name, a.attname AS column_name, am.amname AS access_method, " +
+            "oc.opcname AS operator_class FROM pg_index i " +
+            "JOIN pg_class c ON c.oid = i.indrelid " +
+            "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+            "JOIN pg_class ic ON ic.oid = i.indexrelid " +
+            "JOIN pg_am am ON am.oid = ic.relam " +
+            "JOIN pg_opclass oc ON oc.oid = i.indclass[0] " +
+            "JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum = i.indkey[0] " +
+            "WHERE n.nspname = ?";
+
+    @Autowired
+    private ConnectionManager connectionManager;
+
+    @Value("${db.fetch.all-tables:SELECT table_name FROM information_schema.tables WHERE table_schema = 'public'}")
+    private String queryToFetchAllTables;
+
+    @Value("${db.metadata.ttl:PT5M}")
+    private Duration ttl;
+
+    // Database name -> its catalog; each is loaded under its own lock
+    private final Map<String, Catalog> catalogs = new ConcurrentHashMap<>();
+
+    private static final class Catalog {
+        private volatile Snapshot snapshot;
+    }
+
+    private record Snapshot(List<String> tableNames, Map<String, TableMetadata> tables, long loadedAtNanos) {
+    }
+
+    @PostConstruct
+    void init() {
+        connectionManager.addRemovalListener(catalogs::remove);
+    }
+
+    /**
+     * @return the names of all tables in the public schema of the database
+     */
+    public List<String> getTableNames(String dataSource) {
+        return currentSnapshot(dataSource).tableNames();
+    }
+
+    /**
+     * @return the cached metadata of the table, or null if the table is unknown
+     */
+    public TableMetadata getTable(String dataSource, String tableName) {
+        return currentSnapshot(dataSource).tables().get(tableName);
+    }
+
+    /**
+     * Drops the cached catalog of the database; the next lookup reloads it. Called whenever DDL may have changed
+     * the schema.
+     */
+    public void invalidate(String dataSource) {
+        Catalog catalog = catalogs.get(dataSource);
+        if (catalog != null) {
+            catalog.snapshot = null;
+        }
+    }
+
+    private Snapshot currentSnapshot(String dataSource) {
+        JdbcTemplate jdbcTemplate = connectionManager.jdbcTemplate(dataSource);  // Fails for unknown databases
+        Catalog catalog = catalogs.computeIfAbsent(dataSource, name -> new Catalog());
+        Snapshot current = catalog.snapshot;
+        if (current != null && System.nanoTime() - current.loadedAtNanos() < ttl.toNanos()) {
+            return current;
+        }
+        synchronized (catalog) {
+            // Another thread may have reloaded while we waited for the lock
+            current = catalog.snapshot;
+            if (current == null || System.nanoTime() - current.loadedAtNanos() >= ttl.toNanos()) {
+                current = load(jdbcTemplate);
+                catalog.snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private Snapshot load(JdbcTemplate jdbcTemplate) {
+        List<String> tableNames = jdbcTemplate.queryForList(queryToFetchAllTables, String.class);
+
+        ConnectionCallback<Map<String, Map<String, Integer>>> readColumns = connection -> {
+            Map<String, Map<String, Integer>> columns = new LinkedHashMap<>();
+            // getColumns orders by table and ordinal position, which is also the SELECT * order
+            try (ResultSet rs = connection.getMetaData().getColumns(null, SCHEMA, "%", "%")) {
+                while (rs.next()) {
+                    columns.computeIfAbsent(rs.getString("TABLE_NAME"), table -> new LinkedHashMap<>())
+                            .put(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"));
+                }
+            }
+            return columns;
+        };
+        Map<String, Map<String, Integer>> columnsByTable = jdbcTemplate.execute(readColumns);
+
+        Map<String, List<String>> keysByTable = new LinkedHashMap<>();
+        jdbcTemplate.query(PRIMARY_KEYS_QUERY, (RowCallbackHandler) rs -> {
+            keysByTable.computeIfAbsent(rs.getString("table_name"), table -> new ArrayList<>())
+                    .add(rs.getString("column_name"));
+        }, SCHEMA);
+
+        Map<String, Set<String>> indexedByTable = new HashMap<>();
+        Map<String, Set<String>> trigramIndexedByTable = new HashMap<>();
+        jdbcTemplate.query(INDEXED_COLUMNS_QUERY, (RowCallbackHandler) rs -> {
+            String operatorClass = rs.getString("operator_class");
+            if ("btree".equals(rs.getString("access_method"))) {
+                indexedByTable.computeIfAbsent(rs.getString("table_name"), table -> new HashSet<>())
+                        .add(rs.getString("column_name"));
+            } else if ("gin_trgm_ops".equals(operatorClass) || "gist_trgm_ops".equals(operatorClass)) {
+                trigramIndexedByTable.computeIfAbsent(rs.getString("table_name"), table -> new HashSet<>())
+                        .add(rs.getString("column_name"));
+            }
+        }, SCHEMA);
+
+        Map<String, TableMetadata> tables = new LinkedHashMap<>();
+        for (String tableName : tableNames) {
+            Map<String, Integer> columnTypes = columnsByTable.getOrDefault(tableName, Map.of());
+            List<String> primaryKey = keysByTable.getOrDefault(tableName, List.of());
+            Set<String> indexedColumns = indexedByTable.getOrDefault(tableName, Set.of());
+            Set<String> trigramIndexedColumns = trigramIndexedByTable.getOrDefault(tableName, Set.of());
+            tables.put(tableName, new TableMetadata(tableName, Collections.unmodifiableMap(columnTypes),
+                    List.copyOf(primaryKey), Set.copyOf(indexedColumns), Set.copyOf(trigramIndexedColumns)));
+        }
+        return new Snapshot(List.copyOf(tableNames), Collections.unmodifiableMap(tables), System.nanoTime());
+    }
+}
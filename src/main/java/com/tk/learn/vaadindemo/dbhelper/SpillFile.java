@@ -0,0 +1,342 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Rows of a result written to a temp file in a compact columnar encoding and read back through memory mapping.
+ * <p>
+ * Rows are written in chunks of {@link #CHUNK_ROWS}. Within a chunk each column is stored on its own: a null bitmap,
+ * then fixed-width values for int, bigint and double columns, or a table of value offsets followed by tagged values
+ * for every other column. The position of each chunk in the file and of each column in a chunk are kept as offset
+ * tables, so any row is found without scanning. Reading rows loads their chunk with a positional read and decodes
+ * just the requested ones back into a small {@link ResultTable}; the last chunk read is kept, so paging through a
+ * chunk reads it only once. Nothing is memory-mapped, so the disk space is free as soon as the file is closed.
+ * <p>
+ * Values of types without an encoding of their own (PostgreSQL arrays, json, intervals, ...) are stored as text.
+ */
+final class SpillFile implements AutoCloseable {
+
+    static final int CHUNK_ROWS = 1024;
+
+    private static final byte KIND_INT = 0;
+    private static final byte KIND_LONG = 1;
+    private static final byte KIND_DOUBLE = 2;
+    private static final byte KIND_VALUE = 3;
+
+    private static final byte TAG_TEXT = 0;
+    private static final byte TAG_DECIMAL = 1;
+    private static final byte TAG_BOOLEAN = 2;
+    private static final byte TAG_DATE = 3;
+    private static final byte TAG_TIME = 4;
+    private static final byte TAG_TIMESTAMP = 5;
+    private static final byte TAG_BYTES = 6;
+    private static final byte TAG_UUID = 7;
+    private static final byte TAG_INT = 8;
+    private static final byte TAG_LONG = 9;
+    private static final byte TAG_FLOAT = 10;
+    private static final byte TAG_DOUBLE = 11;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ResultSchema schema;
+    private final byte[] kinds;
+    // Start of every chunk in the file, plus the end of the last one
+    private final List<Long> chunkPositions = new ArrayList<>(List.of(0L));
+    private int cachedChunkIndex = -1;
+    private ByteBuffer cachedChunk;
+
+    SpillFile(Path directory, ResultSchema schema) throws IOException {
+        this.path = Files.createTempFile(directory, "result-", ".spill");
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.schema = schema;
+        this.kinds = new byte[schema.size()];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = kindOf(schema.getColumnType(i));
+        }
+    }
+
+    /**
+     * @return the number of rows written so far
+     */
+    int size() {
+        return (chunkPositions.size() - 1) * CHUNK_ROWS;
+    }
+
+    long getFileSize() {
+        return chunkPositions.getLast();
+    }
+
+    /**
+     * Encodes a full chunk of rows without writing it, so the caller can check the size against a quota first.
+     *
+     * @param chunk exactly {@link #CHUNK_ROWS} rows with this file's schema
+     */
+    byte[] encode(ResultTable chunk) {
+        int rows = chunk.size();
+        byte[][] sections = new byte[kinds.length][];
+        for (int column = 0; column < kinds.length; column++) {
+            sections[column] = encodeColumn(chunk, column, rows);
+        }
+        // Header: row count, then the offset of every column section from the start of the chunk
+        int headerSize = Integer.BYTES * (1 + kinds.length);
+        int size = headerSize;
+        for (byte[] section : sections) {
+            size += section.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(rows);
+        int offset = headerSize;
+        for (byte[] section : sections) {
+            buffer.putInt(offset);
+            offset += section.length;
+        }
+        for (byte[] section : sections) {
+            buffer.put(section);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Appends an encoded chunk to the file.
+     */
+    void write(byte[] encodedChunk) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(encodedChunk);
+        long position = getFileSize();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        chunkPositions.add(position);
+    }
+
+    /**
+     * Reads rows {@code [from, to)} of the file; both must lie within one chunk.
+     */
+    ResultTable read(int from, int to) {
+        ByteBuffer chunk = chunk(from / CHUNK_ROWS);
+        int first = from % CHUNK_ROWS;
+        int count = to - from;
+        int rows = chunk.getInt(0);
+        ResultTable table = new ResultTable(schema);
+        Object[] values = new Object[kinds.length];
+        for (int row = first; row < first + count; row++) {
+            for (int column = 0; column < kinds.length; column++) {
+                int section = chunk.getInt(Integer.BYTES * (1 + column));
+                values[column] = readValue(chunk, section, kinds[column], rows, row);
+            }
+            table.appendValues(values);
+        }
+        return table;
+    }
+
+    /**
+     * Deletes the file.
+     */
+    @Override
+    public void close() {
+        cachedChunk = null;
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private ByteBuffer chunk(int index) {
+        if (index != cachedChunkIndex) {
+            long position = chunkPositions.get(index);
+            ByteBuffer buffer = ByteBuffer.allocate((int) (chunkPositions.get(index + 1) - position));
+            try {
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position + buffer.position());
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of " + path);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            cachedChunkIndex = index;
+            cachedChunk = buffer;
+        }
+        return cachedChunk;
+    }
+
+    private static byte kindOf(int jdbcType) {
+        // Mirrors the primitive columns of ResultTable
+        return switch (jdbcType) {
+            case Types.INTEGER, Types.SMALLINT, Types.TINYINT -> KIND_INT;
+            case Types.BIGINT -> KIND_LONG;
+            case Types.DOUBLE, Types.FLOAT -> KIND_DOUBLE;
+            default -> KIND_VALUE;
+        };
+    }
+
+    private byte[] encodeColumn(ResultTable chunk, int column, int rows) {
+        byte[] nulls = new byte[(rows + 7) / 8];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            if (kinds[column] == KIND_VALUE) {
+                // Offsets of each value from the start of the value data, plus the end of the last one
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                DataOutputStream dataOut = new DataOutputStream(data);
+                int[] offsets = new int[rows + 1];
+                for (int row = 0; row < rows; row++) {
+                    Object value = chunk.getValue(row, column);
+                    if (value == null) {
+                        nulls[row / 8] |= (byte) (1 << (row % 8));
+                    } else {
+                        writeValue(dataOut, value);
+                    }
+                    offsets[row + 1] = data.size();
+                }
+                out.write(nulls);
+                for (int offset : offsets) {
+                    out.writeInt(offset);
+                }
+                data.writeTo(out);
+            } else {
+                for (int row = 0; row < rows; row++) {
+                    if (chunk.getValue(row, column) == null) {
+                        nulls[row / 8] |= (byte) (1 << (row % 8));
+                    }
+                }
+                out.write(nulls);
+                for (int row = 0; row < rows; row++) {
+                    Number value = (Number) chunk.getValue(row, column);
+                    switch (kinds[column]) {
+                        case KIND_INT -> out.writeInt(value == null ? 0 : value.intValue());
+                        case KIND_LONG -> out.writeLong(value == null ? 0 : value.longValue());
+                        default -> out.writeDouble(value == null ? 0 : value.doubleValue());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // In-memory streams do not fail
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        switch (value) {
+            case String text -> writeBytes(out, TAG_TEXT, text.getBytes(StandardCharsets.UTF_8));
+            case BigDecimal decimal -> writeBytes(out, TAG_DECIMAL, decimal.toString().getBytes(StandardCharsets.UTF_8));
+            case Boolean bool -> {
+                out.writeByte(TAG_BOOLEAN);
+                out.writeBoolean(bool);
+            }
+            case Date date -> {
+                out.writeByte(TAG_DATE);
+                out.writeLong(date.getTime());
+            }
+            case Time time -> {
+                out.writeByte(TAG_TIME);
+                out.writeLong(time.getTime());
+            }
+            case Timestamp timestamp -> {
+                out.writeByte(TAG_TIMESTAMP);
+                out.writeLong(timestamp.getTime());
+                out.writeInt(timestamp.getNanos());
+            }
+            case byte[] binary -> writeBytes(out, TAG_BYTES, binary);
+            case UUID uuid -> {
+                out.writeByte(TAG_UUID);
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+            }
+            case Integer number -> {
+                out.writeByte(TAG_INT);
+                out.writeInt(number);
+            }
+            case Long number -> {
+                out.writeByte(TAG_LONG);
+                out.writeLong(number);
+            }
+            case Float number -> {
+                out.writeByte(TAG_FLOAT);
+                out.writeFloat(number);
+            }
+            case Double number -> {
+                out.writeByte(TAG_DOUBLE);
+                out.writeDouble(number);
+            }
+            default -> writeBytes(out, TAG_TEXT, value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte tag, byte[] bytes) throws IOException {
+        out.writeByte(tag);
+        out.write(bytes);  // The length follows from the offset table
+    }
+
+    private static Object readValue(ByteBuffer chunk, int section, byte kind, int rows, int row) {
+        int nullsLength = (rows + 7) / 8;
+        if ((chunk.get(section + row / 8) & (1 << (row % 8))) != 0) {
+            return null;
+        }
+        int values = section + nullsLength;
+        return switch (kind) {
+            case KIND_INT -> chunk.getInt(values + row * Integer.BYTES);
+            case KIND_LONG -> chunk.getLong(values + row * Long.BYTES);
+            case KIND_DOUBLE -> chunk.getDouble(values + row * Double.BYTES);
+            default -> {
+                int data = values + (rows + 1) * Integer.BYTES;
+                int start = data + chunk.getInt(values + row * Integer.BYTES);
+                int end = data + chunk.getInt(values + (row + 1) * Integer.BYTES);
+                yield decodeValue(chunk, start, end);
+            }
+        };
+    }
+
+    private static Object decodeValue(ByteBuffer chunk, int start, int end) {
+        byte tag = chunk.get(start);
+        int position = start + 1;
+        return switch (tag) {
+            case TAG_TEXT -> text(chunk, position, end);
+            case TAG_DECIMAL -> new BigDecimal(text(chunk, position, end));
+            case TAG_BOOLEAN -> chunk.get(position) != 0;
+            case TAG_DATE -> new Date(chunk.getLong(position));
+            case TAG_TIME -> new Time(chunk.getLong(position));
+            case TAG_TIMESTAMP -> {
+                Timestamp timestamp = new Timestamp(chunk.getLong(position));
+                timestamp.setNanos(chunk.getInt(position + Long.BYTES));
+                yield timestamp;
+            }
+            case TAG_BYTES -> {
+                byte[] bytes = new byte[end - position];
+                chunk.get(position, bytes);
+                yield bytes;
+            }
+            case TAG_UUID -> new UUID(chunk.getLong(position), chunk.getLong(position + Long.BYTES));
+            case TAG_INT -> chunk.getInt(position);
+            case TAG_LONG -> chunk.getLong(position);
+            case TAG_FLOAT -> chunk.getFloat(position);
+            case TAG_DOUBLE -> chunk.getDouble(position);
+            default -> throw new IllegalStateException("Unknown value tag " + tag);
+        };
+    }
+
+    private static String text(ByteBuffer chunk, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        chunk.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import com.tk.learn.vaadindemo.metrics.DataPathMetrics;
+import com.tk.learn.vaadindemo.sqlhelper.QueryAdmissionController;
+import com.tk.learn.vaadindemo.sqlhelper.QueryLane;
+import com.tk.learn.vaadindemo.sqlhelper.QueryResultCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Writes grid edits back to their table and reads the edited rows again.
+ * <p>
+ * All edits of a save go in one transaction. Rows that change the same columns share one UPDATE statement and are
+ * sent as a single JDBC batch, so a bulk edit costs one round trip per distinct column set rather than one per row.
+ * Each UPDATE also requires the edited columns to still hold the values that were read; if another session changed
+ * or deleted the row in the meantime the whole save is rolled back.
+ */
+@Service
+public class TableEditService {
+
+    // Keys per refetch statement, well below the driver's bind parameter limit
+    private static final int REFETCH_CHUNK_SIZE = 500;
+
+    @Autowired
+    private ConnectionManager connectionManager;
+
+    @Autowired
+    private QueryAdmissionController admissionController;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private DataPathMetrics metrics;
+
+    /**
+     * Applies the edits in one transaction.
+     *
+     * @param dataSource the database of the table
+     * @param keyColumns primary key columns of the table, in key order
+     * @param sessionId  the HTTP session saving the edits
+     * @throws OptimisticLockingFailureException if one of the rows no longer matches what was read; nothing is written
+     */
+    public void applyEdits(String dataSource, String tableName, List<String> keyColumns, Collection<RowEdit> edits,
+                           String sessionId) {
+        if (keyColumns.isEmpty()) {
+            throw new IllegalArgumentException("Table " + tableName + " has no primary key, so its rows cannot be edited.");
+        }
+
+        // Rows that change the same columns share a statement and therefore a batch
+        Map<List<String>, List<RowEdit>> editsByColumns = new LinkedHashMap<>();
+        for (RowEdit edit : edits) {
+            editsByColumns.computeIfAbsent(List.copyOf(edit.values().keySet()), columns -> new ArrayList<>()).add(edit);
+        }
+
+        try (QueryAdmissionController.Permit permit = admissionController.acquire(QueryLane.INTERACTIVE, sessionId)) {
+            // The transaction timeout is applied to every statement JdbcTemplate runs inside it
+            JdbcTemplate jdbcTemplate = connectionManager.jdbcTemplate(dataSource);
+            TransactionTemplate transaction = new TransactionTemplate(connectionManager.transactionManager(dataSource));
+            transaction.setTimeout(permit.getTimeoutSeconds());
+            metrics.observe("grid.update", tableName, () -> transaction.execute(status -> {
+                editsByColumns.forEach((columns, group) ->
+                        updateBatch(jdbcTemplate, tableName, keyColumns, columns, group));
+                return null;
+            }));
+        }
+        queryResultCache.invalidateTable(dataSource, tableName);
+    }
+
+    /**
+     * Reads the rows with the given keys, e.g. to refresh just the rows that were edited.
+     *
+     * @return the rows that still exist, in no particular order
+     */
+    public List<ResultRow> fetchRows(String dataSource, String tableName, List<String> keyColumns,
+                                     Collection<List<Object>> keys, String sessionId) {
+        JdbcTemplate jdbcTemplate = connectionManager.jdbcTemplate(dataSource);
+        List<List<Object>> remaining = new ArrayList<>(keys);
+        List<ResultRow> rows = new ArrayList<>(remaining.size());
+        try (QueryAdmissionController.Permit permit = admissionController.acquire(QueryLane.INTERACTIVE, sessionId)) {
+            for (int from = 0; from < remaining.size(); from += REFETCH_CHUNK_SIZE) {
+                List<List<Object>> chunk = remaining.subList(from, Math.min(from + REFETCH_CHUNK_SIZE, remaining.size()));
+                String sql = "SELECT * FROM " + tableName + " WHERE " + keyInClause(keyColumns, chunk.size());
+                List<Object> params = chunk.stream().flatMap(List::stream).collect(Collectors.toList());
+                rows.addAll(metrics.observe("grid.refetch", tableName, () -> new CancellableQuery().query(jdbcTemplate,
+                        sql, params, new DynamicRowMapper(), permit.getTimeoutSeconds())));
+            }
+        }
+        return rows;
+    }
+
+    private static void updateBatch(JdbcTemplate jdbcTemplate, String tableName, List<String> keyColumns,
+                                    List<String> columns, List<RowEdit> group) {
+        String sql = buildUpdate(tableName, keyColumns, columns);
+        int[] counts = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                RowEdit edit = group.get(i);
+                int index = 1;
+                for (String column : columns) {
+                    // Edited values are text from the form; untyped, so the server casts them to the column type
+                    ps.setObject(index++, edit.values().get(column), Types.OTHER);
+                }
+                for (Object keyValue : edit.key()) {
+                    ps.setObject(index++, keyValue);
+                }
+                for (String column : columns) {
+                    ps.setObject(index++, edit.original().get(column));
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return group.size();
+            }
+        });
+
+        for (int i = 0; i < counts.length; i++) {
+            // SUCCESS_NO_INFO (-2) means the driver did not report a count; only an explicit 0 is a miss
+            if (counts[i] == 0) {
+                throw new OptimisticLockingFailureException("Row " + group.get(i).key() + " of " + tableName
+                        + " was changed or deleted by someone else. Discard your changes and edit it again.");
+            }
+        }
+    }
+
+    // UPDATE t SET a = ?, b = ? WHERE k1 = ? AND k2 = ? AND a IS NOT DISTINCT FROM ? AND b IS NOT DISTINCT FROM ?
+    private static String buildUpdate(String tableName, List<String> keyColumns, List<String> columns) {
+        StringBuilder sql = new StringBuilder("UPDATE " + tableName + " SET ");
+        sql.append(columns.stream().map(column -> column + " = ?").collect(Collectors.joining(", ")));
+        sql.append(" WHERE ");
+        sql.append(keyColumns.stream().map(column -> column + " = ?").collect(Collectors.joining(" AND ")));
+        for (String column : columns) {
+            // IS NOT DISTINCT FROM so that a NULL that is still NULL counts as unchanged
+            sql.append(" AND ").append(column).append(" IS NOT DISTINCT FROM ?");
+        }
+        return sql.toString();
+    }
+
+    // (k1, k2) IN ((?, ?), (?, ?))
+    private static String keyInClause(List<String> keyColumns, int keyCount) {
+        String tuple = keyColumns.stream().map(column -> "?").collect(Collectors.joining(", ", "(", ")"));
+        return "(" + String.join(", ", keyColumns) + ") IN ("
+                + String.join(", ", Collections.nCopies(keyCount, tuple)) + ")";
+    }
+}
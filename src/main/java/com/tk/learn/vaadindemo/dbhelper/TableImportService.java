@@ -0,0 +1,250 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import com.tk.learn.vaadindemo.metrics.DataPathMetrics;
+import com.tk.learn.vaadindemo.sqlhelper.QueryAdmissionController;
+import com.tk.learn.vaadindemo.sqlhelper.QueryLane;
+import com.tk.learn.vaadindemo.sqlhelper.QueryResultCache;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Loads CSV files into a table.
+ * <p>
+ * The file must start with a header row naming the target columns. On PostgreSQL the rest of the file is streamed
+ * unchanged into {@code COPY ... FROM STDIN}, so the server parses each value by its column type. Other databases
+ * get multi-row INSERT statements, with the values converted by the column types from the metadata cache. Either
+ * way the file is read as a stream and runs in a single transaction: it is imported completely or not at all.
+ */
+@Service
+public class TableImportService {
+
+    // Rows per multi-row INSERT, capped so a statement stays well below the bind parameter limit
+    private static final int INSERT_ROWS = 500;
+    private static final int MAX_INSERT_PARAMETERS = 30_000;
+
+    private static final long PROGRESS_INTERVAL_BYTES = 1024 * 1024;
+
+    @Autowired
+    private ConnectionManager connectionManager;
+
+    @Autowired
+    private QueryAdmissionController admissionController;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private DataPathMetrics metrics;
+
+    /**
+     * Imports a CSV file into the table.
+     *
+     * @param dataSource  the database of the table
+     * @param columnTypes column name to {@link Types} code for the table
+     * @param csv         the file, read to the end but not closed
+     * @param progress    called now and then with the number of bytes read so far
+     * @param sessionId   the HTTP session importing the file
+     * @return the number of rows imported
+     */
+    public long importCsv(String dataSource, String tableName, Map<String, Integer> columnTypes, InputStream csv,
+                          LongConsumer progress, String sessionId) {
+        try (QueryAdmissionController.Permit permit = admissionController.acquire(QueryLane.BULK, sessionId)) {
+            InputStream in = new ProgressInputStream(csv, progress);
+            List<String> columns = readHeader(in, columnTypes);
+
+            JdbcTemplate jdbcTemplate = connectionManager.jdbcTemplate(dataSource);
+            TransactionTemplate transaction = new TransactionTemplate(connectionManager.transactionManager(dataSource));
+            transaction.setTimeout(permit.getTimeoutSeconds());
+            Long rows = metrics.observe("grid.import", tableName, () -> transaction.execute(status ->
+                    jdbcTemplate.execute((ConnectionCallback<Long>) connection -> connection.isWrapperFor(PGConnection.class)
+                            ? copyIn(connection, tableName, columns, in)
+                            : insertBatches(connection, tableName, columns, columnTypes, in))));
+            queryResultCache.invalidateTable(dataSource, tableName);
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long copyIn(Connection connection, String tableName, List<String> columns, InputStream in)
+            throws SQLException {
+        String sql = "COPY " + tableName + " (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)";
+        try {
+            return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long insertBatches(Connection connection, String tableName, List<String> columns,
+                                      Map<String, Integer> columnTypes, InputStream in) throws SQLException {
+        int rowsPerStatement = Math.max(1, Math.min(INSERT_ROWS, MAX_INSERT_PARAMETERS / columns.size()));
+        int[] types = columns.stream().mapToInt(columnTypes::get).toArray();
+        CsvRecordReader reader = new CsvRecordReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+        long imported = 0;
+        List<List<String>> pending = new ArrayList<>(rowsPerStatement);
+        try (PreparedStatement fullInsert = connection.prepareStatement(buildInsert(tableName, columns, rowsPerStatement))) {
+            List<String> record;
+            while ((record = reader.next()) != null) {
+                if (record.size() != columns.size()) {
+                    throw new IllegalArgumentException("Record " + (reader.getRecordNumber() + 1) + " has "
+                            + record.size() + " fields, expected " + columns.size() + ".");
+                }
+                pending.add(record);
+                if (pending.size() == rowsPerStatement) {
+                    imported += insert(fullInsert, pending, types);
+                    pending.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (!pending.isEmpty()) {
+            try (PreparedStatement lastInsert = connection.prepareStatement(buildInsert(tableName, columns, pending.size()))) {
+                imported += insert(lastInsert, pending, types);
+            }
+        }
+        return imported;
+    }
+
+    private static int insert(PreparedStatement ps, List<List<String>> records, int[] types) throws SQLException {
+        int index = 1;
+        for (List<String> record : records) {
+            for (int i = 0; i < types.length; i++) {
+                Object value = convert(record.get(i), types[i]);
+                if (value == null) {
+                    ps.setNull(index++, types[i]);
+                } else {
+                    ps.setObject(index++, value);
+                }
+            }
+        }
+        return ps.executeUpdate();
+    }
+
+    // Parses the text of a CSV field into the Java type the driver expects for the column
+    private static Object convert(String value, int type) {
+        if (value == null) {
+            return null;
+        }
+        return switch (type) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER -> Integer.valueOf(value.trim());
+            case Types.BIGINT -> Long.valueOf(value.trim());
+            case Types.REAL, Types.FLOAT, Types.DOUBLE -> Double.valueOf(value.trim());
+            case Types.NUMERIC, Types.DECIMAL -> new BigDecimal(value.trim());
+            case Types.BOOLEAN, Types.BIT -> parseBoolean(value.trim());
+            case Types.DATE -> Date.valueOf(value.trim());
+            case Types.TIME -> Time.valueOf(value.trim());
+            case Types.TIMESTAMP -> Timestamp.valueOf(value.trim());
+            default -> value;
+        };
+    }
+
+    private static Boolean parseBoolean(String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "t", "true", "y", "yes", "on", "1" -> true;
+            case "f", "false", "n", "no", "off", "0" -> false;
+            default -> throw new IllegalArgumentException("Not a boolean: " + value);
+        };
+    }
+
+    // INSERT INTO t (a, b) VALUES (?, ?), (?, ?)
+    private static String buildInsert(String tableName, List<String> columns, int rows) {
+        String tuple = columns.stream().map(column -> "?").collect(Collectors.joining(", ", "(", ")"));
+        return "INSERT INTO " + tableName + " (" + String.join(", ", columns) + ") VALUES "
+                + String.join(", ", Collections.nCopies(rows, tuple));
+    }
+
+    /**
+     * Reads the header line byte by byte, so that the stream is left exactly at the first data row for COPY.
+     */
+    private static List<String> readHeader(InputStream in, Map<String, Integer> columnTypes) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        String header = line.toString(StandardCharsets.UTF_8);
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);  // Byte order mark written by spreadsheet programs
+        }
+
+        List<String> columns = new CsvRecordReader(new StringReader(header)).next();
+        if (columns == null || columns.contains(null)) {
+            throw new IllegalArgumentException("The file must start with a header row naming the columns.");
+        }
+        List<String> unknown = columns.stream().map(String::trim).filter(column -> !columnTypes.containsKey(column)).toList();
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("The table has no column(s) " + String.join(", ", unknown) + ".");
+        }
+        return columns.stream().map(String::trim).toList();
+    }
+
+    private static class ProgressInputStream extends FilterInputStream {
+
+        private final LongConsumer progress;
+        private long bytesRead;
+        private long nextReport = PROGRESS_INTERVAL_BYTES;
+
+        ProgressInputStream(InputStream in, LongConsumer progress) {
+            super(in);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                advance(count);
+            }
+            return count;
+        }
+
+        private void advance(long count) {
+            bytesRead += count;
+            if (bytesRead >= nextReport) {
+                nextReport = bytesRead + PROGRESS_INTERVAL_BYTES;
+                progress.accept(bytesRead);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Catalog information for one table as cached by {@link SchemaMetadataService}.
+ *
+ * @param tableName             the table name
+ * @param columnTypes           column name to {@link java.sql.Types} code, in ordinal (SELECT *) order
+ * @param primaryKey            primary key columns in key order, empty if the table has no primary key
+ * @param indexedColumns        columns that lead at least one B-tree index
+ * @param trigramIndexedColumns columns that lead a GIN or GiST trigram index
+ */
+public record TableMetadata(String tableName, Map<String, Integer> columnTypes, List<String> primaryKey,
+                            Set<String> indexedColumns, Set<String> trigramIndexedColumns) {
+}
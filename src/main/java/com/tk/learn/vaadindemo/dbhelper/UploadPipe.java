@@ -0,0 +1,145 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands an upload to an import running on another thread through a small bounded queue of chunks, so the upload
+ * request is throttled to the speed of the database and the file is never held in memory as a whole.
+ * <p>
+ * The upload side closing its stream does not end the input: the owner decides with {@link #finish()} or
+ * {@link #abort()} once it knows whether the upload succeeded, so an interrupted upload can never be mistaken for
+ * a complete, shorter file.
+ */
+class UploadPipe {
+
+    private static final int MAX_QUEUED_CHUNKS = 16;
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(MAX_QUEUED_CHUNKS);
+    private volatile boolean aborted;
+    private volatile boolean readerClosed;
+
+    /**
+     * @return the stream the upload writes to
+     */
+    OutputStream uploadStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (len > 0) {
+                    put(Arrays.copyOfRange(b, off, off + len));
+                }
+            }
+
+            @Override
+            public void close() {
+                // The end of the input is signalled by finish() or abort()
+            }
+        };
+    }
+
+    /**
+     * @return the stream the import reads from; it fails with an IOException if the upload is aborted
+     */
+    InputStream importStream() {
+        return new InputStream() {
+            private byte[] current = new byte[0];
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                while (position == current.length) {
+                    if (current == END) {
+                        return -1;
+                    }
+                    current = take();
+                    position = 0;
+                }
+                int count = Math.min(len, current.length - position);
+                System.arraycopy(current, position, b, off, count);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+                closeReader();
+            }
+        };
+    }
+
+    /**
+     * The import is done with the input, successfully or not; further upload writes fail instead of blocking.
+     */
+    void closeReader() {
+        readerClosed = true;
+        chunks.clear();
+    }
+
+    /**
+     * The upload completed; the import sees the end of the input after the remaining chunks.
+     */
+    void finish() throws InterruptedIOException {
+        if (!readerClosed) {
+            put(END);
+        }
+    }
+
+    /**
+     * The upload failed; the import fails on its next read instead of importing a truncated file.
+     */
+    void abort() {
+        aborted = true;
+        chunks.clear();
+        chunks.offer(END);
+    }
+
+    private void put(byte[] chunk) throws InterruptedIOException {
+        try {
+            // Poll so that an upload whose import has already failed does not block forever
+            while (!readerClosed) {
+                if (chunks.offer(chunk, 1, TimeUnit.SECONDS)) {
+                    return;
+                }
+            }
+            throw new InterruptedIOException("The import stopped reading the upload");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted");
+        }
+    }
+
+    private byte[] take() throws IOException {
+        try {
+            byte[] chunk = chunks.take();
+            if (aborted) {
+                throw new IOException("The upload was aborted");
+            }
+            return chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.tk.learn.vaadindemo.export;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Apache Arrow IPC stream. Rows are collected into column vectors and sent as a ZSTD-compressed record batch every
+ * {@value #BATCH_ROWS} rows, so memory use is bounded by one batch however large the result is.
+ * <p>
+ * Integers, floating point numbers, booleans, dates and timestamps keep native Arrow types; every other column is
+ * written as UTF-8 text in the database's own text form.
+ */
+class ArrowRowWriter implements RowWriter {
+
+    private static final int BATCH_ROWS = 8192;
+
+    // Off-heap limit per export; a batch of very wide text rows fails instead of exhausting native memory
+    private static final long MAX_ALLOCATION = 256L * 1024 * 1024;
+
+    private enum Kind { INT32, INT64, FLOAT32, FLOAT64, BOOL, DATE, TIMESTAMP, TIMESTAMP_TZ, TEXT }
+
+    private final BufferAllocator allocator;
+    private final VectorSchemaRoot root;
+    private final ArrowStreamWriter writer;
+    private final Kind[] kinds;
+    private final FieldVector[] vectors;
+    private int batchRows;
+
+    ArrowRowWriter(OutputStream out, ResultSetMetaData metaData) throws SQLException, IOException {
+        int columnCount = metaData.getColumnCount();
+        this.kinds = new Kind[columnCount];
+        List<Field> fields = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            kinds[i] = kindOf(metaData.getColumnType(i + 1), metaData.getColumnTypeName(i + 1));
+            fields.add(new Field(metaData.getColumnLabel(i + 1), FieldType.nullable(arrowType(kinds[i])), null));
+        }
+
+        this.allocator = new RootAllocator(MAX_ALLOCATION);
+        this.root = VectorSchemaRoot.create(new Schema(fields), allocator);
+        this.vectors = root.getFieldVectors().toArray(new FieldVector[0]);
+        this.writer = new ArrowStreamWriter(root, null, Channels.newChannel(out), IpcOption.DEFAULT,
+                CommonsCompressionFactory.INSTANCE, CompressionUtil.CodecType.ZSTD);
+        // The schema message goes out before the first batch, so the download starts right away
+        writer.start();
+        out.flush();
+        root.allocateNew();
+    }
+
+    @Override
+    public void writeRow(ResultSet rs) throws SQLException, IOException {
+        int row = batchRows;
+        for (int i = 0; i < kinds.length; i++) {
+            int column = i + 1;
+            switch (kinds[i]) {
+                case INT32 -> {
+                    int value = rs.getInt(column);
+                    if (rs.wasNull()) {
+                        ((IntVector) vectors[i]).setNull(row);
+                    } else {
+                        ((IntVector) vectors[i]).setSafe(row, value);
+                    }
+                }
+                case INT64 -> {
+                    long value = rs.getLong(column);
+                    if (rs.wasNull()) {
+                        ((BigIntVector) vectors[i]).setNull(row);
+                    } else {
+                        ((BigIntVector) vectors[i]).setSafe(row, value);
+                    }
+                }
+                case FLOAT32 -> {
+                    float value = rs.getFloat(column);
+                    if (rs.wasNull()) {
+                        ((Float4Vector) vectors[i]).setNull(row);
+                    } else {
+                        ((Float4Vector) vectors[i]).setSafe(row, value);
+                    }
+                }
+                case FLOAT64 -> {
+                    double value = rs.getDouble(column);
+                    if (rs.wasNull()) {
+                        ((Float8Vector) vectors[i]).setNull(row);
+                    } else {
+                        ((Float8Vector) vectors[i]).setSafe(row, value);
+                    }
+                }
+                case BOOL -> {
+                    boolean value = rs.getBoolean(column);
+                    if (rs.wasNull()) {
+                        ((BitVector) vectors[i]).setNull(row);
+                    } else {
+                        ((BitVector) vectors[i]).setSafe(row, value ? 1 : 0);
+                    }
+                }
+                case DATE -> {
+                    Date value = rs.getDate(column);
+                    if (value == null) {
+                        ((DateDayVector) vectors[i]).setNull(row);
+                    } else {
+                        ((DateDayVector) vectors[i]).setSafe(row, (int) value.toLocalDate().toEpochDay());
+                    }
+                }
+                case TIMESTAMP -> {
+                    LocalDateTime value = rs.getObject(column, LocalDateTime.class);
+                    if (value == null) {
+                        ((TimeStampMicroVector) vectors[i]).setNull(row);
+                    } else {
+                        ((TimeStampMicroVector) vectors[i]).setSafe(row, epochMicros(value.toInstant(ZoneOffset.UTC)));
+                    }
+                }
+                case TIMESTAMP_TZ -> {
+                    OffsetDateTime value = rs.getObject(column, OffsetDateTime.class);
+                    if (value == null) {
+                        ((TimeStampMicroTZVector) vectors[i]).setNull(row);
+                    } else {
+                        ((TimeStampMicroTZVector) vectors[i]).setSafe(row, epochMicros(value.toInstant()));
+                    }
+                }
+                case TEXT -> {
+                    String value = rs.getString(column);
+                    if (value == null) {
+                        ((VarCharVector) vectors[i]).setNull(row);
+                    } else {
+                        ((VarCharVector) vectors[i]).setSafe(row, value.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        }
+
+        batchRows++;
+        if (batchRows == BATCH_ROWS) {
+            writeBatch();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (batchRows > 0) {
+            writeBatch();
+        }
+        writer.end();
+    }
+
+    @Override
+    public void close() {
+        root.close();
+        allocator.close();
+    }
+
+    private void writeBatch() throws IOException {
+        root.setRowCount(batchRows);
+        writer.writeBatch();
+        // Reuse the vectors for the next batch; allocateNew releases the buffers that were just written
+        root.allocateNew();
+        batchRows = 0;
+    }
+
+    private static Kind kindOf(int jdbcType, String typeName) {
+        return switch (jdbcType) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER -> Kind.INT32;
+            case Types.BIGINT -> Kind.INT64;
+            case Types.REAL -> Kind.FLOAT32;
+            case Types.FLOAT, Types.DOUBLE -> Kind.FLOAT64;
+            case Types.BOOLEAN, Types.BIT -> Kind.BOOL;
+            case Types.DATE -> Kind.DATE;
+            // PostgreSQL reports both timestamp flavours as TIMESTAMP; only the type name tells them apart
+            case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE ->
+                    "timestamptz".equalsIgnoreCase(typeName) || jdbcType == Types.TIMESTAMP_WITH_TIMEZONE
+                            ? Kind.TIMESTAMP_TZ : Kind.TIMESTAMP;
+            default -> Kind.TEXT;
+        };
+    }
+
+    private static ArrowType arrowType(Kind kind) {
+        return switch (kind) {
+            case INT32 -> new ArrowType.Int(32, true);
+            case INT64 -> new ArrowType.Int(64, true);
+            case FLOAT32 -> new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+            case FLOAT64 -> new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case BOOL -> ArrowType.Bool.INSTANCE;
+            case DATE -> new ArrowType.Date(DateUnit.DAY);
+            case TIMESTAMP -> new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+            case TIMESTAMP_TZ -> new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC");
+            case TEXT -> ArrowType.Utf8.INSTANCE;
+        };
+    }
+
+    private static long epochMicros(Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+}
@@ -0,0 +1,63 @@
+package com.tk.learn.vaadindemo.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * The download formats offered for grids and query results.
+ */
+public enum ExportFormat {
+
+    CSV("CSV", "csv", "text/csv") {
+        @Override
+        RowWriter open(OutputStream out, ResultSetMetaData metaData) throws SQLException, IOException {
+            return new CsvRowWriter(out, metaData);
+        }
+    },
+
+    NDJSON("NDJSON", "ndjson", "application/x-ndjson") {
+        @Override
+        RowWriter open(OutputStream out, ResultSetMetaData metaData) throws SQLException, IOException {
+            return new NdjsonRowWriter(out, metaData);
+        }
+    },
+
+    /**
+     * Apache Arrow IPC stream with ZSTD-compressed record batches.
+     */
+    ARROW("Arrow", "arrows", "application/vnd.apache.arrow.stream") {
+        @Override
+        RowWriter open(OutputStream out, ResultSetMetaData metaData) throws SQLException, IOException {
+            return new ArrowRowWriter(out, metaData);
+        }
+    };
+
+    private final String label;
+    private final String extension;
+    private final String contentType;
+
+    ExportFormat(String label, String extension, String contentType) {
+        this.label = label;
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Starts writing a result with the given columns; the header, if the format has one, is written straight away.
+     */
+    abstract RowWriter open(OutputStream out, ResultSetMetaData metaData) throws SQLException, IOException;
+}
@@ -0,0 +1,58 @@
+package com.tk.learn.vaadindemo.export;
+
+import com.vaadin.flow.component.html.Anchor;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.server.StreamResource;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Download links, one per {@link ExportFormat}, for whatever query the owning view currently shows.
+ * <p>
+ * The export runs in the download request itself, which Vaadin serves without holding the UI session lock, so a
+ * large export streams in the background while the view stays usable.
+ */
+public class ExportLinks extends HorizontalLayout {
+
+    private final ResultExportService exportService;
+    private final Supplier<ExportQuery> currentQuery;
+    private final Map<ExportFormat, Anchor> links = new EnumMap<>(ExportFormat.class);
+
+    /**
+     * @param currentQuery called from the download request, not the UI thread, to get the query to export; may
+     *                     return null when there is nothing to export
+     */
+    public ExportLinks(ResultExportService exportService, Supplier<ExportQuery> currentQuery) {
+        this.exportService = exportService;
+        this.currentQuery = currentQuery;
+        for (ExportFormat format : ExportFormat.values()) {
+            Anchor link = new Anchor();
+            link.setText("Export " + format.getLabel());
+            link.getElement().setAttribute("download", true);
+            links.put(format, link);
+            add(link);
+        }
+        setFileName("export");
+    }
+
+    /**
+     * Names the downloaded files, e.g. after the exported table.
+     */
+    public void setFileName(String baseName) {
+        links.forEach((format, link) -> link.setHref(resource(baseName + "." + format.getExtension(), format)));
+    }
+
+    private StreamResource resource(String fileName, ExportFormat format) {
+        StreamResource resource = new StreamResource(fileName, (out, session) -> {
+            ExportQuery query = currentQuery.get();
+            if (query != null) {
+                exportService.export(query, format, out, session.getSession().getId());
+            }
+        });
+        resource.setContentType(format.getContentType());
+        resource.setCacheTime(0);
+        return resource;
+    }
+}
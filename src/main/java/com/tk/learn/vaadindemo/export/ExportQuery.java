@@ -0,0 +1,14 @@
+package com.tk.learn.vaadindemo.export;
+
+import java.util.List;
+
+/**
+ * A query whose complete result is to be streamed to a download.
+ *
+ * @param dataSource the database to run it on
+ * @param sql        the SELECT to run
+ * @param params     positional parameters of the statement
+ * @param source     the table being exported, or a generic name for ad-hoc SQL; used for the file name and metrics
+ */
+public record ExportQuery(String dataSource, String sql, List<Object> params, String source) {
+}
@@ -0,0 +1,101 @@
+package com.tk.learn.vaadindemo.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.regex.Pattern;
+
+/**
+ * Newline-delimited JSON: one object per row keyed by column label. Numbers and booleans keep their JSON types;
+ * everything else is written as a string in the database's text form.
+ */
+class NdjsonRowWriter implements RowWriter {
+
+    // A number literal as JSON defines it: no leading zeros, no leading '+', no bare '.', no NaN or Infinity
+    private static final Pattern JSON_NUMBER = Pattern.compile("-?(?:0|[1-9][0-9]*)(?:\\.[0-9]+)?(?:[eE][+-]?[0-9]+)?");
+
+    private final Writer writer;
+    private final String[] keys;
+    private final int[] types;
+
+    NdjsonRowWriter(OutputStream out, ResultSetMetaData metaData) throws SQLException, IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITER_BUFFER_SIZE);
+        int columnCount = metaData.getColumnCount();
+        this.keys = new String[columnCount];
+        this.types = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            // Keys are escaped once here rather than for every row
+            keys[i] = quoted(metaData.getColumnLabel(i + 1)) + ':';
+            types[i] = metaData.getColumnType(i + 1);
+        }
+    }
+
+    @Override
+    public void writeRow(ResultSet rs) throws SQLException, IOException {
+        writer.write('{');
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(keys[i]);
+            String value = rs.getString(i + 1);
+            if (value == null) {
+                writer.write("null");
+            } else if (isNumeric(types[i]) && isJsonNumber(value)) {
+                writer.write(value);
+            } else if (types[i] == Types.BOOLEAN || types[i] == Types.BIT) {
+                writer.write(rs.getBoolean(i + 1) ? "true" : "false");
+            } else {
+                writer.write(quoted(value));
+            }
+        }
+        writer.write("}\n");
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.flush();
+    }
+
+    private static boolean isNumeric(int type) {
+        return switch (type) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT, Types.REAL, Types.FLOAT, Types.DOUBLE,
+                 Types.NUMERIC, Types.DECIMAL -> true;
+            default -> false;
+        };
+    }
+
+    // NaN and (-)Infinity are valid numeric values in the database but not in JSON, so they are written as strings
+    private static boolean isJsonNumber(String value) {
+        return JSON_NUMBER.matcher(value).matches();
+    }
+
+    private static String quoted(String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+}
@@ -0,0 +1,84 @@
+package com.tk.learn.vaadindemo.export;
+
+import com.tk.learn.vaadindemo.dbhelper.ConnectionManager;
+import com.tk.learn.vaadindemo.metrics.DataPathMetrics;
+import com.tk.learn.vaadindemo.sqlhelper.QueryAdmissionController;
+import com.tk.learn.vaadindemo.sqlhelper.QueryLane;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Streams complete query results to a download.
+ * <p>
+ * The query runs in a read-only transaction with a fetch size, which makes the PostgreSQL driver read through a
+ * forward-only server-side cursor instead of loading the whole result. Each row is encoded and written to the output
+ * as soon as it is read, so memory use stays flat and the client receives the first bytes immediately. Exports run
+ * in their own {@link QueryLane#BULK admission lane} so a long download does not hold up grid or SQL client
+ * queries.
+ */
+@Service
+public class ResultExportService {
+
+    @Autowired
+    private ConnectionManager connectionManager;
+
+    @Autowired
+    private QueryAdmissionController admissionController;
+
+    @Autowired
+    private DataPathMetrics metrics;
+
+    @Value("${db.client.fetch-size:500}")
+    private int fetchSize;
+
+    /**
+     * Runs the query and writes every row to the stream in the given format.
+     *
+     * @param sessionId the HTTP session downloading the export
+     * @return the number of rows written
+     * @throws UncheckedIOException if writing to the stream fails, e.g. because the download was aborted
+     */
+    public long export(ExportQuery query, ExportFormat format, OutputStream out, String sessionId) {
+        try (QueryAdmissionController.Permit permit = admissionController.acquire(QueryLane.BULK, sessionId)) {
+            // Read-only also keeps ad-hoc SQL from writing anything through the export path
+            TransactionTemplate transaction = new TransactionTemplate(
+                    connectionManager.transactionManager(query.dataSource()));
+            transaction.setReadOnly(true);
+            transaction.setTimeout(permit.getTimeoutSeconds());
+            return metrics.observe("export." + format.getExtension(), query.source(), () -> transaction.execute(status ->
+                    connectionManager.jdbcTemplate(query.dataSource()).query(connection -> {
+                        PreparedStatement ps = connection.prepareStatement(query.sql(), ResultSet.TYPE_FORWARD_ONLY,
+                                ResultSet.CONCUR_READ_ONLY);
+                        ps.setFetchSize(fetchSize);
+                        for (int i = 0; i < query.params().size(); i++) {
+                            ps.setObject(i + 1, query.params().get(i));
+                        }
+                        return ps;
+                    }, (ResultSetExtractor<Long>) rs -> writeRows(rs, format, out))));
+        }
+    }
+
+    private static long writeRows(ResultSet rs, ExportFormat format, OutputStream out) throws SQLException {
+        try (RowWriter writer = format.open(out, rs.getMetaData())) {
+            long rows = 0;
+            while (rs.next()) {
+                writer.writeRow(rs);
+                rows++;
+            }
+            writer.finish();
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.tk.learn.vaadindemo.export;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Encodes result rows into an export format as they are read, one row at a time, so nothing but the current
+ * output batch is held in memory.
+ */
+interface RowWriter extends AutoCloseable {
+
+    /**
+     * Characters buffered by the text formats before they are handed to the response.
+     */
+    int WRITER_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Writes the current row of the result set.
+     */
+    void writeRow(ResultSet rs) throws SQLException, IOException;
+
+    /**
+     * Writes whatever the format needs after the last row and flushes it. Not called when the export fails.
+     */
+    void finish() throws IOException;
+
+    /**
+     * Releases the writer's buffers; does not close the underlying stream.
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,107 @@
+package com.tk.learn.vaadindemo.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Meters and spans for the grid and SQL client data paths.
+ * <p>
+ * Each query runs inside a {@code db.query} observation tagged with the operation and the table. That produces a
+ * latency timer (with a percentile histogram, see {@code application.yaml}) and, through the Brave bridge, a trace
+ * span. The counters next to it track how much data the query materialized on the heap and how its time split
+ * between waiting for the database and mapping rows.
+ */
+@Component
+public class DataPathMetrics {
+
+    /**
+     * Table tag for statements that are not tied to one table, such as ad-hoc SQL.
+     */
+    public static final String NO_TABLE = "none";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    /**
+     * Runs the query inside a {@code db.query} observation.
+     *
+     * @param operation what the query does, e.g. {@code grid.page} or {@code sql.select}
+     * @param table     the table it reads or writes, or {@link #NO_TABLE}
+     */
+    public <T> T observe(String operation, String table, Supplier<T> query) {
+        return Observation.createNotStarted("db.query", observationRegistry)
+                .contextualName(operation + " " + table)
+                .lowCardinalityKeyValue("operation", operation)
+                .lowCardinalityKeyValue("table", table)
+                .observe(query);
+    }
+
+    /**
+     * Records the rows and approximate bytes a query put on the heap, and how long mapping them took out of the
+     * query's total time. The remainder is attributed to waiting on the database.
+     */
+    public void recordMaterialized(String operation, String table, long rows, long bytes, long mappingNanos, long totalNanos) {
+        Counter.builder("db.rows.materialized")
+                .tag("operation", operation)
+                .tag("table", table)
+                .register(meterRegistry)
+                .increment(rows);
+        DistributionSummary.builder("db.bytes.materialized")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("table", table)
+                .register(meterRegistry)
+                .record(bytes);
+        recordPhase(operation, "mapping", mappingNanos);
+        recordPhase(operation, "database", Math.max(0, totalNanos - mappingNanos));
+    }
+
+    /**
+     * Records how long a query waited for an admission permit, i.e. for its turn at the connection pool.
+     */
+    public void recordAdmissionWait(String lane, long nanos, boolean admitted) {
+        Timer.builder("db.admission.wait")
+                .tag("lane", lane)
+                .tag("outcome", admitted ? "admitted" : "rejected")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Classifies ad-hoc SQL by its leading keyword so the operation tag stays low-cardinality.
+     */
+    public static String sqlOperation(String sql) {
+        String trimmed = sql.stripLeading();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        String keyword = trimmed.substring(0, end).toLowerCase(Locale.ROOT);
+        return switch (keyword) {
+            case "select", "with", "values", "table", "insert", "update", "delete", "merge",
+                 "create", "alter", "drop", "truncate", "explain", "copy" -> "sql." + keyword;
+            default -> "sql.other";
+        };
+    }
+
+    private void recordPhase(String operation, String phase, long nanos) {
+        Timer.builder("db.query.phase")
+                .tag("operation", operation)
+                .tag("phase", phase)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
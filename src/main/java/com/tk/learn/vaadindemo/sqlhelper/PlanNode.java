@@ -0,0 +1,45 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import java.util.List;
+
+/**
+ * One node of a PostgreSQL execution plan, as read from {@code EXPLAIN (FORMAT JSON)}.
+ * <p>
+ * The {@code actual} values and buffer counts are only present when the plan was taken with ANALYZE and BUFFERS.
+ * As in PostgreSQL's output, row counts are per loop; times are totals over all loops.
+ *
+ * @param nodeType          e.g. "Seq Scan" or "Hash Join"
+ * @param detail            relation, index or join type the node works on; empty if none
+ * @param totalCost         planner cost of the node including its children
+ * @param planRows          rows the planner expected per loop
+ * @param actualRows        rows actually returned per loop, or null without ANALYZE
+ * @param loops             number of times the node was executed, 1 without ANALYZE
+ * @param totalTimeMillis   time spent in the node and its children over all loops, or null without ANALYZE
+ * @param selfTimeMillis    time spent in the node itself, excluding its children, or null without ANALYZE
+ * @param sharedHitBlocks   shared buffer blocks found in the cache, or null without BUFFERS
+ * @param sharedReadBlocks  shared buffer blocks read from disk, or null without BUFFERS
+ * @param children          the node's inputs
+ */
+public record PlanNode(String nodeType, String detail, double totalCost, long planRows, Long actualRows, long loops,
+                       Double totalTimeMillis, Double selfTimeMillis, Long sharedHitBlocks, Long sharedReadBlocks,
+                       List<PlanNode> children) {
+
+    /**
+     * @return how far the row estimate was off, as a factor of at least 1, or null without ANALYZE
+     */
+    public Double misestimate() {
+        if (actualRows == null) {
+            return null;
+        }
+        double expected = Math.max(planRows, 1);
+        double actual = Math.max(actualRows, 1);
+        return Math.max(expected, actual) / Math.min(expected, actual);
+    }
+
+    /**
+     * @return the node type followed by what it works on, e.g. "Index Scan on orders using orders_pkey"
+     */
+    public String label() {
+        return detail.isEmpty() ? nodeType : nodeType + " " + detail;
+    }
+}
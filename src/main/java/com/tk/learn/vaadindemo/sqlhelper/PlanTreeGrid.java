@@ -0,0 +1,43 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import com.vaadin.flow.component.treegrid.TreeGrid;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Shows a {@link QueryPlan} as an expandable tree, one row per plan node, with the planner's row estimate next to
+ * the actual rows, per-node timing and buffer usage where the plan has them.
+ */
+public class PlanTreeGrid extends TreeGrid<PlanNode> {
+
+    public PlanTreeGrid() {
+        addHierarchyColumn(PlanNode::label).setHeader("Node").setFlexGrow(4).setResizable(true);
+        addColumn(node -> format(node.totalCost())).setHeader("Cost");
+        addColumn(PlanNode::planRows).setHeader("Rows (est.)");
+        addColumn(PlanNode::actualRows).setHeader("Rows (actual)");
+        // A large factor points at stale statistics or a misjudged predicate
+        addColumn(node -> node.misestimate() == null ? "" : "x" + format(node.misestimate())).setHeader("Misestimate");
+        addColumn(PlanNode::loops).setHeader("Loops");
+        addColumn(node -> format(node.totalTimeMillis())).setHeader("Time (ms)");
+        addColumn(node -> format(node.selfTimeMillis())).setHeader("Self (ms)");
+        addColumn(PlanNode::sharedHitBlocks).setHeader("Buffers hit");
+        addColumn(PlanNode::sharedReadBlocks).setHeader("Buffers read");
+    }
+
+    /**
+     * Shows the plan fully expanded, or nothing for null.
+     */
+    public void setPlan(QueryPlan plan) {
+        if (plan == null) {
+            setItems(List.of(), PlanNode::children);
+            return;
+        }
+        setItems(List.of(plan.root()), PlanNode::children);
+        expandRecursively(List.of(plan.root()), Integer.MAX_VALUE);
+    }
+
+    private static String format(Double value) {
+        return value == null ? "" : String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -0,0 +1,231 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import com.tk.learn.vaadindemo.metrics.DataPathMetrics;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulkhead in front of the connection pool.
+ * <p>
+ * Every query has to take a permit from its {@link QueryLane} before it may use a connection. Each lane has its own
+ * global concurrency limit, a per-session limit and a bounded wait queue: a query that finds the lane full waits
+ * at most {@code db.admission.queue-wait} for a permit, and if the queue itself is full, or the session is already
+ * at its limit, it is rejected straight away with a {@link QueryRejectedException}. Lanes also carry the statement
+ * timeout applied to their queries.
+ * <p>
+ * The lanes only bound what they claim to if every admitted query gets a connection right away, so startup fails if
+ * their combined concurrency, plus the SQL client results that may stay open after their statement was admitted,
+ * exceeds the size of the default pool. Metadata loads, plan captures and pool warm-up
+ * run outside the lanes, so the pool should be a few connections larger than that.
+ */
+@Component
+public class QueryAdmissionController {
+
+    @Autowired
+    private DataPathMetrics metrics;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${db.admission.interactive.max-concurrent:6}")
+    private int interactiveMaxConcurrent;
+
+    @Value("${db.admission.interactive.max-queued:32}")
+    private int interactiveMaxQueued;
+
+    @Value("${db.admission.interactive.per-session:4}")
+    private int interactivePerSession;
+
+    @Value("${db.admission.interactive.timeout:PT10S}")
+    private Duration interactiveTimeout;
+
+    @Value("${db.admission.adhoc.max-concurrent:3}")
+    private int adhocMaxConcurrent;
+
+    @Value("${db.admission.adhoc.max-queued:8}")
+    private int adhocMaxQueued;
+
+    @Value("${db.admission.adhoc.per-session:1}")
+    private int adhocPerSession;
+
+    @Value("${db.admission.adhoc.timeout:PT60S}")
+    private Duration adhocTimeout;
+
+    @Value("${db.admission.bulk.max-concurrent:2}")
+    private int bulkMaxConcurrent;
+
+    @Value("${db.admission.bulk.max-queued:4}")
+    private int bulkMaxQueued;
+
+    @Value("${db.admission.bulk.per-session:1}")
+    private int bulkPerSession;
+
+    @Value("${db.admission.bulk.timeout:PT30M}")
+    private Duration bulkTimeout;
+
+    @Value("${db.admission.queue-wait:PT2S}")
+    private Duration queueWait;
+
+    @Value("${db.client.max-open-cursors:3}")
+    private int maxOpenCursors;
+
+    private final Map<QueryLane, Lane> lanes = new EnumMap<>(QueryLane.class);
+
+    private static final class Lane {
+        final Semaphore running;
+        final AtomicInteger waiting = new AtomicInteger();
+        final Map<String, Semaphore> sessions = new ConcurrentHashMap<>();
+        final int maxQueued;
+        final int perSession;
+        final Duration timeout;
+
+        Lane(int maxConcurrent, int maxQueued, int perSession, Duration timeout) {
+            this.running = new Semaphore(maxConcurrent, true);
+            this.maxQueued = maxQueued;
+            this.perSession = perSession;
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * A granted admission. Closing it frees the lane and session slot; closing twice is harmless.
+     */
+    public final class Permit implements AutoCloseable {
+        private final QueryLane lane;
+        private final String sessionId;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(QueryLane lane, String sessionId) {
+            this.lane = lane;
+            this.sessionId = sessionId;
+        }
+
+        /**
+         * @return the statement timeout for the query holding this permit, in seconds
+         */
+        public int getTimeoutSeconds() {
+            return timeoutSeconds(lane);
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                Lane state = lanes.get(lane);
+                state.running.release();
+                releaseSession(state, sessionId);
+            }
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        lanes.put(QueryLane.INTERACTIVE, new Lane(interactiveMaxConcurrent, interactiveMaxQueued, interactivePerSession, interactiveTimeout));
+        lanes.put(QueryLane.ADHOC, new Lane(adhocMaxConcurrent, adhocMaxQueued, adhocPerSession, adhocTimeout));
+        lanes.put(QueryLane.BULK, new Lane(bulkMaxConcurrent, bulkMaxQueued, bulkPerSession, bulkTimeout));
+
+        int admitted = interactiveMaxConcurrent + adhocMaxConcurrent + bulkMaxConcurrent + maxOpenCursors;
+        if (dataSource instanceof HikariDataSource hikari && admitted > hikari.getMaximumPoolSize()) {
+            throw new IllegalStateException("The admission lanes and open results take up to " + admitted
+                    + " connections but the connection pool only has " + hikari.getMaximumPoolSize()
+                    + " connections; raise spring.datasource.hikari.maximum-pool-size or lower "
+                    + "db.admission.*.max-concurrent or db.client.max-open-cursors.");
+        }
+    }
+
+    /**
+     * Waits for a slot in the lane, within the configured limits.
+     *
+     * @param lane      which bulkhead the query belongs to
+     * @param sessionId the HTTP session running the query, or null to apply only the global limit
+     * @return the permit, to be closed when the query no longer uses its connection
+     * @throws QueryRejectedException if the session is at its limit, the wait queue is full or the wait timed out
+     */
+    public Permit acquire(QueryLane lane, String sessionId) {
+        Lane state = lanes.get(lane);
+        long start = System.nanoTime();
+
+        if (sessionId != null) {
+            // Acquired inside compute so a concurrent release cannot drop the entry between lookup and acquire
+            boolean[] acquired = new boolean[1];
+            state.sessions.compute(sessionId, (id, session) -> {
+                Semaphore slots = session != null ? session : new Semaphore(state.perSession);
+                acquired[0] = slots.tryAcquire();
+                return slots;
+            });
+            if (!acquired[0]) {
+                throw rejected(lane, start, "Too many " + describe(lane) + " queries running in this session; wait for one to finish.");
+            }
+        }
+
+        if (state.running.tryAcquire()) {
+            return admitted(lane, sessionId, start);
+        }
+
+        if (state.waiting.incrementAndGet() > state.maxQueued) {
+            state.waiting.decrementAndGet();
+            releaseSession(state, sessionId);
+            throw rejected(lane, start, "The server is busy with other " + describe(lane) + " queries; try again shortly.");
+        }
+        try {
+            if (state.running.tryAcquire(queueWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                return admitted(lane, sessionId, start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            state.waiting.decrementAndGet();
+        }
+        releaseSession(state, sessionId);
+        throw rejected(lane, start, "Timed out waiting for a free slot for " + describe(lane) + " queries; try again shortly.");
+    }
+
+    private Permit admitted(QueryLane lane, String sessionId, long start) {
+        metrics.recordAdmissionWait(lane.name().toLowerCase(Locale.ROOT), System.nanoTime() - start, true);
+        return new Permit(lane, sessionId);
+    }
+
+    private QueryRejectedException rejected(QueryLane lane, long start, String message) {
+        metrics.recordAdmissionWait(lane.name().toLowerCase(Locale.ROOT), System.nanoTime() - start, false);
+        return new QueryRejectedException(message);
+    }
+
+    /**
+     * @return the statement timeout for queries in the lane, in seconds
+     */
+    public int timeoutSeconds(QueryLane lane) {
+        return (int) Math.max(1, lanes.get(lane).timeout.toSeconds());
+    }
+
+    private static void releaseSession(Lane state, String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        state.sessions.computeIfPresent(sessionId, (id, session) -> {
+            session.release();
+            // Forget idle sessions so the map does not grow with every session ever seen
+            return session.availablePermits() >= state.perSession ? null : session;
+        });
+    }
+
+    private static String describe(QueryLane lane) {
+        return switch (lane) {
+            case INTERACTIVE -> "grid";
+            case ADHOC -> "SQL";
+            case BULK -> "export or import";
+        };
+    }
+}
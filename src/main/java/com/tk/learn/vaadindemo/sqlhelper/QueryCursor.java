@@ -0,0 +1,348 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import com.tk.learn.vaadindemo.dbhelper.CancellableQuery;
+import com.tk.learn.vaadindemo.dbhelper.ResultRow;
+import com.tk.learn.vaadindemo.dbhelper.ResultSchema;
+import com.tk.learn.vaadindemo.dbhelper.ResultStore;
+import com.tk.learn.vaadindemo.dbhelper.ResultTable;
+import org.springframework.jdbc.UncategorizedSQLException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A query result that is read from the database on demand instead of all at once.
+ * <p>
+ * The statement runs on a dedicated connection with autocommit switched off and a fetch size set, which makes
+ * PostgreSQL keep a server-side cursor open and ship rows in chunks. Rows are pulled from the cursor only as far as
+ * {@link #fetch(int, int)} needs them and kept in a {@link ResultStore} so the grid can scroll back; the store
+ * moves rows to disk once the session's heap budget is used up. Buffering stops once the row cap is reached or the
+ * store is out of disk quota, at which point the result is marked as truncated.
+ * <p>
+ * The cursor holds a connection until it is exhausted or {@link #close() closed}, and its rows until it is
+ * {@link #release() released}, so owners must release it when the result is no longer shown. A cursor nobody reads
+ * from can be closed with {@link #closeIfIdle(long)}; the rows read so far stay available.
+ */
+public class QueryCursor implements AutoCloseable {
+
+    private final String sql;
+    private final Connection connection;
+    private final Statement statement;
+    private final ResultSchema schema;
+    private final int updateCount;
+    private final int maxRows;
+
+    private final ResultStore bufferedRows;
+    private final Listener listener;
+
+    private ResultSet resultSet;
+    // Row numbers in the order set by sort(), or null for the order the statement returned
+    private int[] order;
+    private long mappingNanos;
+    // Volatile so the service can pick the least recently read cursor without waiting for a fetch in progress
+    private volatile long lastAccessNanos = System.nanoTime();
+    private boolean truncated;
+    private boolean expired;
+    private volatile boolean closed;
+
+    /**
+     * How a cursor reads and how much of the result it may keep.
+     *
+     * @param fetchSize           rows per round trip to the server
+     * @param maxRows             maximum number of rows kept in the buffer
+     * @param queryTimeoutSeconds statement timeout, or 0 for none
+     */
+    public record Limits(int fetchSize, int maxRows, int queryTimeoutSeconds) {
+    }
+
+    /**
+     * Callbacks for the owner of the statement, e.g. to cache complete results or record metrics.
+     */
+    public interface Listener {
+
+        /**
+         * The cursor was read to the end without hitting a cap and without spilling to disk, so the buffer holds
+         * the full result on the heap.
+         */
+        default void completed(ResultTable result) {
+        }
+
+        /**
+         * The cursor released its connection.
+         *
+         * @param buffered     the rows read so far
+         * @param mappingNanos time spent copying those rows out of the result set
+         */
+        default void closed(ResultStore buffered, long mappingNanos) {
+        }
+    }
+
+    private QueryCursor(String sql, Connection connection, Statement statement, ResultSet resultSet,
+                        int updateCount, Limits limits, Function<ResultSchema, ResultStore> storeFactory,
+                        Listener listener) throws SQLException {
+        this.sql = sql;
+        this.connection = connection;
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.updateCount = updateCount;
+        this.maxRows = limits.maxRows();
+        this.listener = listener;
+        this.schema = resultSet != null ? ResultSchema.of(resultSet.getMetaData()) : new ResultSchema(new String[0], new int[0]);
+        this.bufferedRows = storeFactory.apply(schema);
+    }
+
+    private QueryCursor(String sql, ResultTable result) {
+        this.sql = sql;
+        this.connection = null;
+        this.statement = null;
+        this.updateCount = -1;
+        this.maxRows = Integer.MAX_VALUE;
+        this.listener = null;
+        this.schema = result.getSchema();
+        this.bufferedRows = ResultStore.of(result);
+        this.closed = true;
+    }
+
+    /**
+     * Wraps an already complete result, e.g. one served from the result cache, without touching the database.
+     */
+    public static QueryCursor of(String sql, ResultTable result) {
+        return new QueryCursor(sql, result);
+    }
+
+    /**
+     * Executes the statement and leaves its result set open for lazy reading.
+     *
+     * @param dataSource   where to borrow the connection from
+     * @param sql          the statement to run
+     * @param limits       fetch size, row cap and statement timeout
+     * @param readOnly     whether to run the statement in a read-only transaction
+     * @param cancelHandle handle through which the running statement can be cancelled; may be null
+     * @param storeFactory creates the store that buffers the rows of a result with the given schema
+     * @param listener     notified when the result is complete and when the cursor closes; may be null
+     * @return an open cursor; statements without a result set are executed, committed and returned closed
+     */
+    public static QueryCursor open(DataSource dataSource, String sql, Limits limits, boolean readOnly,
+                                   CancellableQuery cancelHandle, Function<ResultSchema, ResultStore> storeFactory,
+                                   Listener listener) {
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            // Set before the transaction starts, so the driver begins it as READ ONLY
+            connection.setReadOnly(readOnly);
+            // PostgreSQL only streams with a cursor inside a transaction
+            connection.setAutoCommit(false);
+            Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(limits.fetchSize());
+            statement.setQueryTimeout(limits.queryTimeoutSeconds());
+            if (cancelHandle != null) {
+                cancelHandle.attach(statement);
+            }
+
+            boolean hasResultSet = statement.execute(sql);
+            QueryCursor cursor = new QueryCursor(sql, connection, statement,
+                    hasResultSet ? statement.getResultSet() : null,
+                    hasResultSet ? -1 : statement.getUpdateCount(), limits, storeFactory, listener);
+            if (!hasResultSet) {
+                cursor.close();
+            }
+            return cursor;
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            throw new UncategorizedSQLException("open cursor", sql, e);
+        } catch (RuntimeException e) {
+            // E.g. the handle was cancelled before the statement ran
+            closeQuietly(connection);
+            throw e;
+        }
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public ResultSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return the number of affected rows for statements without a result set, -1 otherwise
+     */
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * @return true if rows were dropped because the row cap or the disk quota was reached
+     */
+    public synchronized boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return true if the cursor was closed for being idle before the result was read to the end
+     */
+    public synchronized boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * @return true once the cursor no longer holds a connection
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the last fetch or sort, or of the opening if there was none
+     */
+    long getLastAccessNanos() {
+        return lastAccessNanos;
+    }
+
+    /**
+     * Returns a window of rows, reading further from the cursor if the window goes past what is buffered.
+     * A shorter (or empty) list means the end of the result has been reached.
+     */
+    public synchronized List<ResultRow> fetch(int offset, int limit) {
+        lastAccessNanos = System.nanoTime();
+        long end = Math.min((long) offset + limit, Integer.MAX_VALUE);
+        if (order != null) {
+            return bufferedRows.rows(order, offset, (int) end);
+        }
+        bufferUpTo((int) end);
+
+        if (offset >= bufferedRows.size()) {
+            return Collections.emptyList();
+        }
+        return bufferedRows.rows(offset, (int) end);
+    }
+
+    /**
+     * Reads the rest of the result and sorts it on the heap without running the statement again;
+     * {@link #fetch(int, int)} returns rows in the new order afterwards. See {@link ResultStore#sortedOrder} for how
+     * values compare. Fetches are not blocked while the rows are compared.
+     *
+     * @param columns    the columns to sort by, most significant first; empty for the order the statement returned
+     * @param descending for each of those columns whether it sorts in descending order
+     * @return false if the buffer does not hold the whole result on the heap because it hit a cap, the cursor
+     * expired or rows were moved to disk; only the database can sort such a result
+     */
+    public boolean sort(int[] columns, boolean[] descending) {
+        synchronized (this) {
+            lastAccessNanos = System.nanoTime();
+            if (columns.length == 0) {
+                order = null;
+                return true;
+            }
+            bufferUpTo(Integer.MAX_VALUE);
+            if (truncated || expired || bufferedRows.isSpilled()) {
+                return false;
+            }
+        }
+        int[] sorted = bufferedRows.sortedOrder(columns, descending);
+        synchronized (this) {
+            order = sorted;
+        }
+        return true;
+    }
+
+    /**
+     * Closes the cursor if nothing has been fetched from it for the given time, so a result left open in a tab does
+     * not keep its connection.
+     *
+     * @return 0 if the cursor is closed now, otherwise the nanoseconds until it would count as idle
+     */
+    public synchronized long closeIfIdle(long idleNanos) {
+        if (closed) {
+            return 0;
+        }
+        long remaining = lastAccessNanos + idleNanos - System.nanoTime();
+        if (remaining > 0) {
+            return remaining;
+        }
+        expired = true;
+        close();
+        return 0;
+    }
+
+    /**
+     * Closes the cursor and drops its rows, returning their heap budget and deleting any spill file.
+     */
+    public synchronized void release() {
+        close();
+        bufferedRows.close();
+    }
+
+    private void bufferUpTo(int rowCount) {
+        try {
+            while (resultSet != null && bufferedRows.size() < rowCount) {
+                if (bufferedRows.size() >= maxRows) {
+                    truncated = resultSet.next();
+                    close();
+                    return;
+                }
+                if (!resultSet.next()) {
+                    close();
+                    if (listener != null && !bufferedRows.isSpilled()) {
+                        listener.completed(bufferedRows.getHeapRows());
+                    }
+                    return;
+                }
+                long start = System.nanoTime();
+                boolean accepted = bufferedRows.append(resultSet);
+                mappingNanos += System.nanoTime() - start;
+                if (!accepted) {
+                    truncated = resultSet.next();
+                    close();
+                    return;
+                }
+            }
+        } catch (SQLException e) {
+            close();
+            throw new UncategorizedSQLException("fetch from cursor", sql, e);
+        }
+    }
+
+    /**
+     * Releases the server-side cursor and returns the connection. Rows already buffered stay readable.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        resultSet = null;
+        try {
+            statement.close();
+            connection.commit();
+            connection.setAutoCommit(true);
+            connection.setReadOnly(false);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(connection);
+            if (listener != null) {
+                listener.closed(bufferedRows, mappingNanos);
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
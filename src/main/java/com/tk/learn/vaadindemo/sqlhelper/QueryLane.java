@@ -0,0 +1,22 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+/**
+ * Separate admission lanes so that cheap grid reads never queue behind long-running ad-hoc SQL.
+ */
+public enum QueryLane {
+
+    /**
+     * Paged table reads and filters issued by the data grid.
+     */
+    INTERACTIVE,
+
+    /**
+     * Free-form SQL typed into the SQL client.
+     */
+    ADHOC,
+
+    /**
+     * Streaming exports and imports of whole tables, which may hold a connection for minutes.
+     */
+    BULK
+}
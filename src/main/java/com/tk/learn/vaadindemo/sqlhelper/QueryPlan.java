@@ -0,0 +1,83 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An execution plan as returned by {@code EXPLAIN (FORMAT JSON)}, parsed into a tree of {@link PlanNode}s.
+ *
+ * @param root                the top node of the plan
+ * @param planningTimeMillis  time the planner took, or null without ANALYZE
+ * @param executionTimeMillis time the statement took to run, or null without ANALYZE
+ * @param json                the plan as PostgreSQL returned it
+ */
+public record QueryPlan(PlanNode root, Double planningTimeMillis, Double executionTimeMillis, String json) {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * @param json the single value returned by EXPLAIN with FORMAT JSON
+     * @throws IllegalArgumentException if the text is not such a plan
+     */
+    public static QueryPlan parse(String json) {
+        try {
+            JsonNode explain = JSON.readTree(json).path(0);
+            if (!explain.has("Plan")) {
+                throw new IllegalArgumentException("Not an EXPLAIN (FORMAT JSON) result");
+            }
+            return new QueryPlan(node(explain.get("Plan")), optionalDouble(explain, "Planning Time"),
+                    optionalDouble(explain, "Execution Time"), json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Not an EXPLAIN (FORMAT JSON) result", e);
+        }
+    }
+
+    private static PlanNode node(JsonNode plan) {
+        List<PlanNode> children = new ArrayList<>();
+        plan.path("Plans").forEach(child -> children.add(node(child)));
+
+        long loops = plan.path("Actual Loops").asLong(1);
+        // Actual Total Time is an average per loop
+        Double totalTime = plan.has("Actual Total Time") ? plan.get("Actual Total Time").asDouble() * loops : null;
+        Double selfTime = null;
+        if (totalTime != null) {
+            double childTime = children.stream()
+                    .mapToDouble(child -> child.totalTimeMillis() != null ? child.totalTimeMillis() : 0)
+                    .sum();
+            selfTime = Math.max(0, totalTime - childTime);
+        }
+        return new PlanNode(plan.path("Node Type").asText(), detail(plan), plan.path("Total Cost").asDouble(),
+                plan.path("Plan Rows").asLong(), optionalLong(plan, "Actual Rows"), loops, totalTime, selfTime,
+                optionalLong(plan, "Shared Hit Blocks"), optionalLong(plan, "Shared Read Blocks"), List.copyOf(children));
+    }
+
+    private static String detail(JsonNode plan) {
+        StringBuilder detail = new StringBuilder();
+        if (plan.has("Join Type")) {
+            detail.append(plan.get("Join Type").asText());
+        }
+        if (plan.has("Relation Name")) {
+            detail.append(detail.isEmpty() ? "" : " ").append("on ").append(plan.get("Relation Name").asText());
+            String alias = plan.path("Alias").asText();
+            if (!alias.isEmpty() && !alias.equals(plan.get("Relation Name").asText())) {
+                detail.append(' ').append(alias);
+            }
+        }
+        if (plan.has("Index Name")) {
+            detail.append(detail.isEmpty() ? "" : " ").append("using ").append(plan.get("Index Name").asText());
+        }
+        return detail.toString();
+    }
+
+    private static Long optionalLong(JsonNode node, String field) {
+        return node.has(field) ? node.get(field).asLong() : null;
+    }
+
+    private static Double optionalDouble(JsonNode node, String field) {
+        return node.has(field) ? node.get(field).asDouble() : null;
+    }
+}
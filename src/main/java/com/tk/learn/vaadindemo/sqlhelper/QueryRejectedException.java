@@ -0,0 +1,11 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+/**
+ * Thrown when a query is not admitted because its lane or its session is already at capacity.
+ */
+public class QueryRejectedException extends RuntimeException {
+
+    public QueryRejectedException(String message) {
+        super(message);
+    }
+}
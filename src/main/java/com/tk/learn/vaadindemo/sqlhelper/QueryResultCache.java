@@ -0,0 +1,227 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.tk.learn.vaadindemo.dbhelper.ConnectionManager;
+import com.tk.learn.vaadindemo.dbhelper.ResultTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shared cache of read-only query results, keyed on the database, the normalized SQL text and its parameters.
+ * <p>
+ * The cache is bounded by the approximate size of the cached results and evicts with Caffeine's W-TinyLFU policy;
+ * entries also expire after a fixed TTL. Each entry remembers the tables its query reads, and writes made through
+ * the application invalidate every entry that reads a written table of the same database. Hit, miss and eviction
+ * counts are published to Micrometer under the {@code sql.results} cache name.
+ * <p>
+ * Every invalidation also bumps a generation counter per table. A query takes a {@link Snapshot} of the counters of
+ * the tables it reads before it runs, and its result is only cached if none of them changed while it ran, so a
+ * query that started before a write cannot put back a result the write has invalidated.
+ */
+@Component
+public class QueryResultCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final String TABLE_NAME = "(?:\"?\\w+\"?\\.)?\"?\\w+\"?";
+
+    private static final String ALIAS = "(?:\\s+(?:AS\\s+)?(?!(?:JOIN|LEFT|RIGHT|INNER|OUTER|FULL|CROSS|NATURAL|WHERE|ON|USING"
+            + "|GROUP|ORDER|HAVING|WINDOW|LIMIT|OFFSET|FETCH|FOR|UNION|EXCEPT|INTERSECT)\\b)\\w+)?";
+
+    // FROM/JOIN followed by one table or a comma separated list of tables with optional aliases
+    private static final Pattern READ_TABLES = Pattern.compile(
+            "\\b(?:FROM|JOIN)\\s+(" + TABLE_NAME + ALIAS + "(?:\\s*,\\s*" + TABLE_NAME + ALIAS + ")*)",
+            Pattern.CASE_INSENSITIVE);
+
+    // The command, then IF EXISTS or ONLY where PostgreSQL allows them, then the table. UPDATE SET is the action of
+    // MERGE or ON CONFLICT, which names no table
+    private static final Pattern WRITTEN_TABLES = Pattern.compile(
+            "\\b(?:INSERT\\s+INTO|MERGE\\s+INTO|UPDATE(?!\\s+SET\\b)|DELETE\\s+FROM|TRUNCATE(?:\\s+TABLE)?"
+                    + "|ALTER\\s+TABLE(?:\\s+IF\\s+EXISTS)?|DROP\\s+TABLE(?:\\s+IF\\s+EXISTS)?|COPY)\\s+(?:ONLY\\s+)?(" + TABLE_NAME + ")",
+            Pattern.CASE_INSENSITIVE);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ConnectionManager connectionManager;
+
+    @Value("${db.cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${db.cache.max-bytes:134217728}")
+    private long maxBytes;
+
+    @Value("${db.cache.ttl:PT1M}")
+    private Duration ttl;
+
+    private Cache<CacheKey, CachedResult> cache;
+
+    private final Map<TableKey, Long> generations = new ConcurrentHashMap<>();
+
+    private record CacheKey(String dataSource, String sql, List<Object> params) {
+    }
+
+    private record CachedResult(ResultTable result, Set<String> tables) {
+    }
+
+    private record TableKey(String dataSource, String table) {
+    }
+
+    /**
+     * The generations of the tables a query reads, taken before it runs.
+     */
+    public static final class Snapshot {
+
+        private final String dataSource;
+        private final Map<String, Long> generations;
+
+        private Snapshot(String dataSource, Map<String, Long> generations) {
+            this.dataSource = dataSource;
+            this.generations = generations;
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((CacheKey key, CachedResult value) ->
+                        (int) Math.min(Integer.MAX_VALUE, value.result().getApproximateBytes() + 2L * key.sql().length()))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "sql.results");
+        connectionManager.addRemovalListener(dataSource -> {
+            cache.asMap().keySet().removeIf(key -> key.dataSource().equals(dataSource));
+            generations.keySet().removeIf(key -> key.dataSource().equals(dataSource));
+        });
+    }
+
+    /**
+     * @return the cached result of the query, or null on a miss or when caching is disabled
+     */
+    public ResultTable get(String dataSource, String sql, List<Object> params) {
+        if (!enabled) {
+            return null;
+        }
+        CachedResult cached = cache.getIfPresent(new CacheKey(dataSource, normalize(sql), new ArrayList<>(params)));
+        return cached != null ? cached.result() : null;
+    }
+
+    /**
+     * Takes the generations of the tables the query reads; call it before the query runs.
+     *
+     * @return the snapshot to pass to {@link #put}, or null if the result of the query must not be cached because
+     * it changes data, takes row locks or calls a volatile function such as {@code now()}
+     */
+    Snapshot snapshot(String dataSource, String sql, SqlClassification classification) {
+        if (!enabled || !classification.isCacheable()) {
+            return null;
+        }
+        Map<String, Long> tables = new HashMap<>();
+        for (String table : tablesMatching(READ_TABLES, sql)) {
+            tables.put(table, generation(dataSource, table));
+        }
+        return new Snapshot(dataSource, tables);
+    }
+
+    /**
+     * Caches a complete result unless a table it reads was invalidated since the snapshot was taken. Results larger
+     * than a tenth of the cache are skipped so that one big query cannot flush everything else.
+     *
+     * @param snapshot what {@link #snapshot} returned before the query ran; nothing is cached if it is null
+     */
+    public void put(String sql, List<Object> params, ResultTable result, Snapshot snapshot) {
+        if (!enabled || snapshot == null || result.getApproximateBytes() > maxBytes / 10 || isStale(snapshot)) {
+            return;
+        }
+        CacheKey key = new CacheKey(snapshot.dataSource, normalize(sql), new ArrayList<>(params));
+        CachedResult value = new CachedResult(result, snapshot.generations.keySet());
+        cache.put(key, value);
+        // An invalidation between the check and the put may have missed the new entry
+        if (isStale(snapshot)) {
+            cache.asMap().remove(key, value);
+        }
+    }
+
+    /**
+     * Drops every cached result of the database that reads a table the given statement writes to.
+     */
+    public void invalidateWrittenTables(String dataSource, String sql) {
+        Set<String> written = tablesMatching(WRITTEN_TABLES, sql);
+        if (!written.isEmpty()) {
+            invalidateTables(dataSource, written);
+        }
+    }
+
+    /**
+     * Drops every cached result of the database that reads the table.
+     */
+    public void invalidateTable(String dataSource, String tableName) {
+        invalidateTables(dataSource, Set.of(normalizeTableName(tableName)));
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    private void invalidateTables(String dataSource, Set<String> tables) {
+        for (String table : tables) {
+            generations.merge(new TableKey(dataSource, table), 1L, Long::sum);
+        }
+        cache.asMap().entrySet().removeIf(entry -> entry.getKey().dataSource().equals(dataSource)
+                && entry.getValue().tables().stream().anyMatch(tables::contains));
+    }
+
+    private long generation(String dataSource, String table) {
+        return generations.getOrDefault(new TableKey(dataSource, table), 0L);
+    }
+
+    private boolean isStale(Snapshot snapshot) {
+        return snapshot.generations.entrySet().stream()
+                .anyMatch(entry -> generation(snapshot.dataSource, entry.getKey()) != entry.getValue());
+    }
+
+    // Whitespace differences and a trailing semicolon should not produce separate entries
+    private static String normalize(String sql) {
+        String normalized = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        return normalized.endsWith(";") ? normalized.substring(0, normalized.length() - 1).trim() : normalized;
+    }
+
+    private static Set<String> tablesMatching(Pattern pattern, String sql) {
+        Set<String> tables = new HashSet<>();
+        Matcher matcher = pattern.matcher(sql);
+        while (matcher.find()) {
+            for (String item : matcher.group(1).split(",")) {
+                // Keep the table name, drop the alias
+                tables.add(normalizeTableName(item.trim().split("\\s+")[0]));
+            }
+        }
+        return tables;
+    }
+
+    private static String normalizeTableName(String name) {
+        String table = name.replace("\"", "").toLowerCase(Locale.ROOT);
+        int dot = table.lastIndexOf('.');
+        return dot >= 0 ? table.substring(dot + 1) : table;
+    }
+}
@@ -0,0 +1,38 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import java.util.List;
+
+/**
+ * Outcome of running a multi-statement script.
+ *
+ * @param statements one entry per statement, in script order
+ * @param committed  true if the script's transaction was committed, false if it was rolled back
+ * @param roundTrips requests sent to the database for the whole script, including savepoints and the commit
+ * @param elapsedNanos time the whole script took
+ */
+public record ScriptResult(List<StatementResult> statements, boolean committed, int roundTrips, long elapsedNanos) {
+
+    /**
+     * Outcome of one statement.
+     *
+     * @param number       position in the script, starting at 1
+     * @param sql          the statement
+     * @param batch        number of the JDBC batch the statement was sent in, or 0 if it was sent on its own
+     * @param rows         rows returned or affected, -1 if unknown or the statement did not run
+     * @param elapsedNanos time the statement took; for a batched statement, the time of its whole batch
+     * @param status       "OK", or why the statement failed or did not run
+     */
+    public record StatementResult(int number, String sql, int batch, long rows, long elapsedNanos, String status) {
+
+        public boolean succeeded() {
+            return "OK".equals(status);
+        }
+    }
+
+    /**
+     * @return the number of statements that ran successfully
+     */
+    public long getSucceeded() {
+        return statements.stream().filter(StatementResult::succeeded).count();
+    }
+}
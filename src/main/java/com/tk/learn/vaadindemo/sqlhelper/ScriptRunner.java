@@ -0,0 +1,251 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import com.tk.learn.vaadindemo.dbhelper.CancellableQuery;
+import com.tk.learn.vaadindemo.sqlhelper.ScriptResult.StatementResult;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the statements of a script on one connection inside the caller's transaction.
+ * <p>
+ * Consecutive statements that return no rows (DML without RETURNING, DDL and the like) are sent together as one
+ * JDBC batch, which pgjdbc pipelines in a single round trip; statements that return rows are sent one by one and
+ * their rows counted. When a statement fails, the script either stops there, leaving the caller to roll back, or,
+ * with {@code continueOnError}, undoes only the failed statement: every batch and single statement then runs under
+ * a savepoint, and a failed batch is rolled back to it and re-sent without the statement that failed.
+ * <p>
+ * Transaction control statements in the script are skipped, as the whole script is one transaction.
+ */
+class ScriptRunner {
+
+    // Upper bound of statements per batch, so one failure never forces a huge batch to be re-sent
+    private static final int MAX_BATCH_SIZE = 1_000;
+    private static final int RESULT_FETCH_SIZE = 1_000;
+
+    private static final Set<String> BATCHABLE_KEYWORDS = Set.of("insert", "update", "delete", "merge", "create",
+            "alter", "drop", "truncate", "grant", "revoke", "comment", "do", "set");
+    private static final Set<String> TRANSACTION_KEYWORDS = Set.of("begin", "start", "commit", "end", "rollback",
+            "abort", "savepoint", "release");
+    private static final Pattern RETURNING = Pattern.compile("\\bRETURNING\\b", Pattern.CASE_INSENSITIVE);
+
+    private final Connection connection;
+    private final List<String> statements;
+    private final boolean continueOnError;
+    private final int timeoutSeconds;
+    private final CancellableQuery cancelHandle;
+
+    private final StatementResult[] results;
+    private int roundTrips;
+    private int batches;
+    private boolean failed;
+
+    ScriptRunner(Connection connection, List<String> statements, boolean continueOnError, int timeoutSeconds,
+                 CancellableQuery cancelHandle) {
+        this.connection = connection;
+        this.statements = statements;
+        this.continueOnError = continueOnError;
+        this.timeoutSeconds = timeoutSeconds;
+        this.cancelHandle = cancelHandle;
+        this.results = new StatementResult[statements.size()];
+    }
+
+    /**
+     * @return one result per statement, in script order
+     */
+    List<StatementResult> run() throws SQLException {
+        int i = 0;
+        while (i < statements.size() && (continueOnError || !failed)) {
+            String keyword = firstKeyword(statements.get(i));
+            if (TRANSACTION_KEYWORDS.contains(keyword)) {
+                results[i] = new StatementResult(i + 1, statements.get(i), 0, -1, 0,
+                        "Skipped: the script runs in a single transaction");
+                i++;
+            } else if (isBatchable(i)) {
+                int end = i + 1;
+                while (end < statements.size() && end - i < MAX_BATCH_SIZE && isBatchable(end)) {
+                    end++;
+                }
+                runBatch(i, end);
+                i = end;
+            } else {
+                runSingle(i);
+                i++;
+            }
+        }
+        for (int j = 0; j < results.length; j++) {
+            if (results[j] == null) {
+                results[j] = new StatementResult(j + 1, statements.get(j), 0, -1, 0, "Not run: an earlier statement failed");
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return requests sent to the database: statements, batches and savepoint commands
+     */
+    int getRoundTrips() {
+        return roundTrips;
+    }
+
+    /**
+     * @return true if at least one statement failed
+     */
+    boolean isFailed() {
+        return failed;
+    }
+
+    private void runBatch(int from, int to) throws SQLException {
+        int batch = ++batches;
+        List<Integer> pending = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            pending.add(i);
+        }
+        while (!pending.isEmpty()) {
+            Savepoint savepoint = setSavepoint();
+            long start = System.nanoTime();
+            try (Statement statement = createStatement()) {
+                for (int index : pending) {
+                    statement.addBatch(statements.get(index));
+                }
+                roundTrips++;
+                int[] counts = statement.executeBatch();
+                long elapsed = System.nanoTime() - start;
+                for (int k = 0; k < pending.size(); k++) {
+                    results[pending.get(k)] = ok(pending.get(k), batch, k < counts.length ? counts[k] : -1, elapsed);
+                }
+                releaseSavepoint(savepoint);
+                return;
+            } catch (BatchUpdateException e) {
+                long elapsed = System.nanoTime() - start;
+                int[] counts = e.getUpdateCounts() == null ? new int[0] : e.getUpdateCounts();
+                int failedAt = firstFailure(counts, pending.size());
+                results[pending.get(failedAt)] = new StatementResult(pending.get(failedAt) + 1,
+                        statements.get(pending.get(failedAt)), batch, -1, elapsed, "Failed: " + message(e));
+                failed = true;
+                if (!continueOnError) {
+                    // Everything is rolled back by the caller; show what ran before the failure
+                    for (int k = 0; k < failedAt; k++) {
+                        results[pending.get(k)] = ok(pending.get(k), batch, counts[k], elapsed);
+                    }
+                    return;
+                }
+                // The savepoint also undid the statements before the failed one, so they are sent again
+                rollback(savepoint);
+                pending.remove(failedAt);
+            }
+        }
+    }
+
+    private void runSingle(int index) throws SQLException {
+        Savepoint savepoint = setSavepoint();
+        long start = System.nanoTime();
+        try (Statement statement = createStatement()) {
+            statement.setFetchSize(RESULT_FETCH_SIZE);
+            roundTrips++;
+            long rows;
+            if (statement.execute(statements.get(index))) {
+                rows = 0;
+                try (ResultSet rs = statement.getResultSet()) {
+                    while (rs.next()) {
+                        rows++;
+                    }
+                }
+            } else {
+                rows = statement.getUpdateCount();
+            }
+            results[index] = ok(index, 0, rows, System.nanoTime() - start);
+            releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            results[index] = new StatementResult(index + 1, statements.get(index), 0, -1,
+                    System.nanoTime() - start, "Failed: " + message(e));
+            failed = true;
+            if (continueOnError) {
+                rollback(savepoint);
+            }
+        }
+    }
+
+    private StatementResult ok(int index, int batch, long rows, long elapsedNanos) {
+        // The driver may report SUCCESS_NO_INFO instead of a count
+        return new StatementResult(index + 1, statements.get(index), batch, Math.max(rows, -1), elapsedNanos, "OK");
+    }
+
+    private boolean isBatchable(int index) {
+        String sql = statements.get(index);
+        return BATCHABLE_KEYWORDS.contains(firstKeyword(sql)) && !RETURNING.matcher(sql).find();
+    }
+
+    private Statement createStatement() throws SQLException {
+        Statement statement = connection.createStatement();
+        statement.setQueryTimeout(timeoutSeconds);
+        if (cancelHandle != null) {
+            try {
+                cancelHandle.attach(statement);
+            } catch (CancellationException e) {
+                statement.close();
+                throw e;
+            }
+        }
+        return statement;
+    }
+
+    // Savepoints are only needed to undo single statements; without continueOnError the whole script is undone
+    private Savepoint setSavepoint() throws SQLException {
+        if (!continueOnError) {
+            return null;
+        }
+        roundTrips++;
+        return connection.setSavepoint();
+    }
+
+    private void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        if (savepoint != null) {
+            roundTrips++;
+            connection.releaseSavepoint(savepoint);
+        }
+    }
+
+    private void rollback(Savepoint savepoint) throws SQLException {
+        roundTrips++;
+        connection.rollback(savepoint);
+    }
+
+    /**
+     * @return the position in the batch of the statement that failed, judged by the update counts the driver got
+     *         before the failure
+     */
+    private static int firstFailure(int[] counts, int batchSize) {
+        for (int k = 0; k < counts.length && k < batchSize; k++) {
+            if (counts[k] == Statement.EXECUTE_FAILED) {
+                return k;
+            }
+        }
+        return Math.min(counts.length, batchSize - 1);
+    }
+
+    private static String message(SQLException e) {
+        // pgjdbc wraps the server error of a batch entry as the next exception
+        SQLException cause = e.getNextException() != null ? e.getNextException() : e;
+        return cause.getMessage();
+    }
+
+    private static String firstKeyword(String sql) {
+        int end = 0;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end))) {
+            end++;
+        }
+        return sql.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+}
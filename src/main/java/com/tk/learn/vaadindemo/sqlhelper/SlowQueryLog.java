@@ -0,0 +1,137 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory record of recent slow statements across all sessions, for finding plan regressions from the UI.
+ * <p>
+ * Statements slower than the configured threshold go into a fixed-size ring buffer; once it is full, the oldest
+ * entry makes room for the newest. Entries keep the SQL with its literals replaced by {@code ?}, so repeated runs
+ * of one statement shape are easy to spot, and the plan captured for it after it ran.
+ */
+@Service
+public class SlowQueryLog {
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w$])-?\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?\\b");
+    private static final Pattern VALUE_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Value("${db.slow-query.threshold:500ms}")
+    private Duration threshold;
+
+    @Value("${db.slow-query.capacity:100}")
+    private int capacity;
+
+    private SlowQuery[] ring;
+    private int next;
+    private int size;
+
+    /**
+     * A statement that ran longer than the threshold.
+     *
+     * @param at            when the statement finished
+     * @param dataSource    the database it ran on
+     * @param sql           the statement as it was run
+     * @param normalizedSql the statement with literals replaced by {@code ?}
+     * @param latencyMillis time until the statement returned its first rows, or failed
+     * @param rows          rows read from the result, -1 if the statement failed
+     * @param sessionId     the HTTP session that ran it, or null
+     * @param plan          the plan captured after the statement ran, or null if none (yet)
+     */
+    public record SlowQuery(Instant at, String dataSource, String sql, String normalizedSql, long latencyMillis,
+                            long rows, String sessionId, QueryPlan plan) {
+
+        SlowQuery withPlan(QueryPlan plan) {
+            return new SlowQuery(at, dataSource, sql, normalizedSql, latencyMillis, rows, sessionId, plan);
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        ring = new SlowQuery[capacity];
+    }
+
+    /**
+     * @return true if a statement with this latency belongs in the log
+     */
+    public boolean isSlow(long latencyNanos) {
+        return latencyNanos >= threshold.toNanos();
+    }
+
+    /**
+     * Adds the statement if it was slow.
+     *
+     * @return the new entry, or null if the statement was not slow
+     */
+    public SlowQuery record(String dataSource, String sql, long latencyNanos, long rows, String sessionId) {
+        if (!isSlow(latencyNanos)) {
+            return null;
+        }
+        SlowQuery entry = new SlowQuery(Instant.now(), dataSource, sql, normalize(sql),
+                Duration.ofNanos(latencyNanos).toMillis(), rows, sessionId, null);
+        synchronized (ring) {
+            ring[next] = entry;
+            next = (next + 1) % ring.length;
+            size = Math.min(size + 1, ring.length);
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the plan captured for an entry, unless the entry has been pushed out of the log in the meantime.
+     */
+    public void attachPlan(SlowQuery entry, QueryPlan plan) {
+        synchronized (ring) {
+            for (int i = 0; i < ring.length; i++) {
+                if (ring[i] == entry) {
+                    ring[i] = entry.withPlan(plan);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the logged statements, slowest first
+     */
+    public List<SlowQuery> getEntries() {
+        List<SlowQuery> entries = new ArrayList<>(size);
+        synchronized (ring) {
+            for (int i = 0; i < size; i++) {
+                entries.add(ring[i]);
+            }
+        }
+        entries.sort(Comparator.comparingLong(SlowQuery::latencyMillis).reversed());
+        return entries;
+    }
+
+    public void clear() {
+        synchronized (ring) {
+            Arrays.fill(ring, null);
+            next = 0;
+            size = 0;
+        }
+    }
+
+    /**
+     * Replaces string and number literals with {@code ?}, collapses value lists and whitespace, so statements that
+     * only differ in their values look the same.
+     */
+    static String normalize(String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = VALUE_LIST.matcher(normalized).replaceAll("?, ...");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").strip();
+    }
+}
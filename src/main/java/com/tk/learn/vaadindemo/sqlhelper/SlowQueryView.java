@@ -0,0 +1,72 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.textfield.TextArea;
+import com.vaadin.flow.router.PageTitle;
+import com.vaadin.flow.router.Route;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Admin page listing the slowest recent statements of all sessions from the {@link SlowQueryLog}. Selecting one
+ * shows its full SQL and the plan captured for it.
+ */
+@Route("admin/slow-queries")
+@PageTitle("slow-queries")
+public class SlowQueryView extends VerticalLayout {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    private final SlowQueryLog slowQueryLog;
+    private Grid<SlowQueryLog.SlowQuery> queryGrid = new Grid<>();
+    private TextArea sqlText = new TextArea("SQL");
+    private PlanTreeGrid planGrid = new PlanTreeGrid();
+
+    @Autowired
+    public SlowQueryView(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+
+        queryGrid.addColumn(entry -> TIME_FORMAT.format(entry.at())).setHeader("Time").setAutoWidth(true);
+        queryGrid.addColumn(SlowQueryLog.SlowQuery::dataSource).setHeader("Data Source").setAutoWidth(true);
+        queryGrid.addColumn(SlowQueryLog.SlowQuery::latencyMillis).setHeader("Latency (ms)").setAutoWidth(true);
+        queryGrid.addColumn(entry -> entry.rows() < 0 ? "failed" : String.valueOf(entry.rows()))
+                .setHeader("Rows").setAutoWidth(true);
+        queryGrid.addColumn(SlowQueryLog.SlowQuery::normalizedSql).setHeader("Statement").setFlexGrow(1);
+        queryGrid.addColumn(entry -> entry.plan() != null ? "yes" : "").setHeader("Plan").setAutoWidth(true);
+        queryGrid.addSelectionListener(event -> showEntry(event.getFirstSelectedItem().orElse(null)));
+
+        sqlText.setWidth("100%");
+        sqlText.setReadOnly(true);
+        sqlText.setVisible(false);
+        planGrid.setVisible(false);
+
+        Button refreshButton = new Button("Refresh", event -> refresh());
+        Button clearButton = new Button("Clear", event -> {
+            slowQueryLog.clear();
+            refresh();
+        });
+
+        add(new HorizontalLayout(refreshButton, clearButton), queryGrid, sqlText, planGrid);
+        refresh();
+    }
+
+    private void refresh() {
+        queryGrid.setItems(slowQueryLog.getEntries());
+        showEntry(null);
+    }
+
+    private void showEntry(SlowQueryLog.SlowQuery entry) {
+        sqlText.setVisible(entry != null);
+        planGrid.setVisible(entry != null && entry.plan() != null);
+        if (entry != null) {
+            sqlText.setValue(entry.sql());
+            planGrid.setPlan(entry.plan());
+        }
+    }
+}
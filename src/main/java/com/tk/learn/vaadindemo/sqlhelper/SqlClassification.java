@@ -0,0 +1,40 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+/**
+ * What a piece of SQL does, as read by {@link SqlLexer#classify(String)}.
+ *
+ * @param kind             the most far-reaching kind among its statements
+ * @param statements       the number of statements
+ * @param forbiddenCommand the first forbidden command in it (DELETE, DROP or TRUNCATE), or null if there is none
+ * @param volatileFunction whether it calls a function such as {@code now()} or {@code nextval()} whose result
+ *                         differs from one execution to the next
+ */
+record SqlClassification(Kind kind, int statements, String forbiddenCommand, boolean volatileFunction) {
+
+    /**
+     * Kinds of statements, from the least to the most far-reaching.
+     */
+    enum Kind {
+        /** Reads data without changing anything, so it can run in a read-only transaction or on a replica. */
+        READ_ONLY,
+        /** Changes rows, or may: statements the lexer does not know are counted here. */
+        DML,
+        /** May change tables or columns, so cached schema metadata has to be reloaded afterwards. */
+        DDL
+    }
+
+    boolean isReadOnly() {
+        return kind == Kind.READ_ONLY;
+    }
+
+    /**
+     * @return whether running the SQL again would return the same rows as long as the tables it reads are unchanged
+     */
+    boolean isCacheable() {
+        return kind == Kind.READ_ONLY && !volatileFunction;
+    }
+
+    boolean isForbidden() {
+        return forbiddenCommand != null;
+    }
+}
@@ -1,45 +1,139 @@
 package com.tk.learn.vaadindemo.sqlhelper;
 
 
+import com.tk.learn.vaadindemo.dbhelper.BackgroundQueryExecutor;
+import com.tk.learn.vaadindemo.dbhelper.CancellableQuery;
+import com.tk.learn.vaadindemo.dbhelper.ConnectionManager;
+import com.tk.learn.vaadindemo.dbhelper.ResultRow;
+import com.tk.learn.vaadindemo.dbhelper.ResultSchema;
+import com.tk.learn.vaadindemo.export.ExportLinks;
+import com.tk.learn.vaadindemo.export.ExportQuery;
+import com.tk.learn.vaadindemo.export.ResultExportService;
+import com.tk.learn.vaadindemo.metrics.DataPathMetrics;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
 import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.checkbox.Checkbox;
+import com.vaadin.flow.component.combobox.ComboBox;
 import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.grid.GridSortOrder;
+import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.tabs.Tab;
+import com.vaadin.flow.component.tabs.TabSheet;
 import com.vaadin.flow.component.textfield.TextArea;
+import com.vaadin.flow.data.provider.SortDirection;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.server.VaadinSession;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Route("sqllite")
 @PageTitle("dynamic-grid-sql-lite")
 public class SqlClientView extends VerticalLayout {
 
+    // Statements whose result can be wrapped in a sorting SELECT
+    private static final Set<String> SORTABLE_OPERATIONS = Set.of("sql.select", "sql.with", "sql.values", "sql.table");
+
     private final SqlExecutionService sqlExecutionService;
+    private final BackgroundQueryExecutor backgroundQueryExecutor;
 
+    private ComboBox<String> dataSourceSelector;
     private TextArea sqlTextArea;
     private Button executeButton;
-    private Grid<Map<String, Object>> resultGrid;
+    private Button cancelButton;
+    private Button explainButton;
+    private Button explainAnalyzeButton;
+    private Grid<ResultRow> resultGrid;
+    private PlanTreeGrid planGrid;
+    private Span planSummary;
+    private Checkbox continueOnError;
+    private Grid<ScriptResult.StatementResult> statementGrid;
+    private Span scriptSummary;
+    private TabSheet resultTabs;
+    private Tab resultTab;
+    private Tab planTab;
+    private Tab statementsTab;
+    private ExportLinks exportLinks;
+    // Read by download requests outside the UI thread
+    private volatile ExportQuery exportQuery;
+    private QueryCursor activeCursor;
+    private CancellableQuery runningQuery;
+    // The statement as entered, before any sort from the grid was applied to it, and the database it ran on
+    private String resultSql;
+    private String resultDataSource;
 
     @Autowired
-    public SqlClientView(SqlExecutionService sqlExecutionService) {
+    public SqlClientView(SqlExecutionService sqlExecutionService, BackgroundQueryExecutor backgroundQueryExecutor,
+                         ResultExportService exportService, ConnectionManager connectionManager) {
         this.sqlExecutionService = sqlExecutionService;
+        this.backgroundQueryExecutor = backgroundQueryExecutor;
 
         // Create UI components
+        dataSourceSelector = new ComboBox<>("Data Source");
+        dataSourceSelector.setItems(connectionManager.getNames());
+        dataSourceSelector.setValue(ConnectionManager.DEFAULT);
+        dataSourceSelector.setAllowCustomValue(false);
         sqlTextArea = new TextArea("SQL Query");
         sqlTextArea.setWidth("100%");
         sqlTextArea.setHeight("350px");
 
         executeButton = new Button("Execute SQL");
+        cancelButton = new Button("Cancel Query");
+        cancelButton.setEnabled(false);
+        explainButton = new Button("Explain");
+        explainAnalyzeButton = new Button("Explain Analyze (BUFFERS)");
+        continueOnError = new Checkbox("Continue script on error");
         resultGrid = new Grid<>();
+        planGrid = new PlanTreeGrid();
+        planSummary = new Span();
+        scriptSummary = new Span();
+        statementGrid = new Grid<>();
+        statementGrid.addColumn(ScriptResult.StatementResult::number).setHeader("#").setAutoWidth(true);
+        statementGrid.addColumn(ScriptResult.StatementResult::sql).setHeader("Statement").setFlexGrow(1);
+        statementGrid.addColumn(result -> result.batch() == 0 ? "" : String.valueOf(result.batch()))
+                .setHeader("Batch").setAutoWidth(true);
+        statementGrid.addColumn(result -> result.rows() < 0 ? "" : String.valueOf(result.rows()))
+                .setHeader("Rows").setAutoWidth(true);
+        statementGrid.addColumn(result -> String.format(Locale.ROOT, "%.2f", result.elapsedNanos() / 1_000_000.0))
+                .setHeader("Time (ms)").setAutoWidth(true);
+        statementGrid.addColumn(ScriptResult.StatementResult::status).setHeader("Status").setFlexGrow(1);
+
+        // Query results, plans and script outcomes each get a tab
+        resultTabs = new TabSheet();
+        resultTabs.setWidth("100%");
+        resultTab = resultTabs.add("Result", resultGrid);
+        planTab = resultTabs.add("Plan", new VerticalLayout(planSummary, planGrid));
+        statementsTab = resultTabs.add("Statements", new VerticalLayout(scriptSummary, statementGrid));
 
-        // Add listener for execute button
+        // Exports re-run the query and stream the full result, not just the rows loaded into the grid; they are only
+        // offered for read-only statements, which can run again without changing anything
+        exportLinks = new ExportLinks(exportService, () -> exportQuery);
+        exportLinks.setFileName("query-result");
+        exportLinks.setVisible(false);
+
+        // Add listeners for the buttons
         executeButton.addClickListener(e -> executeSql());
+        cancelButton.addClickListener(e -> cancelQuery());
+        explainButton.addClickListener(e -> explainSql(false));
+        explainAnalyzeButton.addClickListener(e -> explainSql(true));
+        resultGrid.addSortListener(e -> {
+            if (e.isFromClient()) {
+                sortResults(e.getSortOrder());
+            }
+        });
 
         // Layout the components
-        add(sqlTextArea, executeButton, resultGrid);
+        add(dataSourceSelector, sqlTextArea, new HorizontalLayout(executeButton, cancelButton, explainButton, explainAnalyzeButton,
+                continueOnError), exportLinks, resultTabs);
     }
 
     private void executeSql() {
@@ -49,26 +143,284 @@ public class SqlClientView extends VerticalLayout {
             Notification.show("Please enter a valid SQL query.", 3000, Notification.Position.MIDDLE);
             return;
         }
+        // Scripts with several statements run as one transaction; a single statement streams its result
+        if (SqlScriptSplitter.split(sql).size() > 1) {
+            runScript(sql);
+            return;
+        }
+        resultSql = sql;
+        resultDataSource = selectedDataSource();
+        runQuery(sql, true);
+    }
 
-        try {
-            List<Map<String, Object>> results = sqlExecutionService.executeSql(sql);
-            displayResults(results);
-        } catch (Exception e) {
-            Notification.show("Error executing query: " + e.getMessage(), 3000, Notification.Position.MIDDLE);
+    private void runScript(String script) {
+        closeActiveCursor();
+        CancellableQuery query = new CancellableQuery();
+        runningQuery = query;
+        setRunning(true);
+
+        boolean skipFailed = continueOnError.getValue();
+        String dataSource = selectedDataSource();
+        String sessionId = VaadinSession.getCurrent().getSession().getId();
+        UI ui = UI.getCurrent();
+        backgroundQueryExecutor.submit(query, () -> sqlExecutionService.executeScript(dataSource, script, skipFailed,
+                        sessionId, query))
+                .whenComplete((result, error) -> ui.access(() -> {
+                    if (runningQuery != query) {
+                        return;  // Cancelled or superseded
+                    }
+                    runningQuery = null;
+                    setRunning(false);
+                    if (error != null) {
+                        Notification.show("Error executing script: " + error.getMessage(), 3000, Notification.Position.MIDDLE);
+                        return;
+                    }
+                    showScriptResult(result);
+                }));
+    }
+
+    private void showScriptResult(ScriptResult result) {
+        resultSql = null;
+        exportQuery = null;
+        exportLinks.setVisible(false);
+        statementGrid.setItems(result.statements());
+        scriptSummary.setText(String.format(Locale.ROOT, "%d of %d statement(s) succeeded in %.2f ms, %d round trip(s); %s",
+                result.getSucceeded(), result.statements().size(), result.elapsedNanos() / 1_000_000.0,
+                result.roundTrips(), result.committed() ? "committed" : "rolled back"));
+        resultTabs.setSelectedTab(statementsTab);
+    }
+
+    // Shows the plan instead of the result; with analyze the statement really runs, in a transaction rolled back
+    private void explainSql(boolean analyze) {
+        String sql = sqlTextArea.getValue();
+
+        if (sql == null || sql.trim().isEmpty()) {
+            Notification.show("Please enter a valid SQL query.", 3000, Notification.Position.MIDDLE);
+            return;
+        }
+        if (runningQuery != null) {
+            runningQuery.cancel();
         }
+
+        CancellableQuery query = new CancellableQuery();
+        runningQuery = query;
+        setRunning(true);
+
+        String dataSource = selectedDataSource();
+        String sessionId = VaadinSession.getCurrent().getSession().getId();
+        UI ui = UI.getCurrent();
+        backgroundQueryExecutor.submit(query, () -> sqlExecutionService.explain(dataSource, sql, analyze, sessionId, query))
+                .whenComplete((plan, error) -> ui.access(() -> {
+                    if (runningQuery != query) {
+                        return;  // Cancelled or superseded
+                    }
+                    runningQuery = null;
+                    setRunning(false);
+                    if (error != null) {
+                        Notification.show("Error explaining query: " + error.getMessage(), 3000, Notification.Position.MIDDLE);
+                        return;
+                    }
+                    showPlan(plan);
+                }));
     }
 
-    private void displayResults(List<Map<String, Object>> results) {
-        if (results.isEmpty()) {
+    private void showPlan(QueryPlan plan) {
+        planGrid.setPlan(plan);
+        planSummary.setText(plan.executionTimeMillis() == null ? "Estimated plan"
+                : String.format(Locale.ROOT, "Planning %.2f ms, execution %.2f ms (changes rolled back)",
+                plan.planningTimeMillis(), plan.executionTimeMillis()));
+        resultTabs.setSelectedTab(planTab);
+    }
+
+    // A result read to the end that fits the session's heap budget is sorted on the heap. A result cut short by the
+    // row cap or the disk quota, or spilled to disk, is sorted by re-running the statement with an ORDER BY, so the
+    // database does the work instead of the application heap
+    private void sortResults(List<GridSortOrder<ResultRow>> sortOrders) {
+        QueryCursor cursor = activeCursor;
+        if (resultSql == null || cursor == null) {
+            return;
+        }
+        if (sortOrders.isEmpty() && !cursor.getSql().equals(resultSql)) {
+            runQuery(resultSql, false);  // The rows shown were sorted by the database
+            return;
+        }
+        // Column keys are 1-based positions
+        int[] columns = sortOrders.stream().mapToInt(order -> Integer.parseInt(order.getSorted().getKey()) - 1).toArray();
+        boolean[] descending = new boolean[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            descending[i] = sortOrders.get(i).getDirection() == SortDirection.DESCENDING;
+        }
+        if (runningQuery != null) {
+            runningQuery.cancel();
+        }
+        CancellableQuery query = new CancellableQuery();
+        runningQuery = query;
+        setRunning(true);
+
+        UI ui = UI.getCurrent();
+        backgroundQueryExecutor.submit(query, () -> cursor.sort(columns, descending))
+                .whenComplete((sorted, error) -> ui.access(() -> {
+                    if (runningQuery != query || activeCursor != cursor) {
+                        return;  // Cancelled or superseded
+                    }
+                    runningQuery = null;
+                    setRunning(false);
+                    if (error != null) {
+                        error.printStackTrace();
+                        Notification.show("Error sorting results: " + error.getMessage(), 3000, Notification.Position.MIDDLE);
+                    } else if (sorted) {
+                        resultGrid.getDataProvider().refreshAll();
+                    } else {
+                        sortOnDatabase(sortOrders);
+                    }
+                }));
+    }
+
+    private void sortOnDatabase(List<GridSortOrder<ResultRow>> sortOrders) {
+        String orderBy = sortOrders.stream()
+                .map(order -> order.getSorted().getKey()
+                        + (order.getDirection() == SortDirection.DESCENDING ? " DESC" : " ASC"))
+                .collect(Collectors.joining(", "));
+        String statement = resultSql.strip().replaceAll(";+$", "");
+        runQuery("SELECT * FROM (\n" + statement + "\n) AS sorted ORDER BY " + orderBy, false);
+    }
+
+    private void runQuery(String sql, boolean newResult) {
+        // Release the previous result's server-side cursor before starting a new one
+        closeActiveCursor();
+        if (runningQuery != null) {
+            runningQuery.cancel();
+        }
+
+        // Run the statement in the background so the session stays responsive and the query can be cancelled
+        CancellableQuery query = new CancellableQuery();
+        runningQuery = query;
+        setRunning(true);
+
+        // Re-sorts run on the database the result came from, even if another one was selected since
+        String dataSource = resultDataSource;
+        String sessionId = VaadinSession.getCurrent().getSession().getId();
+        UI ui = UI.getCurrent();
+        backgroundQueryExecutor.submit(query, () -> sqlExecutionService.openCursor(dataSource, sql, sessionId, query))
+                .whenComplete((cursor, error) -> {
+                    if (!ui.isAttached()) {
+                        releaseUnshown(cursor);
+                        return;
+                    }
+                    try {
+                        ui.access(() -> {
+                            if (runningQuery != query) {
+                                // Cancelled or superseded; nobody will show this result
+                                releaseUnshown(cursor);
+                                return;
+                            }
+                            runningQuery = null;
+                            setRunning(false);
+                            if (error != null) {
+                                Notification.show("Error executing query: " + error.getMessage(), 3000,
+                                        Notification.Position.MIDDLE);
+                                return;
+                            }
+                            activeCursor = cursor;
+                            displayResults(cursor, newResult);
+                        });
+                    } catch (UIDetachedException e) {
+                        // Detached since the check; the cursor still holds a connection
+                        releaseUnshown(cursor);
+                    }
+                });
+    }
+
+    private static void releaseUnshown(QueryCursor cursor) {
+        if (cursor != null) {
+            cursor.release();
+        }
+    }
+
+    private void cancelQuery() {
+        if (runningQuery != null) {
+            // Cancels the statement on the database server, not just the wait for it
+            runningQuery.cancel();
+            runningQuery = null;
+            setRunning(false);
+            Notification.show("Query cancelled.", 3000, Notification.Position.MIDDLE);
+        }
+    }
+
+    private void setRunning(boolean running) {
+        executeButton.setEnabled(!running);
+        explainButton.setEnabled(!running);
+        explainAnalyzeButton.setEnabled(!running);
+        cancelButton.setEnabled(running);
+    }
+
+    /**
+     * @param newResult false when the cursor re-reads the current result in another order; the columns and their
+     *                  sort indicators are kept
+     */
+    private void displayResults(QueryCursor cursor, boolean newResult) {
+        resultTabs.setSelectedTab(resultTab);
+        ResultSchema schema = cursor.getSchema();
+        exportQuery = schema.size() == 0 || !sqlExecutionService.isReadOnly(cursor.getSql()) ? null
+                : new ExportQuery(resultDataSource, cursor.getSql(), List.of(), "adhoc");
+        exportLinks.setVisible(exportQuery != null);
+        if (schema.size() == 0) {
+            Notification.show(cursor.getUpdateCount() + " row(s) affected.", 3000, Notification.Position.MIDDLE);
+            resultGrid.setItems(List.of());
+            return;
+        }
+        if (cursor.fetch(0, 1).isEmpty()) {
             Notification.show("No results found.", 3000, Notification.Position.MIDDLE);
-            resultGrid.setItems(results);
+            resultGrid.setItems(List.of());
             return;
         }
 
-        // Dynamically create columns based on query result
-        resultGrid.removeAllColumns();
-        Map<String, Object> firstRow = results.get(0);
-        firstRow.keySet().forEach(columnName -> resultGrid.addColumn(row -> row.get(columnName)).setHeader(columnName));
-        resultGrid.setItems(results);
+        // Dynamically create columns based on query result; the key is the column's position for ORDER BY
+        if (newResult) {
+            boolean sortable = SORTABLE_OPERATIONS.contains(DataPathMetrics.sqlOperation(cursor.getSql()));
+            resultGrid.removeAllColumns();
+            for (int i = 0; i < schema.size(); i++) {
+                int columnIndex = i;
+                resultGrid.addColumn(row -> row.get(columnIndex))
+                        .setHeader(schema.getColumnName(i))
+                        .setKey(String.valueOf(i + 1))
+                        .setSortable(sortable);
+            }
+        }
+
+        // The grid pulls rows page by page; the cursor reads ahead from the database only as far as needed
+        resultGrid.setItems(query -> {
+            List<ResultRow> page = cursor.fetch(query.getOffset(), query.getLimit());
+            if (page.size() < query.getLimit() && cursor.isExpired()) {
+                Notification.show("The result was closed before it was read to the end; run the query again to see "
+                        + "the rest.", 3000, Notification.Position.MIDDLE);
+            } else if (page.size() < query.getLimit() && cursor.isTruncated()) {
+                Notification.show("Result truncated to the first rows; refine the query to see the rest.",
+                        3000, Notification.Position.MIDDLE);
+            }
+            return page.stream();
+        });
+    }
+
+    private String selectedDataSource() {
+        return dataSourceSelector.getValue() != null ? dataSourceSelector.getValue() : ConnectionManager.DEFAULT;
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        super.onDetach(detachEvent);
+        if (runningQuery != null) {
+            runningQuery.cancel();
+            runningQuery = null;
+        }
+        closeActiveCursor();
+    }
+
+    private void closeActiveCursor() {
+        if (activeCursor != null) {
+            // Also frees the heap budget and spill file of the rows shown so far
+            activeCursor.release();
+            activeCursor = null;
+        }
     }
 }
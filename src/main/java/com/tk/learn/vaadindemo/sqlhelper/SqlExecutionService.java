@@ -1,52 +1,396 @@
 package com.tk.learn.vaadindemo.sqlhelper;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tk.learn.vaadindemo.dbhelper.BackgroundQueryExecutor;
+import com.tk.learn.vaadindemo.dbhelper.CancellableQuery;
+import com.tk.learn.vaadindemo.dbhelper.ConnectionManager;
+import com.tk.learn.vaadindemo.dbhelper.ResultStore;
+import com.tk.learn.vaadindemo.dbhelper.ResultStoreManager;
+import com.tk.learn.vaadindemo.dbhelper.ResultTable;
+import com.tk.learn.vaadindemo.dbhelper.SchemaMetadataService;
+import com.tk.learn.vaadindemo.metrics.DataPathMetrics;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 
 @Service
 public class SqlExecutionService {
 
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private ConnectionManager connectionManager;
 
-    private static final String[] FORBIDDEN_COMMANDS = {"DROP", "TRUNCATE", "DELETE"};
+    @Autowired
+    private SchemaMetadataService schemaMetadataService;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private QueryAdmissionController admissionController;
+
+    @Autowired
+    private DataPathMetrics metrics;
+
+    @Autowired
+    private SlowQueryLog slowQueryLog;
+
+    @Autowired
+    private BackgroundQueryExecutor backgroundQueryExecutor;
+
+    @Autowired
+    private ResultStoreManager resultStoreManager;
+
+    @Value("${db.client.fetch-size:500}")
+    private int fetchSize;
+
+    @Value("${db.client.max-rows:100000}")
+    private int maxRows;
+
+    @Value("${db.client.cursor-idle-timeout:1m}")
+    private Duration cursorIdleTimeout;
+
+    @Value("${db.client.max-open-cursors:3}")
+    private int maxOpenCursors;
+
+    // Statements PostgreSQL can EXPLAIN, apart from DELETE, which the SQL client never runs
+    private static final Set<String> EXPLAINABLE_OPERATIONS = Set.of("sql.select", "sql.with", "sql.values",
+            "sql.table", "sql.insert", "sql.update", "sql.merge");
+
+    // Characters of SQL text whose classification is kept; the same queries tend to be run again and again
+    private static final long CLASSIFICATION_CACHE_CHARS = 4_000_000;
+
+    // PostgreSQL's SQLSTATE for a write attempted in a read-only transaction
+    private static final String READ_ONLY_SQL_TRANSACTION = "25006";
+
+    private final Cache<String, SqlClassification> classifications = Caffeine.newBuilder()
+            .maximumWeight(CLASSIFICATION_CACHE_CHARS)
+            .weigher((String sql, SqlClassification classification) -> sql.length())
+            .build();
+
+    // Closes cursors that are left open without being read
+    private final ScheduledExecutorService cursorReaper = Executors.newSingleThreadScheduledExecutor();
+
+    // Cursors that may still hold a connection, across all sessions
+    private final Set<QueryCursor> openCursors = new HashSet<>();
 
     /**
-     * Executes the provided SQL query after validating it.
+     * Executes the provided SQL query after validating it and returns a cursor that streams the result on demand,
+     * bounded by the configured row cap. Rows beyond the session's heap budget are spilled to disk. The caller owns
+     * the cursor and must release it.
+     * <p>
+     * The statement runs in the ad-hoc admission lane of the given session and with that lane's statement timeout;
+     * the lane's slot is given back once the statement has returned its first rows. The connection of an open result
+     * counts against {@code db.client.max-open-cursors} instead: opening one more closes the result that was fetched
+     * from the longest ago, and a result nothing is fetched from for {@code db.client.cursor-idle-timeout} is closed.
+     * Closed results keep the rows read so far. Read-only queries run in a read-only transaction, on the replica of
+     * the database if it has one.
      *
-     * @param sql The SQL query to execute
-     * @return The result of the query if valid
+     * @param dataSource   The database to run the query on
+     * @param sql          The SQL query to execute
+     * @param sessionId    The HTTP session running the query
+     * @param cancelHandle Handle through which the caller can cancel the statement while it runs
+     * @return An open cursor over the result
      * @throws IllegalArgumentException If the query contains forbidden SQL commands
+     * @throws QueryRejectedException   If the query was not admitted
+     */
+    public QueryCursor openCursor(String dataSource, String sql, String sessionId, CancellableQuery cancelHandle)
+            throws IllegalArgumentException {
+        SqlClassification classification = classify(sql);
+        if (classification.isForbidden()) {
+            throw new IllegalArgumentException("The query contains forbidden SQL commands (DROP, TRUNCATE, DELETE).");
+        }
+
+        ResultTable cached = queryResultCache.get(dataSource, sql, List.of());
+        if (cached != null) {
+            return QueryCursor.of(sql, cached);
+        }
+        QueryResultCache.Snapshot snapshot = queryResultCache.snapshot(dataSource, sql, classification);
+
+        String operation = DataPathMetrics.sqlOperation(sql);
+        long start = System.nanoTime();
+        // Time until the statement returned its first rows; the cursor may stay open much longer while it is read
+        long[] executionNanos = new long[1];
+        QueryCursor.Listener listener = new QueryCursor.Listener() {
+            @Override
+            public void completed(ResultTable result) {
+                // Results read to the end without hitting a cap are complete and can be cached
+                queryResultCache.put(sql, List.of(), result, snapshot);
+            }
+
+            @Override
+            public void closed(ResultStore buffered, long mappingNanos) {
+                metrics.recordMaterialized(operation, DataPathMetrics.NO_TABLE, buffered.size(),
+                        buffered.getApproximateHeapBytes(), mappingNanos, System.nanoTime() - start);
+                // Statements without a result set close before open() returns
+                long latency = executionNanos[0] > 0 ? executionNanos[0] : System.nanoTime() - start;
+                logIfSlow(dataSource, sql, latency, buffered.size(), sessionId);
+            }
+        };
+
+        QueryCursor cursor;
+        // Held while the statement runs; reading on from an open cursor only takes short fetches
+        try (QueryAdmissionController.Permit permit = admissionController.acquire(QueryLane.ADHOC, sessionId)) {
+            QueryCursor.Limits limits = new QueryCursor.Limits(fetchSize, maxRows, permit.getTimeoutSeconds());
+            cursor = metrics.observe(operation, DataPathMetrics.NO_TABLE, () -> route(dataSource, classification,
+                    (target, readOnly) -> QueryCursor.open(connectionManager.dataSource(target), sql, limits,
+                            readOnly, cancelHandle, schema -> resultStoreManager.create(schema, sessionId),
+                            listener)));
+            executionNanos[0] = System.nanoTime() - start;
+        } catch (RuntimeException e) {
+            // Statements that hit the timeout are the ones most worth a look
+            logIfSlow(dataSource, sql, System.nanoTime() - start, -1, sessionId);
+            throw e;
+        }
+        trackOpenCursor(cursor);
+        afterExecution(dataSource, sql, classification);
+        return cursor;
+    }
+
+    /**
+     * @return true if the SQL only reads data, so running it again, e.g. for an export, changes nothing
+     */
+    public boolean isReadOnly(String sql) {
+        return classify(sql).isReadOnly();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        cursorReaper.shutdownNow();
+    }
+
+    /**
+     * Counts the cursor against the open-cursor cap, closing the least recently read cursors above it, and closes it
+     * once it is idle.
+     */
+    private void trackOpenCursor(QueryCursor cursor) {
+        if (cursor.isClosed()) {
+            return;
+        }
+        List<QueryCursor> evicted = new ArrayList<>();
+        synchronized (openCursors) {
+            openCursors.removeIf(QueryCursor::isClosed);
+            openCursors.add(cursor);
+            // The cursor just opened always stays open
+            while (openCursors.size() > Math.max(1, maxOpenCursors)) {
+                QueryCursor oldest = openCursors.stream()
+                        .filter(open -> open != cursor)
+                        .min(Comparator.comparingLong(QueryCursor::getLastAccessNanos))
+                        .orElseThrow();
+                openCursors.remove(oldest);
+                evicted.add(oldest);
+            }
+        }
+        // Outside the lock: closing waits for a fetch the cursor may be in the middle of
+        evicted.forEach(oldest -> oldest.closeIfIdle(0));
+        closeWhenIdle(cursor);
+    }
+
+    private void closeWhenIdle(QueryCursor cursor) {
+        long remaining = cursor.closeIfIdle(cursorIdleTimeout.toNanos());
+        if (remaining > 0) {
+            cursorReaper.schedule(() -> closeWhenIdle(cursor), remaining, TimeUnit.NANOSECONDS);
+        } else {
+            synchronized (openCursors) {
+                openCursors.remove(cursor);
+            }
+        }
+    }
+
+    /**
+     * Splits a script into its statements, validates each of them and runs them all in one transaction.
+     * <p>
+     * Consecutive statements that return no rows are sent as JDBC batches, so a migration or seed script costs a
+     * handful of round trips instead of one per statement. If a statement fails, the script stops and the
+     * transaction is rolled back; with {@code continueOnError} only the failed statement is undone, using
+     * savepoints, and the rest is committed. The script runs in the ad-hoc admission lane, with the lane's timeout
+     * applying to each statement.
+     *
+     * @param dataSource      The database to run the script on
+     * @param script          The SQL script, statements separated by semicolons
+     * @param continueOnError Whether to skip failed statements instead of rolling back the whole script
+     * @param sessionId       The HTTP session running the script
+     * @param cancelHandle    Handle through which the caller can cancel the running statement
+     * @return The outcome and timing of every statement
+     * @throws IllegalArgumentException If the script is empty or a statement contains forbidden SQL commands
+     * @throws QueryRejectedException   If the script was not admitted
      */
-    public List<Map<String, Object>> executeSql(String sql) throws IllegalArgumentException {
-        // Check for forbidden SQL commands
-        if (containsForbiddenSql(sql)) {
+    public ScriptResult executeScript(String dataSource, String script, boolean continueOnError, String sessionId,
+                                      CancellableQuery cancelHandle) throws IllegalArgumentException {
+        List<String> statements = SqlScriptSplitter.split(script);
+        if (statements.isEmpty()) {
+            throw new IllegalArgumentException("The script contains no statements.");
+        }
+        // Scripts are rarely run twice, so their statements bypass the classification cache
+        List<SqlClassification> classified = new ArrayList<>(statements.size());
+        for (int i = 0; i < statements.size(); i++) {
+            classified.add(SqlLexer.classify(statements.get(i)));
+            if (classified.get(i).isForbidden()) {
+                throw new IllegalArgumentException("Statement " + (i + 1)
+                        + " contains forbidden SQL commands (DROP, TRUNCATE, DELETE).");
+            }
+        }
+
+        ScriptResult result;
+        try (QueryAdmissionController.Permit permit = admissionController.acquire(QueryLane.ADHOC, sessionId)) {
+            long start = System.nanoTime();
+            JdbcTemplate jdbcTemplate = connectionManager.jdbcTemplate(dataSource);
+            TransactionTemplate transaction = new TransactionTemplate(connectionManager.transactionManager(dataSource));
+            result = metrics.observe("sql.script", DataPathMetrics.NO_TABLE, () -> transaction.execute(status ->
+                    jdbcTemplate.execute((ConnectionCallback<ScriptResult>) connection -> {
+                        ScriptRunner runner = new ScriptRunner(connection, statements, continueOnError,
+                                permit.getTimeoutSeconds(), cancelHandle);
+                        List<ScriptResult.StatementResult> results = runner.run();
+                        boolean commit = continueOnError || !runner.isFailed();
+                        if (!commit) {
+                            status.setRollbackOnly();
+                        }
+                        // One more round trip for the commit or rollback
+                        return new ScriptResult(results, commit, runner.getRoundTrips() + 1, System.nanoTime() - start);
+                    })));
+        }
+        if (result.committed()) {
+            for (int i = 0; i < statements.size(); i++) {
+                afterExecution(dataSource, statements.get(i), classified.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the execution plan of the statement after validating it.
+     * <p>
+     * With {@code analyze} the statement is run with {@code EXPLAIN (ANALYZE, BUFFERS)} to get actual row counts,
+     * timings and buffer usage. It runs inside a transaction that is always rolled back, so a data-changing
+     * statement is measured without its changes being kept. The statement runs in the ad-hoc admission lane.
+     *
+     * @param dataSource   The database to run the query on
+     * @param sql          The SQL query to explain
+     * @param analyze      Whether to run the statement and report actual numbers
+     * @param sessionId    The HTTP session asking for the plan
+     * @param cancelHandle Handle through which the caller can cancel the statement while it runs
+     * @return The parsed plan
+     * @throws IllegalArgumentException If the query contains forbidden SQL commands or cannot be explained
+     * @throws QueryRejectedException   If the query was not admitted
+     */
+    public QueryPlan explain(String dataSource, String sql, boolean analyze, String sessionId,
+                             CancellableQuery cancelHandle) throws IllegalArgumentException {
+        if (classify(sql).isForbidden()) {
             throw new IllegalArgumentException("The query contains forbidden SQL commands (DROP, TRUNCATE, DELETE).");
         }
+        if (!EXPLAINABLE_OPERATIONS.contains(DataPathMetrics.sqlOperation(sql))) {
+            throw new IllegalArgumentException("Only queries and INSERT, UPDATE or MERGE statements can be explained.");
+        }
+        try (QueryAdmissionController.Permit permit = admissionController.acquire(QueryLane.ADHOC, sessionId)) {
+            return QueryPlan.parse(explainJson(dataSource, sql, analyze, permit.getTimeoutSeconds(), cancelHandle));
+        }
+    }
 
-        return jdbcTemplate.queryForList(sql);
+    private String explainJson(String dataSource, String sql, boolean analyze, int timeoutSeconds,
+                               CancellableQuery cancelHandle) {
+        String explain = (analyze ? "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " : "EXPLAIN (FORMAT JSON) ")
+                + sql.strip().replaceAll(";+$", "");
+        JdbcTemplate jdbcTemplate = connectionManager.jdbcTemplate(dataSource);
+        TransactionTemplate transaction = new TransactionTemplate(connectionManager.transactionManager(dataSource));
+        transaction.setTimeout(timeoutSeconds);
+        return metrics.observe(analyze ? "sql.explain.analyze" : "sql.explain", DataPathMetrics.NO_TABLE,
+                () -> transaction.execute(status -> {
+                    // ANALYZE really runs the statement; never keep what it changed
+                    status.setRollbackOnly();
+                    return cancelHandle.query(jdbcTemplate, explain, List.of(), (rs, rowNum) -> rs.getString(1),
+                            timeoutSeconds).get(0);
+                }));
     }
 
     /**
-     * Checks if the query contains any forbidden SQL commands (DROP, TRUNCATE, DELETE).
+     * Adds a slow statement to the {@link SlowQueryLog} and captures its plan in the background. The plan is taken
+     * without ANALYZE so the slow statement is not run a second time.
+     */
+    private void logIfSlow(String dataSource, String sql, long latencyNanos, long rows, String sessionId) {
+        SlowQueryLog.SlowQuery entry = slowQueryLog.record(dataSource, sql, latencyNanos, rows, sessionId);
+        if (entry == null || !EXPLAINABLE_OPERATIONS.contains(DataPathMetrics.sqlOperation(sql))) {
+            return;
+        }
+        CancellableQuery capture = new CancellableQuery();
+        backgroundQueryExecutor.submit(capture, () -> QueryPlan.parse(explainJson(dataSource, sql, false, 30, capture)))
+                .whenComplete((plan, error) -> {
+                    if (plan != null) {
+                        slowQueryLog.attachPlan(entry, plan);
+                    }
+                });
+    }
+
+    /**
+     * Runs a statement where its classification allows: read-only statements in a read-only transaction on the
+     * database that serves reads, everything else on the database itself. A few statements that look like reads do
+     * write, e.g. through {@code nextval()} or a function with side effects; PostgreSQL rejects those in a read-only
+     * transaction before anything is changed, and they are run again on the database itself.
      *
-     * @param sql The SQL query to check
-     * @return true if the query contains forbidden commands, false otherwise
+     * @param run runs the statement on the named database, in a read-only transaction if the flag is set
      */
-    private boolean containsForbiddenSql(String sql) {
-        // Convert the SQL query to uppercase for case-insensitive comparison
-        sql = sql.toUpperCase().trim();
+    private <T> T route(String dataSource, SqlClassification classification, BiFunction<String, Boolean, T> run) {
+        if (!classification.isReadOnly()) {
+            return run.apply(dataSource, false);
+        }
+        try {
+            return run.apply(connectionManager.readTarget(dataSource), true);
+        } catch (RuntimeException e) {
+            if (!isReadOnlyViolation(e)) {
+                throw e;
+            }
+            return run.apply(dataSource, false);
+        }
+    }
 
-        // Check if the query contains any forbidden command
-        for (String forbiddenCommand : FORBIDDEN_COMMANDS) {
-            if (sql.contains(forbiddenCommand)) {
+    private static boolean isReadOnlyViolation(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException
+                    && READ_ONLY_SQL_TRANSACTION.equals(sqlException.getSQLState())) {
                 return true;
             }
         }
         return false;
     }
+
+    /**
+     * Drops cached results of tables the statement wrote to, and the shared schema metadata cache of the database
+     * if the statement may have changed tables or columns. Read-only statements change neither.
+     *
+     * @param dataSource     The database the SQL ran on
+     * @param sql            The SQL that was just executed
+     * @param classification What the SQL does
+     */
+    void afterExecution(String dataSource, String sql, SqlClassification classification) {
+        if (classification.isReadOnly()) {
+            return;
+        }
+        queryResultCache.invalidateWrittenTables(dataSource, sql);
+        if (classification.kind() == SqlClassification.Kind.DDL) {
+            schemaMetadataService.invalidate(dataSource);
+        }
+    }
+
+    /**
+     * Classifies the SQL with {@link SqlLexer}, reusing the classification of an earlier run of the same text. The
+     * text itself is the key, so different queries that happen to share a hash code never share a classification.
+     */
+    private SqlClassification classify(String sql) {
+        return classifications.get(sql, SqlLexer::classify);
+    }
 }
@@ -0,0 +1,356 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import com.tk.learn.vaadindemo.sqlhelper.SqlClassification.Kind;
+
+import java.util.Arrays;
+
+/**
+ * Lexer for the SQL typed into the client, shared by {@link SqlScriptSplitter} and {@link #classify(String)}.
+ * <p>
+ * Follows PostgreSQL's lexical rules for string literals ({@code '...'} with doubled quotes, {@code E'...'} with
+ * backslash escapes), quoted identifiers, dollar-quoted bodies ({@code $$...$$}, {@code $tag$...$tag$}), line
+ * comments and nested block comments, so words inside them are never taken for keywords. Classification reads the
+ * text once, left to right, and compares words with its keywords in place, without copying or upper-casing the
+ * text, so validating a pasted script costs time linear in its length.
+ */
+final class SqlLexer {
+
+    /**
+     * The keywords classification looks at, followed by the tokens that stand for everything else.
+     */
+    private enum Token {
+        // Commands, with the kind of statement they start
+        SELECT(Kind.READ_ONLY), VALUES(Kind.READ_ONLY), TABLE(Kind.READ_ONLY), WITH(Kind.READ_ONLY),
+        SHOW(Kind.READ_ONLY),
+        INSERT(Kind.DML), UPDATE(Kind.DML), DELETE(Kind.DML), MERGE(Kind.DML), COPY(Kind.DML), PREPARE(Kind.DML),
+        ANALYZE(Kind.DML), ANALYSE(Kind.DML),
+        CREATE(Kind.DDL), ALTER(Kind.DDL), DROP(Kind.DDL), TRUNCATE(Kind.DDL), COMMENT(Kind.DDL), GRANT(Kind.DDL),
+        REVOKE(Kind.DDL), REINDEX(Kind.DDL), CLUSTER(Kind.DDL), REFRESH(Kind.DDL), IMPORT(Kind.DDL),
+        SECURITY(Kind.DDL), DO(Kind.DDL), CALL(Kind.DDL),
+        // Words that change what the next word means
+        EXPLAIN(null), VERBOSE(null), AS(null), INSTEAD(null), ALSO(null), INTO(null), FOR(null), SHARE(null),
+        NO(null), KEY(null),
+        // Not keywords
+        OPEN_PAREN(null), CLOSE_PAREN(null), OTHER(null), START(null);
+
+        private final Kind command;
+
+        Token(Kind command) {
+            this.command = command;
+        }
+    }
+
+    // Keywords by length, so a word is only compared with the few keywords it could be
+    private static final Token[][] KEYWORDS = keywordsByLength();
+
+    // Functions and value keywords whose result differs from one execution to the next
+    private static final String[] VOLATILE_FUNCTIONS = {"now", "random", "random_normal", "setseed", "nextval",
+            "setval", "currval", "lastval", "clock_timestamp", "statement_timestamp", "transaction_timestamp",
+            "timeofday", "current_date", "current_time", "current_timestamp", "localtime", "localtimestamp",
+            "gen_random_uuid", "uuid_generate_v4", "txid_current", "pg_current_xact_id"};
+
+    private SqlLexer() {
+    }
+
+    /**
+     * Classifies every statement of the SQL in a single pass.
+     * <p>
+     * The kind of a statement follows from the commands in command position: at its start, after a parenthesis
+     * (the parts of a {@code WITH}, {@code COPY (...)}), after the options of {@code EXPLAIN}, in the actions of a
+     * rule and after {@code PREPARE ... AS}. {@code DO} only starts a block at the start of a statement, so
+     * {@code INSERT ... ON CONFLICT (...) DO UPDATE} stays DML. On top of that {@code SELECT ... INTO} counts as DDL
+     * because it creates a table, locking reads ({@code FOR UPDATE}, {@code FOR SHARE}) count as DML,
+     * {@code EXPLAIN} is read-only unless it analyzes a statement that is not, and statements starting with a command
+     * not listed here, such as {@code SET} or {@code LOCK}, count as DML.
+     * <p>
+     * DELETE, DROP and TRUNCATE are forbidden as commands, and DROP also inside {@code ALTER}. Elsewhere, e.g. in
+     * {@code ON DELETE CASCADE}, {@code GRANT DELETE}, {@code ON COMMIT DROP} or as part of a name such as
+     * {@code deleted_at}, they are fine. The bodies of functions and {@code DO} blocks are only searched for these
+     * words.
+     * <p>
+     * Calls of well-known volatile functions such as {@code now()}, {@code random()} or {@code nextval()} are noted
+     * so their results are not cached; a column of the same name counts too, which only costs a cache miss.
+     */
+    static SqlClassification classify(String sql) {
+        Classifier classifier = new Classifier();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            char next = i + 1 < length ? sql.charAt(i + 1) : '\0';
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && next == '-') {
+                i = skipLineComment(sql, i);
+            } else if (c == '/' && next == '*') {
+                i = skipBlockComment(sql, i);
+            } else if (c == ';') {
+                classifier.endStatement();
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < length && isIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                // The column of a qualified name is never a keyword, e.g. o.delete
+                boolean qualified = start > 0 && sql.charAt(start - 1) == '.';
+                Token token = qualified ? Token.OTHER : keyword(sql, start, i);
+                if (token == Token.OTHER && isVolatileFunction(sql, start, i)) {
+                    classifier.volatileFunction = true;
+                }
+                classifier.accept(token);
+            } else {
+                int start = i;
+                if (c == '\'') {
+                    i = skipQuoted(sql, i, '\'', hasBackslashEscapes(sql, i));
+                    classifier.acceptLiteral(sql, start, i);
+                } else if (c == '"') {
+                    i = skipQuoted(sql, i, '"', false);
+                } else if (c == '$' && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))) {
+                    i = skipDollarQuoted(sql, i);
+                    classifier.acceptLiteral(sql, start, i);
+                } else {
+                    i++;
+                }
+                classifier.accept(c == '(' ? Token.OPEN_PAREN : c == ')' ? Token.CLOSE_PAREN : Token.OTHER);
+            }
+        }
+        classifier.endStatement();
+        return classifier.result();
+    }
+
+    static int skipLineComment(String sql, int i) {
+        int end = sql.indexOf('\n', i);
+        return end == -1 ? sql.length() : end + 1;
+    }
+
+    // Block comments nest in PostgreSQL
+    static int skipBlockComment(String sql, int i) {
+        int depth = 0;
+        while (i < sql.length()) {
+            if (sql.startsWith("/*", i)) {
+                depth++;
+                i += 2;
+            } else if (sql.startsWith("*/", i)) {
+                depth--;
+                i += 2;
+                if (depth == 0) {
+                    return i;
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return whether the string literal whose opening quote is at the index is an {@code E'...'} literal
+     */
+    static boolean hasBackslashEscapes(String sql, int quote) {
+        return quote > 0 && (sql.charAt(quote - 1) == 'E' || sql.charAt(quote - 1) == 'e')
+                && (quote == 1 || !isIdentifierPart(sql.charAt(quote - 2)));
+    }
+
+    /**
+     * @return the index after the closing quote, or the end of the text if it is unterminated
+     */
+    static int skipQuoted(String sql, int i, char quote, boolean backslashEscapes) {
+        i++;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (backslashEscapes && c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                // A doubled quote stands for one quote character
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Skips {@code $tag$ ... $tag$}. A {@code $} that does not start a valid tag, e.g. the positional parameter
+     * {@code $1}, is skipped as a single character.
+     */
+    static int skipDollarQuoted(String sql, int i) {
+        int tagEnd = i + 1;
+        while (tagEnd < sql.length() && isIdentifierPart(sql.charAt(tagEnd)) && sql.charAt(tagEnd) != '$') {
+            tagEnd++;
+        }
+        boolean validTag = tagEnd < sql.length() && sql.charAt(tagEnd) == '$'
+                && (tagEnd == i + 1 || !Character.isDigit(sql.charAt(i + 1)));
+        if (!validTag) {
+            return i + 1;
+        }
+        String tag = sql.substring(i, tagEnd + 1);
+        int close = sql.indexOf(tag, tagEnd + 1);
+        return close == -1 ? sql.length() : close + tag.length();
+    }
+
+    static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static Token keyword(String sql, int start, int end) {
+        int length = end - start;
+        if (length < KEYWORDS.length) {
+            for (Token keyword : KEYWORDS[length]) {
+                if (sql.regionMatches(true, start, keyword.name(), 0, length)) {
+                    return keyword;
+                }
+            }
+        }
+        return Token.OTHER;
+    }
+
+    private static boolean isVolatileFunction(String sql, int start, int end) {
+        for (String function : VOLATILE_FUNCTIONS) {
+            if (function.length() == end - start && sql.regionMatches(true, start, function, 0, end - start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Token[][] keywordsByLength() {
+        int longest = 0;
+        for (Token token : Token.values()) {
+            if (token.ordinal() < Token.OPEN_PAREN.ordinal()) {
+                longest = Math.max(longest, token.name().length());
+            }
+        }
+        Token[][] keywords = new Token[longest + 1][0];
+        for (Token token : Token.values()) {
+            if (token.ordinal() < Token.OPEN_PAREN.ordinal()) {
+                Token[] sameLength = keywords[token.name().length()];
+                keywords[token.name().length()] = Arrays.copyOf(sameLength, sameLength.length + 1);
+                keywords[token.name().length()][sameLength.length] = token;
+            }
+        }
+        return keywords;
+    }
+
+    /**
+     * Reads the tokens of the SQL one at a time and keeps what is known about the current statement.
+     */
+    private static final class Classifier {
+
+        private Kind kind = Kind.READ_ONLY;
+        private int statements;
+        private String forbiddenCommand;
+        private boolean volatileFunction;
+
+        // The statement being read; START until its first token
+        private Token previous = Token.START;
+        private Token command;
+        private Kind statementKind;
+        private boolean explain;
+        private boolean analyze;
+
+        void accept(Token token) {
+            if (previous == Token.START) {
+                command = null;
+                explain = token == Token.EXPLAIN;
+                analyze = false;
+                boolean known = token.command != null || token == Token.OPEN_PAREN || explain;
+                statementKind = known ? Kind.READ_ONLY : Kind.DML;
+            }
+
+            if (explain && (token == Token.ANALYZE || token == Token.ANALYSE)) {
+                analyze = true;
+            } else if (token.command != null && isCommandPosition()
+                    && (token != Token.DO || previous == Token.START)) {
+                // DO only starts a block at the start of a statement; elsewhere it is ON CONFLICT ... DO or a rule
+                if (command == null) {
+                    command = token;
+                }
+                statementKind = max(statementKind, token.command);
+                if (token == Token.DELETE || token == Token.DROP || token == Token.TRUNCATE) {
+                    forbid(token);
+                }
+            } else if (token == Token.DROP && command == Token.ALTER) {
+                // ALTER TABLE ... DROP COLUMN loses data as well
+                forbid(token);
+            } else if (token == Token.INTO && previous != Token.INSERT && previous != Token.MERGE) {
+                // SELECT ... INTO creates a table
+                statementKind = max(statementKind, Kind.DDL);
+            } else if (previous == Token.FOR && (token == Token.UPDATE || token == Token.SHARE
+                    || token == Token.NO || token == Token.KEY)) {
+                // Row locks need a writable transaction
+                statementKind = max(statementKind, Kind.DML);
+            }
+            previous = token;
+        }
+
+        /**
+         * Function bodies and {@code DO} blocks are literals that run later or right away; any forbidden word in
+         * them counts, as it is not worth lexing the procedural languages they are written in.
+         */
+        void acceptLiteral(String sql, int from, int to) {
+            if (command != Token.DO && command != Token.CREATE) {
+                return;
+            }
+            int i = from;
+            while (i < to) {
+                if (Character.isLetter(sql.charAt(i)) || sql.charAt(i) == '_') {
+                    int start = i;
+                    while (i < to && isIdentifierPart(sql.charAt(i))) {
+                        i++;
+                    }
+                    Token word = keyword(sql, start, i);
+                    if (word == Token.DELETE || word == Token.DROP || word == Token.TRUNCATE) {
+                        forbid(word);
+                    }
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        void endStatement() {
+            if (previous == Token.START) {
+                // Nothing but whitespace and comments since the last semicolon
+                return;
+            }
+            if (explain) {
+                // Without ANALYZE the statement is only planned; an analyzed EXECUTE may run anything
+                statementKind = !analyze ? Kind.READ_ONLY : command == null ? Kind.DML : statementKind;
+            }
+            kind = max(kind, statementKind);
+            statements++;
+            previous = Token.START;
+        }
+
+        SqlClassification result() {
+            return new SqlClassification(kind, statements, forbiddenCommand, volatileFunction);
+        }
+
+        private boolean isCommandPosition() {
+            return switch (previous) {
+                case START, OPEN_PAREN, CLOSE_PAREN, INSTEAD, ALSO -> true;
+                // The action of a rule, not the one of INSERT ... ON CONFLICT DO UPDATE
+                case DO -> command == Token.CREATE;
+                case AS -> command == Token.PREPARE;
+                case EXPLAIN, ANALYZE, ANALYSE, VERBOSE -> explain;
+                default -> false;
+            };
+        }
+
+        private void forbid(Token token) {
+            if (forbiddenCommand == null) {
+                forbiddenCommand = token.name();
+            }
+        }
+
+        private static Kind max(Kind a, Kind b) {
+            return a.compareTo(b) >= 0 ? a : b;
+        }
+    }
+}
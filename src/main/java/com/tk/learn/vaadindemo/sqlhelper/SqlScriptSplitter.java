@@ -0,0 +1,62 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a SQL script into its statements at the semicolons that end them.
+ * <p>
+ * Uses the lexical rules of {@link SqlLexer}, so a semicolon is only taken as a separator outside of string
+ * literals, quoted identifiers, dollar-quoted bodies and comments. Comments in front of a statement are dropped
+ * with the whitespace, so each statement starts with its first keyword; parts that hold nothing but whitespace and
+ * comments are dropped entirely.
+ */
+final class SqlScriptSplitter {
+
+    private SqlScriptSplitter() {
+    }
+
+    /**
+     * @return the statements in script order, without their terminating semicolons
+     */
+    static List<String> split(String script) {
+        List<String> statements = new ArrayList<>();
+        int length = script.length();
+        int start = 0;  // first code character of the current statement
+        boolean hasCode = false;
+        int i = 0;
+        while (i < length) {
+            char c = script.charAt(i);
+            char next = i + 1 < length ? script.charAt(i + 1) : '\0';
+            if (c == '-' && next == '-') {
+                i = SqlLexer.skipLineComment(script, i);
+            } else if (c == '/' && next == '*') {
+                i = SqlLexer.skipBlockComment(script, i);
+            } else if (c == ';') {
+                if (hasCode) {
+                    statements.add(script.substring(start, i).strip());
+                }
+                hasCode = false;
+                i++;
+            } else {
+                if (!hasCode && !Character.isWhitespace(c)) {
+                    hasCode = true;
+                    start = i;
+                }
+                if (c == '\'') {
+                    i = SqlLexer.skipQuoted(script, i, '\'', SqlLexer.hasBackslashEscapes(script, i));
+                } else if (c == '"') {
+                    i = SqlLexer.skipQuoted(script, i, '"', false);
+                } else if (c == '$' && (i == 0 || !SqlLexer.isIdentifierPart(script.charAt(i - 1)))) {
+                    i = SqlLexer.skipDollarQuoted(script, i);
+                } else {
+                    i++;
+                }
+            }
+        }
+        if (hasCode) {
+            statements.add(script.substring(start).strip());
+        }
+        return statements;
+    }
+}
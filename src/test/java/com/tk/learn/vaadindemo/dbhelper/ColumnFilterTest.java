@@ -0,0 +1,116 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ColumnFilterTest {
+
+	@Test
+	void numbersTakeEveryOperator() {
+		assertFilter("id = ?", List.of(42L), parse("id", Types.INTEGER, " 42 "));
+		assertFilter("id = ?", List.of(42L), parse("id", Types.BIGINT, "=42"));
+		assertFilter("id > ?", List.of(10L), parse("id", Types.INTEGER, ">10"));
+		assertFilter("id >= ?", List.of(10L), parse("id", Types.INTEGER, ">= 10"));
+		assertFilter("id < ?", List.of(-5L), parse("id", Types.INTEGER, "<-5"));
+		assertFilter("id <= ?", List.of(5L), parse("id", Types.INTEGER, "<=5"));
+		assertFilter("price = ?", List.of(new BigDecimal("9.90")), parse("price", Types.NUMERIC, "9.90"));
+		assertFilter("ratio > ?", List.of(0.5), parse("ratio", Types.DOUBLE, ">0.5"));
+	}
+
+	@Test
+	void rangesMayBeOpenAtEitherEnd() {
+		assertFilter("id >= ? AND id <= ?", List.of(10L, 20L), parse("id", Types.INTEGER, "10..20"));
+		assertFilter("id >= ?", List.of(10L), parse("id", Types.INTEGER, "10.."));
+		assertFilter("id <= ?", List.of(20L), parse("id", Types.INTEGER, "..20"));
+		assertFilter("id >= ? AND id <= ?", List.of(-20L, -10L), parse("id", Types.INTEGER, "-20..-10"));
+		assertThrows(IllegalArgumentException.class, () -> parse("id", Types.INTEGER, ".."));
+	}
+
+	@Test
+	void datesForTimestampColumnsMatchTheWholeDay() {
+		LocalDateTime day = LocalDateTime.of(2024, 1, 31, 0, 0);
+		LocalDateTime nextDay = day.plusDays(1);
+		assertFilter("created >= ? AND created < ?", List.of(day, nextDay),
+				parse("created", Types.TIMESTAMP, "2024-01-31"));
+		assertFilter("created >= ?", List.of(nextDay), parse("created", Types.TIMESTAMP, ">2024-01-31"));
+		assertFilter("created < ?", List.of(nextDay), parse("created", Types.TIMESTAMP, "<=2024-01-31"));
+		assertFilter("created >= ?", List.of(day), parse("created", Types.TIMESTAMP, ">=2024-01-31"));
+		assertFilter("created < ?", List.of(day), parse("created", Types.TIMESTAMP, "<2024-01-31"));
+		assertFilter("created >= ? AND created < ?",
+				List.of(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 2, 1, 0, 0)),
+				parse("created", Types.TIMESTAMP_WITH_TIMEZONE, "2024-01-01..2024-01-31"));
+	}
+
+	@Test
+	void timestampsDatesAndTimesAreTyped() {
+		assertFilter("created > ?", List.of(LocalDateTime.of(2024, 1, 31, 12, 30)),
+				parse("created", Types.TIMESTAMP, ">2024-01-31 12:30"));
+		assertFilter("born = ?", List.of(LocalDate.of(2000, 2, 29)), parse("born", Types.DATE, "2000-02-29"));
+		assertFilter("opens >= ? AND opens <= ?", List.of(LocalTime.of(8, 0), LocalTime.of(17, 0)),
+				parse("opens", Types.TIME, "08:00..17:00"));
+	}
+
+	@Test
+	void textMatchesByPrefixExactlyOrBySubstring() {
+		assertFilter("name LIKE ?", List.of("ab%"), parse("name", Types.VARCHAR, "ab"));
+		assertFilter("name = ?", List.of("ab"), parse("name", Types.VARCHAR, "=ab"));
+		assertFilter("name ILIKE ?", List.of("%ab%"), parse("name", Types.VARCHAR, "*ab"));
+		assertFilter("name ILIKE ?", List.of("%ab%"), ColumnFilter.parse("name", Types.VARCHAR, true, "ab"));
+	}
+
+	@Test
+	void likeWildcardsInTextAreEscaped() {
+		assertFilter("name LIKE ?", List.of("50\\%\\_off\\\\%"), parse("name", Types.VARCHAR, "50%_off\\"));
+	}
+
+	@Test
+	void booleansAcceptPostgresSpellings() {
+		assertFilter("active = ?", List.of(true), parse("active", Types.BOOLEAN, "Yes"));
+		assertFilter("active = ?", List.of(false), parse("active", Types.BIT, "f"));
+		assertThrows(IllegalArgumentException.class, () -> parse("active", Types.BOOLEAN, "maybe"));
+	}
+
+	@Test
+	void otherTypesCompareAsUuidOrText() {
+		UUID id = UUID.fromString("123e4567-e89b-12d3-a456-426614174000");
+		assertFilter("ref = ?", List.of(id), parse("ref", Types.OTHER, id.toString()));
+		assertFilter("CAST(tags AS text) = ?", List.of("{a,b}"), parse("tags", Types.ARRAY, "{a,b}"));
+	}
+
+	@Test
+	void invalidValuesAreRejected() {
+		IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+				() -> parse("id", Types.INTEGER, ">ten"));
+		assertEquals("'ten' is not a valid number", error.getMessage());
+		assertThrows(IllegalArgumentException.class, () -> parse("born", Types.DATE, "31.01.2024"));
+	}
+
+	@Test
+	void filtersCombineInPlaceholderOrder() {
+		List<ColumnFilter> filters = List.of(
+				parse("id", Types.INTEGER, "1..9"),
+				parse("name", Types.VARCHAR, "=x"));
+		assertEquals("id >= ? AND id <= ? AND name = ?", ColumnFilter.whereClause(filters));
+		assertEquals(List.of(1L, 9L, "x"), ColumnFilter.params(filters));
+		assertEquals("", ColumnFilter.whereClause(List.of()));
+	}
+
+	private static ColumnFilter parse(String column, int sqlType, String input) {
+		return ColumnFilter.parse(column, sqlType, false, input);
+	}
+
+	private static void assertFilter(String predicate, List<Object> params, ColumnFilter filter) {
+		assertEquals(predicate, filter.predicate());
+		assertEquals(params, filter.params());
+	}
+}
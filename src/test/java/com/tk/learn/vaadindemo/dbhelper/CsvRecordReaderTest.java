@@ -0,0 +1,82 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvRecordReaderTest {
+
+	@Test
+	void readsRecordsWithAnyLineEnding() throws IOException {
+		assertEquals(List.of(List.of("a", "b"), List.of("1", "2"), List.of("3", "4")),
+				readAll("a,b\r\n1,2\n3,4"));
+		assertEquals(List.of(List.of("a"), List.of("b")), readAll("a\rb\r\n"));
+	}
+
+	@Test
+	void quotedFieldsKeepCommasAndLineBreaks() throws IOException {
+		assertEquals(List.of(List.of("1", "a,b", "line 1\nline 2\r\nline 3"), List.of("2", "x", "y")),
+				readAll("1,\"a,b\",\"line 1\nline 2\r\nline 3\"\n2,x,y\n"));
+	}
+
+	@Test
+	void doubledQuotesStandForOneQuote() throws IOException {
+		assertEquals(List.of(List.of("say \"hi\"", "\"")), readAll("\"say \"\"hi\"\"\",\"\"\"\""));
+	}
+
+	@Test
+	void unquotedEmptyFieldsAreNullAndQuotedOnesEmptyStrings() throws IOException {
+		assertEquals(List.of(Arrays.asList(null, "", null, "")), readAll(",\"\",,\"\"\n"));
+		assertEquals(List.of(Arrays.asList("a", null)), readAll("a,\n"));
+	}
+
+	@Test
+	void countsRecordsNotLines() throws IOException {
+		CsvRecordReader reader = new CsvRecordReader(new StringReader("\"a\nb\",c\nd,e\n"));
+		reader.next();
+		assertEquals(1, reader.getRecordNumber());
+		reader.next();
+		assertEquals(2, reader.getRecordNumber());
+		assertNull(reader.next());
+	}
+
+	@Test
+	void unterminatedQuotedFieldFails() {
+		CsvRecordReader reader = new CsvRecordReader(new StringReader("1,ok\n2,\"open\n3,x\n"));
+		IOException error = assertThrows(IOException.class, () -> {
+			while (reader.next() != null) {
+				// Read until the broken record
+			}
+		});
+		assertTrue(error.getMessage().contains("record 2"), error.getMessage());
+	}
+
+	@Test
+	void textAfterAClosingQuoteIsKept() throws IOException {
+		// Lenient like COPY: the rest of the field is appended to the quoted part
+		assertEquals(List.of(List.of("ab c", "d")), readAll("\"ab\" c,d"));
+	}
+
+	@Test
+	void emptyInputHasNoRecords() throws IOException {
+		assertEquals(List.of(), readAll(""));
+	}
+
+	private static List<List<String>> readAll(String csv) throws IOException {
+		CsvRecordReader reader = new CsvRecordReader(new StringReader(csv));
+		List<List<String>> records = new ArrayList<>();
+		for (List<String> record = reader.next(); record != null; record = reader.next()) {
+			records.add(record);
+		}
+		return records;
+	}
+}
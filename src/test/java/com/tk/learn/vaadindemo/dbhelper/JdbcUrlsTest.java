@@ -0,0 +1,49 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JdbcUrlsTest {
+
+	@Test
+	void postgresqlUrlsAreAccepted() {
+		assertDoesNotThrow(() -> JdbcUrls.validate("jdbc:postgresql://db:5432/app"));
+		assertDoesNotThrow(() -> JdbcUrls.validate("jdbc:postgresql:app"));
+		assertDoesNotThrow(() -> JdbcUrls.validate("jdbc:postgresql://db/app?sslmode=require&ApplicationName=x"));
+	}
+
+	@Test
+	void otherDriversAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> JdbcUrls.validate(null));
+		assertThrows(IllegalArgumentException.class, () -> JdbcUrls.validate("jdbc:h2:mem:test"));
+		assertThrows(IllegalArgumentException.class, () -> JdbcUrls.validate("jdbc:mysql://db/app"));
+		assertThrows(IllegalArgumentException.class, () -> JdbcUrls.validate(" jdbc:postgresql://db/app"));
+	}
+
+	@Test
+	void classValuedParametersAreRejected() {
+		assertThrows(IllegalArgumentException.class,
+				() -> JdbcUrls.validate("jdbc:postgresql://db/app?socketFactory=x.Factory&socketFactoryArg=y"));
+		assertThrows(IllegalArgumentException.class,
+				() -> JdbcUrls.validate("jdbc:postgresql://db/app?sslmode=require&sslfactory=x.Factory"));
+		assertThrows(IllegalArgumentException.class,
+				() -> JdbcUrls.validate("jdbc:postgresql://db/app?authenticationPluginClassName=x.Plugin"));
+		assertThrows(IllegalArgumentException.class,
+				() -> JdbcUrls.validate("jdbc:postgresql://db/app?loggerFile=/tmp/log"));
+		// Percent-encoded names are decoded by the driver
+		assertThrows(IllegalArgumentException.class,
+				() -> JdbcUrls.validate("jdbc:postgresql://db/app?ssl%68ostnameverifier=x.Verifier"));
+	}
+
+	@Test
+	void credentialsAreMasked() {
+		assertEquals("jdbc:postgresql://db/app?user=***&password=***&sslmode=require",
+				JdbcUrls.mask("jdbc:postgresql://db/app?user=admin&password=secret&sslmode=require"));
+		assertEquals("jdbc:postgresql://***@db:5432/app",
+				JdbcUrls.mask("jdbc:postgresql://admin:p@ss@db:5432/app"));
+		assertEquals("jdbc:postgresql://db/app", JdbcUrls.mask("jdbc:postgresql://db/app"));
+	}
+}
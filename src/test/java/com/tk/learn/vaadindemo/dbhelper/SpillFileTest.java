@@ -0,0 +1,149 @@
+package com.tk.learn.vaadindemo.dbhelper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SpillFileTest {
+
+	private static final ResultSchema SCHEMA = new ResultSchema(
+			new String[]{"id", "amount", "ratio", "name", "value"},
+			new int[]{Types.INTEGER, Types.BIGINT, Types.DOUBLE, Types.VARCHAR, Types.OTHER});
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void valuesOfEveryKindRoundTrip() throws IOException {
+		Timestamp timestamp = Timestamp.valueOf("2024-01-31 12:34:56.123456789");
+		Object[] values = {"text \u00fcn\u00efc\u00f6d\u00e9 \uD83D\uDE00", "",
+				new BigDecimal("-12345678901234567890.000001"), true, false, Date.valueOf("2024-01-31"),
+				Time.valueOf("23:59:58"), timestamp, new byte[]{0, -1, 127},
+				UUID.fromString("123e4567-e89b-12d3-a456-426614174000"), 42, Long.MIN_VALUE, 1.5f, Double.NaN};
+		try (SpillFile file = new SpillFile(directory, SCHEMA)) {
+			file.write(file.encode(chunk(0, row -> values[row % values.length])));
+
+			ResultTable read = file.read(0, values.length);
+			for (int row = 0; row < values.length; row++) {
+				Object value = read.getValue(row, 4);
+				if (values[row] instanceof byte[] bytes) {
+					assertArrayEquals(bytes, (byte[]) value);
+				} else {
+					assertEquals(values[row], value, "value of row " + row);
+				}
+			}
+			// Timestamps keep their nanoseconds
+			assertEquals(123456789, ((Timestamp) read.getValue(7, 4)).getNanos());
+		}
+	}
+
+	@Test
+	void valuesWithoutAnEncodingAreStoredAsText() throws IOException {
+		try (SpillFile file = new SpillFile(directory, SCHEMA)) {
+			file.write(file.encode(chunk(0, row -> new StringBuilder("{1,2}"))));
+			assertEquals("{1,2}", file.read(0, 1).getValue(0, 4));
+		}
+	}
+
+	@Test
+	void nullsRoundTripInEveryColumn() throws IOException {
+		try (SpillFile file = new SpillFile(directory, SCHEMA)) {
+			ResultTable chunk = new ResultTable(SCHEMA);
+			for (int row = 0; row < SpillFile.CHUNK_ROWS; row++) {
+				// Every third row is all nulls, including the last one of the chunk
+				chunk.appendValues(row % 3 == 0 || row == SpillFile.CHUNK_ROWS - 1
+						? new Object[SCHEMA.size()]
+						: new Object[]{row, (long) row, row / 2.0, "name " + row, row});
+			}
+			file.write(file.encode(chunk));
+
+			ResultTable read = file.read(0, SpillFile.CHUNK_ROWS);
+			for (int row = 0; row < SpillFile.CHUNK_ROWS; row++) {
+				for (int column = 0; column < SCHEMA.size(); column++) {
+					assertEquals(chunk.getValue(row, column), read.getValue(row, column),
+							"row " + row + ", column " + column);
+				}
+			}
+			// Fixed-width columns store a zero for a null, which must not come back as a value
+			assertNull(file.read(0, 1).getValue(0, 0));
+		}
+	}
+
+	@Test
+	void readsOnBothSidesOfChunkBoundaries() throws IOException {
+		int chunks = 3;
+		try (SpillFile file = new SpillFile(directory, SCHEMA)) {
+			for (int i = 0; i < chunks; i++) {
+				file.write(file.encode(chunk(i * SpillFile.CHUNK_ROWS, row -> "row " + row)));
+			}
+			assertEquals(chunks * SpillFile.CHUNK_ROWS, file.size());
+
+			int boundary = SpillFile.CHUNK_ROWS;
+			assertIds(file.read(boundary - 3, boundary), boundary - 3);
+			assertIds(file.read(boundary, boundary + 3), boundary);
+			// Back and forth between chunks, so the chunk kept from the previous read has to be replaced
+			assertIds(file.read(3 * boundary - 1, 3 * boundary), 3 * boundary - 1);
+			assertIds(file.read(boundary - 1, boundary), boundary - 1);
+			assertIds(file.read(0, 1), 0);
+			assertEquals("row " + (2 * boundary), file.read(2 * boundary, 2 * boundary + 1).getValue(0, 4));
+		}
+	}
+
+	@Test
+	void closeDeletesTheFile() throws IOException {
+		SpillFile file = new SpillFile(directory, SCHEMA);
+		byte[] encoded = file.encode(chunk(0, row -> row));
+		file.write(encoded);
+		file.write(encoded);
+		assertEquals(2L * encoded.length, file.getFileSize());
+		assertEquals(1, fileCount());
+
+		file.close();
+		assertEquals(0, fileCount());
+	}
+
+	private long fileCount() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+
+	// One full chunk whose rows are numbered from the given id, with the value column filled by the function
+	private static ResultTable chunk(int firstId, IntFunction<Object> value) {
+		ResultTable chunk = new ResultTable(SCHEMA);
+		for (int row = 0; row < SpillFile.CHUNK_ROWS; row++) {
+			int id = firstId + row;
+			chunk.appendValues(new Object[]{id, id * 1_000_000_000L, id / 4.0, "name " + id, value.apply(id)});
+		}
+		return chunk;
+	}
+
+	private static void assertIds(ResultTable rows, int firstId) {
+		List<ResultRow> read = rows.rows();
+		assertFalse(read.isEmpty());
+		for (int i = 0; i < read.size(); i++) {
+			int id = firstId + i;
+			assertEquals(id, read.get(i).get(0));
+			assertEquals(id * 1_000_000_000L, read.get(i).get(1));
+			assertEquals(id / 4.0, read.get(i).get(2));
+			assertEquals("name " + id, read.get(i).get(3));
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import com.tk.learn.vaadindemo.dbhelper.ConnectionManager;
+import com.tk.learn.vaadindemo.dbhelper.ResultSchema;
+import com.tk.learn.vaadindemo.dbhelper.ResultTable;
+import com.tk.learn.vaadindemo.dbhelper.SchemaMetadataService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Types;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class QueryResultCacheTest {
+
+	private static final String DATA_SOURCE = "default";
+	private static final String QUERY = "SELECT * FROM orders o JOIN customers c ON c.id = o.customer_id";
+
+	private QueryResultCache cache;
+	private SchemaMetadataService schemaMetadataService;
+	private SqlExecutionService executionService;
+
+	@BeforeEach
+	void setUp() {
+		cache = new QueryResultCache();
+		ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(cache, "connectionManager", mock(ConnectionManager.class));
+		ReflectionTestUtils.setField(cache, "enabled", true);
+		ReflectionTestUtils.setField(cache, "maxBytes", 64L * 1024 * 1024);
+		ReflectionTestUtils.setField(cache, "ttl", Duration.ofMinutes(1));
+		cache.init();
+
+		schemaMetadataService = mock(SchemaMetadataService.class);
+		executionService = new SqlExecutionService();
+		ReflectionTestUtils.setField(executionService, "queryResultCache", cache);
+		ReflectionTestUtils.setField(executionService, "schemaMetadataService", schemaMetadataService);
+	}
+
+	@Test
+	void dmlInvalidatesTheTablesItWrites() {
+		assertInvalidates("INSERT INTO orders (id) VALUES (1)");
+		assertInvalidates("INSERT INTO public.\"Orders\" (id) VALUES (1)");
+		assertInvalidates("UPDATE orders SET total = 0");
+		assertInvalidates("UPDATE ONLY orders SET total = 0");
+		assertInvalidates("DELETE FROM ONLY customers WHERE id = 1");
+		assertInvalidates("MERGE INTO customers c USING staged s ON s.id = c.id"
+				+ " WHEN MATCHED THEN UPDATE SET name = s.name");
+		assertInvalidates("MERGE INTO ONLY public.orders o USING staged s ON s.id = o.id"
+				+ " WHEN NOT MATCHED THEN DO NOTHING");
+		assertInvalidates("COPY orders FROM STDIN");
+		verify(schemaMetadataService, never()).invalidate(DATA_SOURCE);
+	}
+
+	@Test
+	void ddlInvalidatesTheTablesItChanges() {
+		assertInvalidates("ALTER TABLE orders ADD COLUMN note text");
+		assertInvalidates("ALTER TABLE IF EXISTS orders ADD COLUMN note text");
+		assertInvalidates("ALTER TABLE ONLY customers ALTER COLUMN name SET NOT NULL");
+		assertInvalidates("ALTER TABLE IF EXISTS ONLY public.customers DROP COLUMN name");
+		assertInvalidates("TRUNCATE TABLE ONLY orders");
+		assertInvalidates("DROP TABLE IF EXISTS customers");
+		verify(schemaMetadataService, atLeastOnce()).invalidate(DATA_SOURCE);
+	}
+
+	@Test
+	void writesToOtherTablesKeepTheResult() {
+		cacheQuery();
+		execute("UPDATE ONLY invoices SET paid = true");
+		execute("MERGE INTO invoices i USING staged s ON s.id = i.id WHEN MATCHED THEN DO NOTHING");
+		execute("SELECT * FROM orders");
+		assertNotNull(cache.get(DATA_SOURCE, QUERY, List.of()));
+	}
+
+	private void assertInvalidates(String sql) {
+		cacheQuery();
+		assertNotNull(cache.get(DATA_SOURCE, QUERY, List.of()), sql);
+		execute(sql);
+		assertNull(cache.get(DATA_SOURCE, QUERY, List.of()), sql);
+	}
+
+	private void execute(String sql) {
+		executionService.afterExecution(DATA_SOURCE, sql, SqlLexer.classify(sql));
+	}
+
+	private void cacheQuery() {
+		QueryResultCache.Snapshot snapshot = cache.snapshot(DATA_SOURCE, QUERY, SqlLexer.classify(QUERY));
+		ResultTable result = new ResultTable(new ResultSchema(new String[]{"id"}, new int[]{Types.INTEGER}));
+		result.appendValues(new Object[]{1});
+		cache.put(QUERY, List.of(), result, snapshot);
+	}
+}
@@ -0,0 +1,138 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import com.tk.learn.vaadindemo.sqlhelper.SqlClassification.Kind;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlLexerTest {
+
+	@Test
+	void forbiddenWordsInCommentsAreIgnored() {
+		assertAllowed("SELECT 1 -- ; DROP TABLE t");
+		assertAllowed("SELECT /* DELETE FROM t */ 1");
+		assertAllowed("/* outer /* inner */ DROP TABLE t */ SELECT 1");
+		assertForbidden("/* comment */ DROP TABLE t", "DROP");
+		assertForbidden("SELECT 1; -- a line comment ends at the line break\nDROP TABLE t", "DROP");
+	}
+
+	@Test
+	void forbiddenWordsInQuotedIdentifiersAreIgnored() {
+		assertAllowed("SELECT \"drop\", \"delete\" FROM \"truncate\"");
+		SqlClassification classification = assertForbidden("SELECT 1 AS \"a;b\"; DROP TABLE t", "DROP");
+		assertEquals(2, classification.statements());
+	}
+
+	@Test
+	void forbiddenWordsInDollarQuotesAreIgnored() {
+		SqlClassification classification = assertAllowed("SELECT $$; DROP TABLE t; $$");
+		assertEquals(1, classification.statements());
+		assertForbidden("SELECT $a$ $$ $a$; DROP TABLE t", "DROP");
+		// $1 is a parameter, not the start of a dollar quote
+		assertForbidden("PREPARE p AS SELECT $1; DELETE FROM t", "DELETE");
+	}
+
+	@Test
+	void backslashEscapesOnlyApplyToEscapeStrings() {
+		// E'\'' keeps the string open until the last quote
+		SqlClassification escaped = assertAllowed("SELECT E'\\'; DROP TABLE t; --'");
+		assertEquals(1, escaped.statements());
+		// In a standard string the backslash is an ordinary character, so the string ends right after it
+		assertForbidden("SELECT '\\'; DROP TABLE t; --'", "DROP");
+		assertForbidden("SELECT 'it''s'; DROP TABLE t", "DROP");
+	}
+
+	@Test
+	void forbiddenWordsOutsideCommandPositionAreAllowed() {
+		assertEquals(Kind.DDL, assertAllowed("CREATE TABLE o (id int REFERENCES c (id) ON DELETE CASCADE)").kind());
+		assertEquals(Kind.DDL, assertAllowed("CREATE TEMP TABLE t (id int) ON COMMIT DROP").kind());
+		assertEquals(Kind.DDL, assertAllowed("GRANT SELECT, DELETE ON t TO reader").kind());
+		assertEquals(Kind.READ_ONLY, assertAllowed("SELECT o.delete, deleted_at FROM o").kind());
+	}
+
+	@Test
+	void dropInsideAlterIsForbidden() {
+		assertEquals(Kind.DDL, assertForbidden("ALTER TABLE t DROP COLUMN c", "DROP").kind());
+		assertEquals(Kind.DDL, assertAllowed("ALTER TABLE t ADD COLUMN c int").kind());
+	}
+
+	@Test
+	void explainOnlyRunsTheStatementWithAnalyze() {
+		assertEquals(Kind.READ_ONLY, assertAllowed("EXPLAIN INSERT INTO t VALUES (1)").kind());
+		assertEquals(Kind.DML, assertAllowed("EXPLAIN ANALYZE INSERT INTO t VALUES (1)").kind());
+		assertEquals(Kind.DML, assertAllowed("EXPLAIN (ANALYZE, BUFFERS) UPDATE t SET v = 1").kind());
+		assertForbidden("EXPLAIN ANALYZE DELETE FROM t", "DELETE");
+		assertForbidden("EXPLAIN ANALYZE VERBOSE DELETE FROM t", "DELETE");
+	}
+
+	@Test
+	void doBlocksAndFunctionBodiesAreSearched() {
+		assertEquals(Kind.DDL, assertForbidden("DO $$ BEGIN DELETE FROM t; END $$", "DELETE").kind());
+		assertEquals(Kind.DDL, assertAllowed("DO $$ BEGIN INSERT INTO t VALUES (1); END $$").kind());
+		assertForbidden("CREATE FUNCTION f() RETURNS void LANGUAGE sql AS $body$ TRUNCATE t $body$", "TRUNCATE");
+		assertForbidden("CREATE FUNCTION f() RETURNS void LANGUAGE sql AS 'DROP TABLE t'", "DROP");
+		assertForbidden("CREATE RULE r AS ON INSERT TO t DO INSTEAD DELETE FROM u", "DELETE");
+		// Literals of other statements are data
+		assertAllowed("INSERT INTO notes VALUES ('DROP TABLE t')");
+	}
+
+	@Test
+	void onConflictDoUpdateIsDml() {
+		assertEquals(Kind.DML, assertAllowed("INSERT INTO t (id) VALUES (1) ON CONFLICT (id) DO UPDATE SET v = 2").kind());
+		assertEquals(Kind.DML, assertAllowed("INSERT INTO t (id) VALUES (1) ON CONFLICT (id) DO NOTHING").kind());
+		assertEquals(Kind.DML,
+				assertAllowed("INSERT INTO t (id) VALUES (1) ON CONFLICT ON CONSTRAINT t_pkey DO NOTHING").kind());
+	}
+
+	@Test
+	void commandsInsideParenthesesCount() {
+		assertForbidden("WITH d AS (DELETE FROM t RETURNING *) SELECT * FROM d", "DELETE");
+		assertEquals(Kind.DML, assertAllowed("WITH s AS (SELECT 1) INSERT INTO t SELECT * FROM s").kind());
+		assertEquals(Kind.READ_ONLY, assertAllowed("(SELECT 1) UNION (SELECT 2)").kind());
+	}
+
+	@Test
+	void multiStatementScriptsTakeTheMostFarReachingKind() {
+		SqlClassification classification = assertAllowed("SELECT 1; INSERT INTO t VALUES (1); CREATE TABLE u (id int);");
+		assertEquals(3, classification.statements());
+		assertEquals(Kind.DDL, classification.kind());
+
+		SqlClassification reads = assertAllowed("SELECT 1;; -- trailing comment\n;");
+		assertEquals(1, reads.statements());
+		assertEquals(Kind.READ_ONLY, reads.kind());
+
+		assertForbidden("SELECT 1; TRUNCATE t; DROP TABLE u", "TRUNCATE");
+	}
+
+	@Test
+	void readsThatLockOrCreateTablesAreNotReadOnly() {
+		assertEquals(Kind.DML, assertAllowed("SELECT * FROM t FOR UPDATE").kind());
+		assertEquals(Kind.DML, assertAllowed("SELECT * FROM t FOR NO KEY UPDATE").kind());
+		assertEquals(Kind.DDL, assertAllowed("SELECT * INTO copy FROM t").kind());
+		assertEquals(Kind.DML, assertAllowed("SET search_path TO app").kind());
+	}
+
+	@Test
+	void volatileFunctionsAreNotCacheable() {
+		assertTrue(SqlLexer.classify("SELECT * FROM t WHERE id = 1").isCacheable());
+		assertFalse(SqlLexer.classify("SELECT now()").isCacheable());
+		assertFalse(SqlLexer.classify("SELECT * FROM t WHERE created < current_timestamp").isCacheable());
+		assertFalse(SqlLexer.classify("SELECT pg_catalog.random()").isCacheable());
+		assertFalse(SqlLexer.classify("SELECT * FROM t FOR SHARE").isCacheable());
+	}
+
+	private static SqlClassification assertAllowed(String sql) {
+		SqlClassification classification = SqlLexer.classify(sql);
+		assertNull(classification.forbiddenCommand(), sql);
+		return classification;
+	}
+
+	private static SqlClassification assertForbidden(String sql, String command) {
+		SqlClassification classification = SqlLexer.classify(sql);
+		assertEquals(command, classification.forbiddenCommand(), sql);
+		return classification;
+	}
+}
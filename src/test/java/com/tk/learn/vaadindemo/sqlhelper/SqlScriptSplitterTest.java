@@ -0,0 +1,61 @@
+package com.tk.learn.vaadindemo.sqlhelper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SqlScriptSplitterTest {
+
+	@Test
+	void splitsAtSemicolonsAndStripsWhitespace() {
+		assertEquals(List.of("SELECT 1", "SELECT 2", "SELECT 3"),
+				SqlScriptSplitter.split("SELECT 1;\n  SELECT 2 ;\tSELECT 3"));
+	}
+
+	@Test
+	void semicolonsInStringsAndIdentifiersDoNotSplit() {
+		assertEquals(List.of("INSERT INTO t VALUES ('a;b', 'it''s;')", "SELECT \"x;y\" FROM t"),
+				SqlScriptSplitter.split("INSERT INTO t VALUES ('a;b', 'it''s;'); SELECT \"x;y\" FROM t;"));
+		assertEquals(List.of("SELECT E'\\';'", "SELECT 2"),
+				SqlScriptSplitter.split("SELECT E'\\';'; SELECT 2"));
+	}
+
+	@Test
+	void semicolonsInDollarQuotesDoNotSplit() {
+		String function = "CREATE FUNCTION f() RETURNS int LANGUAGE plpgsql AS $body$\n"
+				+ "BEGIN\n    PERFORM 1;\n    RETURN $$;$$;\nEND\n$body$";
+		assertEquals(List.of(function, "SELECT f()"), SqlScriptSplitter.split(function + ";\nSELECT f();"));
+		// $1 is a parameter, not a dollar quote
+		assertEquals(List.of("PREPARE p AS SELECT $1", "EXECUTE p(1)"),
+				SqlScriptSplitter.split("PREPARE p AS SELECT $1; EXECUTE p(1)"));
+	}
+
+	@Test
+	void semicolonsInCommentsDoNotSplit() {
+		assertEquals(List.of("SELECT 1 /* a; b /* nested; */ c; */ + 1", "SELECT 2 -- one; two\n+ 2"),
+				SqlScriptSplitter.split("SELECT 1 /* a; b /* nested; */ c; */ + 1; SELECT 2 -- one; two\n+ 2"));
+	}
+
+	@Test
+	void leadingCommentsAreDropped() {
+		assertEquals(List.of("SELECT 1", "SELECT 2"),
+				SqlScriptSplitter.split("-- first\nSELECT 1;\n/* second */ SELECT 2;"));
+	}
+
+	@Test
+	void emptyStatementsAreDropped() {
+		assertEquals(List.of("SELECT 1"), SqlScriptSplitter.split("SELECT 1;;  ;\n"));
+		assertEquals(List.of("SELECT 1"), SqlScriptSplitter.split(";SELECT 1; -- trailing comment\n/* and another */;"));
+		assertEquals(List.of(), SqlScriptSplitter.split("  ; -- nothing here\n;"));
+		assertEquals(List.of(), SqlScriptSplitter.split(""));
+	}
+
+	@Test
+	void unterminatedQuotesRunToTheEnd() {
+		assertEquals(List.of("SELECT 'open; SELECT 2"), SqlScriptSplitter.split("SELECT 'open; SELECT 2"));
+		assertEquals(List.of("SELECT 1", "SELECT $$ open; SELECT 2"),
+				SqlScriptSplitter.split("SELECT 1; SELECT $$ open; SELECT 2"));
+	}
+}